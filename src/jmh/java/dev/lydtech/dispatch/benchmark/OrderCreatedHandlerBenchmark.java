@@ -0,0 +1,68 @@
+package dev.lydtech.dispatch.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.handler.OrderCreatedHandler;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import dev.lydtech.dispatch.util.StubKafkaTemplate;
+import dev.lydtech.dispatch.util.StubStockServiceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderCreatedHandler.listen through DispatchService, with the stock service and the Kafka producer stubbed out so
+ * that only the dispatch code itself is measured: event building, metrics, logging calls and send bookkeeping.
+ *
+ * Logging is set to WARN for the benchmarks, so the cost of writing log lines is excluded but the cost of building
+ * their messages is not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderCreatedHandlerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pipelinedSends;
+
+    private OrderCreatedHandler handler;
+    private String key;
+    private OrderCreated orderCreated;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        DispatchMetrics dispatchMetrics = new DispatchMetrics(new SimpleMeterRegistry());
+        DispatchService dispatchService = new DispatchService(new StubKafkaTemplate(), new StubStockServiceClient(), pipelinedSends, false, dispatchMetrics);
+        handler = new OrderCreatedHandler(dispatchService, new OrderDeduplicator(false, 0, ""), dispatchMetrics, new HotKeyTracker(false, 0, 0, 0, 0, 0, dispatchMetrics),
+                DispatchTracer.disabled());
+        key = UUID.randomUUID().toString();
+        orderCreated = new OrderCreated(UUID.randomUUID(), "my-item");
+    }
+
+    @Benchmark
+    public void listen() {
+        handler.listen(0, key, System.currentTimeMillis(), null, orderCreated);
+    }
+}
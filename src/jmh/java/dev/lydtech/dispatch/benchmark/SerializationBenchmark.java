@@ -0,0 +1,111 @@
+package dev.lydtech.dispatch.benchmark;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import dev.lydtech.dispatch.serialization.BinaryEventSerializer;
+import dev.lydtech.dispatch.serialization.BinaryOrJsonDeserializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the inbound and outbound events, with the serializers configured as in DispatchConfiguration, in
+ * both JSON and the binary encoding.
+ *
+ * Each operation handles one record, so with the gc profiler gc.alloc.rate.norm is the allocation per record.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final String DISPATCH_TRACKING_TOPIC = "dispatch.tracking";
+    private static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
+
+    private ErrorHandlingDeserializer<Object> orderCreatedDeserializer;
+    private JsonSerializer<Object> serializer;
+    private BinaryEventSerializer binarySerializer;
+    private byte[] orderCreatedBytes;
+    private byte[] orderCreatedBinary;
+    private DispatchPreparing dispatchPreparing;
+    private OrderDispatched orderDispatched;
+    private DispatchCompleted dispatchCompleted;
+
+    @Setup
+    public void setUp() {
+        orderCreatedDeserializer = new ErrorHandlingDeserializer<>();
+        orderCreatedDeserializer.configure(Map.of(
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, BinaryOrJsonDeserializer.class,
+                JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName()), false);
+        serializer = new JsonSerializer<>();
+        binarySerializer = new BinaryEventSerializer();
+
+        UUID orderId = UUID.randomUUID();
+        try (JsonSerializer<Object> upstreamSerializer = new JsonSerializer<>()) {
+            orderCreatedBytes = upstreamSerializer.serialize(ORDER_CREATED_TOPIC, new OrderCreated(orderId, "my-item"));
+        }
+        orderCreatedBinary = binarySerializer.serialize(ORDER_CREATED_TOPIC, new OrderCreated(orderId, "my-item"));
+        dispatchPreparing = DispatchPreparing.builder().orderId(orderId).build();
+        orderDispatched = OrderDispatched.builder().orderId(orderId).processedById(UUID.randomUUID()).notes("Dispatched: my-item").build();
+        dispatchCompleted = DispatchCompleted.builder().orderId(orderId).dispatchedDate(LocalDate.now().toString()).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        orderCreatedDeserializer.close();
+        serializer.close();
+    }
+
+    @Benchmark
+    public Object deserializeOrderCreated() {
+        return orderCreatedDeserializer.deserialize(ORDER_CREATED_TOPIC, new RecordHeaders(), orderCreatedBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeDispatchPreparing() {
+        return serializer.serialize(DISPATCH_TRACKING_TOPIC, new RecordHeaders(), dispatchPreparing);
+    }
+
+    @Benchmark
+    public byte[] serializeOrderDispatched() {
+        return serializer.serialize(ORDER_DISPATCHED_TOPIC, new RecordHeaders(), orderDispatched);
+    }
+
+    @Benchmark
+    public byte[] serializeDispatchCompleted() {
+        return serializer.serialize(DISPATCH_TRACKING_TOPIC, new RecordHeaders(), dispatchCompleted);
+    }
+
+    @Benchmark
+    public Object deserializeOrderCreatedBinary() {
+        return orderCreatedDeserializer.deserialize(ORDER_CREATED_TOPIC, new RecordHeaders(), orderCreatedBinary);
+    }
+
+    @Benchmark
+    public byte[] serializeDispatchCompletedBinary() {
+        return binarySerializer.serialize(DISPATCH_TRACKING_TOPIC, new RecordHeaders(), dispatchCompleted);
+    }
+}
@@ -1,53 +1,368 @@
 package dev.lydtech.dispatch;
 
+import dev.lydtech.dispatch.client.JdkClientHttpRequestFactory;
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.concurrent.VirtualThreads;
+import dev.lydtech.dispatch.exception.BulkheadFullException;
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
 import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.PollBudgetExceededException;
 import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.handler.PollBackPressure;
+import dev.lydtech.dispatch.handler.TransactionalBatchRecoverer;
 import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.serialization.BinaryEventSerializer;
+import dev.lydtech.dispatch.serialization.BinaryOrJsonDeserializer;
+import dev.lydtech.dispatch.tracing.PollTimeInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ConsumerAwareRecordRecoverer;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.FailedRecordProcessor;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.serializer.DelegatingByTopicSerialization;
+import org.springframework.kafka.support.serializer.DelegatingByTopicSerializer;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.backoff.FixedBackOff;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Slf4j
 @ComponentScan(basePackages = {"dev.lydtech"})
 @Configuration
 public class DispatchConfiguration {
 
+    /**
+     * A lower bound on the size of a serialized order.created record, used to turn a record count into fetch.min.bytes.
+     */
+    private static final int MIN_ORDER_CREATED_RECORD_BYTES = 64;
+
+    private static final long MAX_RETRIES = 3L;
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(ConsumerFactory<String, Object> consumerFactory, KafkaTemplate<String, Object> kafkaTemplate) {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(ConsumerFactory<String, Object> consumerFactory,
+                                                                                                 KafkaTemplate<String, Object> kafkaTemplate,
+                                                                                                 @Value("${dispatch.listener.concurrency:1}") int concurrency,
+                                                                                                 ObjectProvider<KafkaTransactionManager<String, Object>> transactionManager,
+                                                                                                 DispatchMetrics dispatchMetrics,
+                                                                                                 @Value("${dispatch.stock.breaker.openMs:5000}") long breakerOpenMs,
+                                                                                                 @Value("${dispatch.stock.bulkhead.retryMs:100}") long bulkheadRetryMs,
+                                                                                                 PollBackPressure pollBackPressure) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(new DeadLetterPublishingRecoverer(kafkaTemplate), new FixedBackOff(100L, 3L));
-        errorHandler.addRetryableExceptions(RetryableException.class);
-        errorHandler.addNotRetryableExceptions(NotRetryableException.class);
-        factory.setCommonErrorHandler(errorHandler);
+        factory.setConcurrency(concurrency);
+        if (pollBackPressure.isEnabled()) {
+            factory.setRecordInterceptor(pollBackPressure);
+        }
+        configureErrorHandling(factory, kafkaTemplate, transactionManager.getIfAvailable(), dispatchMetrics, breakerOpenMs, bulkheadRetryMs);
         return factory;
     }
 
+    /**
+     * Delivers each poll to the listener as a single list.  Used by the batch listener, which identifies a failing record
+     * by throwing a BatchListenerFailedException so that only that record is retried and sent to the DLT.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> batchKafkaListenerContainerFactory(ConsumerFactory<String, Object> consumerFactory,
+                                                                                                      KafkaTemplate<String, Object> kafkaTemplate,
+                                                                                                      @Value("${dispatch.listener.concurrency:1}") int concurrency,
+                                                                                                      ObjectProvider<KafkaTransactionManager<String, Object>> transactionManager,
+                                                                                                      DispatchMetrics dispatchMetrics,
+                                                                                                      @Value("${dispatch.stock.breaker.openMs:5000}") long breakerOpenMs,
+                                                                                                      @Value("${dispatch.stock.bulkhead.retryMs:100}") long bulkheadRetryMs) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        configureErrorHandling(factory, kafkaTemplate, transactionManager.getIfAvailable(), dispatchMetrics, breakerOpenMs, bulkheadRetryMs);
+        return factory;
+    }
+
+    /**
+     * Without a transaction manager the DefaultErrorHandler retries and dead-letters failed records.  With one, each
+     * delivery (a record, or a whole poll for the batch listener) runs in a Kafka transaction that also commits the
+     * consumed offsets, so a failure aborts any outbound events already sent and the DefaultAfterRollbackProcessor then
+     * applies the same retry and DLT policy.
+     */
+    private void configureErrorHandling(ConcurrentKafkaListenerContainerFactory<String, Object> factory, KafkaTemplate<String, Object> kafkaTemplate,
+                                        KafkaTransactionManager<String, Object> transactionManager, DispatchMetrics dispatchMetrics, long breakerOpenMs,
+                                        long bulkheadRetryMs) {
+        if (transactionManager == null) {
+            factory.setCommonErrorHandler(errorHandler(kafkaTemplate, dispatchMetrics, breakerOpenMs, bulkheadRetryMs));
+            return;
+        }
+        factory.getContainerProperties().setTransactionManager(transactionManager);
+        DefaultAfterRollbackProcessor<String, Object> afterRollbackProcessor = new DefaultAfterRollbackProcessor<>(
+                deadLetterRecoverer(kafkaTemplate, dispatchMetrics), new FixedBackOff(100L, MAX_RETRIES), kafkaTemplate, true);
+        classifyExceptions(afterRollbackProcessor, breakerOpenMs, bulkheadRetryMs);
+        factory.setAfterRollbackProcessor(afterRollbackProcessor);
+    }
+
+    /**
+     * A call the stock service circuit breaker rejected was never made, so rather than using up the record's retries it
+     * is retried once per breaker open period for as long as calls are rejected.  A call the bulkhead rejected was not
+     * made either, but a slot frees up as soon as a call in progress finishes, so it is retried every bulkheadRetryMs.
+     * Records the batch listener had no time for are re-polled straight away, as often as needed.  The retry state is
+     * reset whenever the exception changes between one of these and a real failure.
+     */
+    private static void classifyExceptions(FailedRecordProcessor processor, long breakerOpenMs, long bulkheadRetryMs) {
+        processor.addRetryableExceptions(RetryableException.class, CallNotPermittedException.class, PollBudgetExceededException.class);
+        processor.addNotRetryableExceptions(NotRetryableException.class);
+        processor.setResetStateOnExceptionChange(true);
+        processor.setBackOffFunction((record, exception) -> {
+            if (isCausedBy(exception, BulkheadFullException.class)) {
+                return new FixedBackOff(bulkheadRetryMs, FixedBackOff.UNLIMITED_ATTEMPTS);
+            }
+            if (isCausedBy(exception, CallNotPermittedException.class)) {
+                return new FixedBackOff(breakerOpenMs, FixedBackOff.UNLIMITED_ATTEMPTS);
+            }
+            if (isCausedBy(exception, PollBudgetExceededException.class)) {
+                return new FixedBackOff(0L, FixedBackOff.UNLIMITED_ATTEMPTS);
+            }
+            return null;
+        });
+    }
+
+    private static boolean isCausedBy(Throwable throwable, Class<? extends Throwable> type) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The after-rollback processor can only re-seek a failed transactional batch, so in that mode the batch handler
+     * dead-letters records itself, allowing the same number of attempts as the error handler.
+     */
+    @Bean
+    public TransactionalBatchRecoverer transactionalBatchRecoverer(KafkaTemplate<String, Object> kafkaTemplate,
+                                                                   @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled,
+                                                                   DispatchMetrics dispatchMetrics) {
+        return new TransactionalBatchRecoverer(transactionsEnabled, deadLetterRecoverer(kafkaTemplate, dispatchMetrics), (int) MAX_RETRIES + 1);
+    }
+
+    /**
+     * Publishes failed records to the DLT, counting each one as a dlt outcome.
+     */
+    private static ConsumerAwareRecordRecoverer deadLetterRecoverer(KafkaTemplate<String, Object> kafkaTemplate, DispatchMetrics dispatchMetrics) {
+        DeadLetterPublishingRecoverer deadLetterPublishingRecoverer = new DeadLetterPublishingRecoverer(kafkaTemplate);
+        return (record, consumer, exception) -> {
+            deadLetterPublishingRecoverer.accept(record, consumer, exception);
+            dispatchMetrics.outcome(DispatchMetrics.OUTCOME_DLT);
+        };
+    }
+
+    /**
+     * Non-blocking retries for order.created.  A record that fails with a RetryableException is republished to
+     * order.created-retry-0, then -retry-1 and so on, and consumed again by the same listener once its backoff has
+     * elapsed, so the order.created partition keeps flowing while it waits.  Other failures, and records still failing
+     * after the last retry topic, go to order.created.DLT.
+     *
+     * The delay grows exponentially from one retry topic to the next.  Each retry topic holds records in failure order
+     * with a single delay, so the jitter is applied to each topic's delay when the instance starts, spreading the
+     * retries of instances that failed together.
+     *
+     * Retry topics replace the listener's blocking error handler, so they are only available for the record listener
+     * without transactions.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.retry.topics.enabled", havingValue = "true")
+    public RetryTopicConfiguration orderCreatedRetryTopics(KafkaTemplate<String, Object> kafkaTemplate,
+                                                           @Value("${dispatch.retry.topics.attempts:4}") int attempts,
+                                                           @Value("${dispatch.retry.topics.initialDelayMs:1000}") long initialDelayMs,
+                                                           @Value("${dispatch.retry.topics.multiplier:2.0}") double multiplier,
+                                                           @Value("${dispatch.retry.topics.maxDelayMs:30000}") long maxDelayMs,
+                                                           @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled,
+                                                           @Value("${dispatch.listener.batch:false}") boolean batchListener) {
+        if (transactionsEnabled || batchListener) {
+            throw new IllegalStateException("dispatch.retry.topics.enabled needs dispatch.transactions.enabled and dispatch.listener.batch set to false");
+        }
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic(ORDER_CREATED_TOPIC)
+                .listenerFactory("kafkaListenerContainerFactory")
+                .maxAttempts(attempts)
+                .exponentialBackoff(initialDelayMs, multiplier, maxDelayMs, true)
+                .retryTopicSuffix("-retry")
+                .suffixTopicsWithIndexValues()
+                .dltSuffix(".DLT")
+                .retryOn(List.of(RetryableException.class, CallNotPermittedException.class))
+                .traversingCauses()
+                .dltHandlerMethod("orderCreatedDltHandler", "handle")
+                .dltProcessingFailureStrategy(DltStrategy.FAIL_ON_ERROR)
+                .create(kafkaTemplate);
+    }
+
+    /**
+     * Shards each batch by record key across the configured number of workers.  With one worker the batch is processed
+     * on the listener thread.  Each listener thread submits its batch in turn, so the pool is sized for all of them.
+     *
+     * In virtual mode (Java 21+) every shard runs on its own virtual thread, so the batch is sharded maxInFlight ways
+     * and a shared limit keeps at most maxInFlight records in progress across all listener threads.
+     *
+     * In async mode each record's stock check and sends are chained on futures, per key, with at most maxInFlight keys
+     * in progress, so the batch is processed without any thread waiting on the stock service or the broker.
+     *
+     * Kafka transactions are bound to the listener thread, so with transactions enabled the batch is always processed
+     * on the listener thread.
+     */
     @Bean
-    public ConsumerFactory<String, Object> consumerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers) {
+    public KeyOrderedExecutor keyOrderedExecutor(@Value("${dispatch.listener.keyOrderedWorkers:1}") int workers,
+                                                 @Value("${dispatch.listener.concurrency:1}") int concurrency,
+                                                 @Value("${dispatch.executor.mode:platform}") String mode,
+                                                 @Value("${dispatch.executor.maxInFlight:1000}") int maxInFlight,
+                                                 @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled) {
+        if (transactionsEnabled && (workers > 1 || "virtual".equalsIgnoreCase(mode) || "async".equalsIgnoreCase(mode))) {
+            log.warn("Parallel batch processing is not available with transactions: processing on the listener thread");
+            return new KeyOrderedExecutor(1, null);
+        }
+        if ("async".equalsIgnoreCase(mode)) {
+            log.info("Processing batches asynchronously with at most " + maxInFlight + " keys in flight");
+            return KeyOrderedExecutor.async(Executors.newCachedThreadPool(asyncThreadFactory()), maxInFlight);
+        }
+        if ("virtual".equalsIgnoreCase(mode)) {
+            if (VirtualThreads.isSupported()) {
+                log.info("Processing batches on virtual threads with at most " + maxInFlight + " records in flight");
+                return new KeyOrderedExecutor(maxInFlight, VirtualThreads.newVirtualThreadPerTaskExecutor(), maxInFlight);
+            }
+            log.warn("Virtual threads need Java 21 or later, running on " + Runtime.version() + ": using platform threads");
+        }
+        if (workers == 1) {
+            return new KeyOrderedExecutor(1, null);
+        }
+        return new KeyOrderedExecutor(workers, Executors.newFixedThreadPool(workers * concurrency, new CustomizableThreadFactory("dispatch-worker-")));
+    }
+
+    private static CustomizableThreadFactory asyncThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dispatch-async-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Records the batch listener hands back for want of time are re-seeked through the error handler, but as nothing
+     * failed the resulting "Seek to current" exception is only logged at debug.
+     */
+    private DefaultErrorHandler errorHandler(KafkaTemplate<String, Object> kafkaTemplate, DispatchMetrics dispatchMetrics, long breakerOpenMs,
+                                             long bulkheadRetryMs) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(deadLetterRecoverer(kafkaTemplate, dispatchMetrics), new FixedBackOff(100L, MAX_RETRIES)) {
+            @Override
+            public void handleBatch(Exception thrownException, ConsumerRecords<?, ?> data, Consumer<?, ?> consumer,
+                                    MessageListenerContainer container, Runnable invokeListener) {
+                try {
+                    super.handleBatch(thrownException, data, consumer, container, invokeListener);
+                } catch (KafkaException e) {
+                    if (isCausedBy(thrownException, PollBudgetExceededException.class)) {
+                        throw new KafkaException(e.getMessage(), KafkaException.Level.DEBUG, e.getCause());
+                    }
+                    throw e;
+                }
+            }
+        };
+        classifyExceptions(errorHandler, breakerOpenMs, bulkheadRetryMs);
+        return errorHandler;
+    }
+
+    /**
+     * Fetches and polls are sized with the dispatch.consumer.* properties, whose defaults are the Kafka client's.  A poll
+     * of maxPollRecords records must be processed within maxPollIntervalMs, or the consumer leaves the group; see
+     * PollBackPressure for how that is kept to when the stock service slows down.
+     *
+     * In transactional batch mode a transaction covers one poll, so the poll is sized to the transaction batch: at most
+     * batchSize records, with the broker holding the fetch for up to batchTimeoutMs until about batchSize records'
+     * worth of bytes are available.
+     *
+     * The Kafka client metrics of each consumer are bound to the meter registry, including the consumer lag as
+     * kafka.consumer.fetch.manager.records.lag(.max).
+     *
+     * With tracing enabled the PollTimeInterceptor samples records for the DispatchTracer as they are polled.
+     */
+    @Bean
+    public ConsumerFactory<String, Object> consumerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                           @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled,
+                                                           @Value("${dispatch.listener.batch:false}") boolean batchListener,
+                                                           @Value("${dispatch.transactions.batchSize:1}") int transactionBatchSize,
+                                                           @Value("${dispatch.transactions.batchTimeoutMs:100}") int transactionBatchTimeoutMs,
+                                                           @Value("${dispatch.consumer.fetchMinBytes:1}") int fetchMinBytes,
+                                                           @Value("${dispatch.consumer.fetchMaxWaitMs:500}") int fetchMaxWaitMs,
+                                                           @Value("${dispatch.consumer.maxPollRecords:500}") int maxPollRecords,
+                                                           @Value("${dispatch.consumer.maxPollIntervalMs:300000}") int maxPollIntervalMs,
+                                                           @Value("${dispatch.tracing.enabled:false}") boolean tracingEnabled,
+                                                           @Value("${dispatch.tracing.sampleRate:0.01}") double tracingSampleRate,
+                                                           DispatchMetrics dispatchMetrics) {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, BinaryOrJsonDeserializer.class);
         config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName());
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(config);
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
+        if (tracingEnabled) {
+            config.put(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG, PollTimeInterceptor.class.getName());
+            config.put(PollTimeInterceptor.SAMPLE_RATE_CONFIG, tracingSampleRate);
+        }
+        if (transactionsEnabled) {
+            config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+            if (batchListener && transactionBatchSize > 1) {
+                config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, transactionBatchSize);
+                config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, transactionBatchTimeoutMs);
+                config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, transactionBatchSize * MIN_ORDER_CREATED_RECORD_BYTES);
+            }
+        }
+        DefaultKafkaConsumerFactory<String, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(config);
+        consumerFactory.addListener(new MicrometerConsumerListener<>(dispatchMetrics.getRegistry()));
+        return consumerFactory;
     }
 
     @Bean
@@ -55,17 +370,144 @@ public class DispatchConfiguration {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    /**
+     * Events are written as JSON, except to the topics listed in dispatch.serialization.binaryTopics, which get the
+     * compact binary encoding.  Consumers read either format, so a topic can be switched while it still holds records
+     * in the other.
+     *
+     * Batching, compression and in-flight requests come from the ProducerProfile named by dispatch.producer.profile,
+     * and the effective values are logged at startup.
+     */
     @Bean
-    public ProducerFactory<String, Object> producerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers) {
+    public ProducerFactory<String, Object> producerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                           @Value("${dispatch.producer.profile:default}") String producerProfile,
+                                                           @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled,
+                                                           @Value("${dispatch.transactions.idPrefix:dispatch-tx-}") String transactionIdPrefix,
+                                                           @Value("${dispatch.serialization.binaryTopics:}") String[] binaryTopics,
+                                                           DispatchMetrics dispatchMetrics) {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(config);
+        String serializersByTopic = Arrays.stream(binaryTopics)
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .map(topic -> Pattern.quote(topic) + ":" + BinaryEventSerializer.class.getName())
+                .collect(Collectors.joining(","));
+        if (!serializersByTopic.isEmpty()) {
+            config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, DelegatingByTopicSerializer.class);
+            config.put(DelegatingByTopicSerialization.VALUE_SERIALIZATION_TOPIC_CONFIG, serializersByTopic);
+            config.put(DelegatingByTopicSerialization.VALUE_SERIALIZATION_TOPIC_DEFAULT, JsonSerializer.class);
+        }
+        ProducerProfile profile = ProducerProfile.fromName(producerProfile);
+        profile.applyTo(config);
+        logProducerProfile(profile, config);
+        DefaultKafkaProducerFactory<String, Object> producerFactory = new DefaultKafkaProducerFactory<>(config);
+        producerFactory.addListener(new MicrometerProducerListener<>(dispatchMetrics.getRegistry()));
+        if (transactionsEnabled) {
+            producerFactory.setTransactionIdPrefix(transactionIdPrefix);
+        }
+        return producerFactory;
+    }
+
+    private static void logProducerProfile(ProducerProfile profile, Map<String, Object> config) {
+        Map<String, Object> effective = ProducerConfig.configDef().parse(config);
+        log.info("Producer profile " + profile.getProfileName() + ": "
+                + Stream.of(ProducerConfig.LINGER_MS_CONFIG, ProducerConfig.BATCH_SIZE_CONFIG, ProducerConfig.COMPRESSION_TYPE_CONFIG,
+                        ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, ProducerConfig.ACKS_CONFIG, ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG)
+                .map(name -> name + "=" + effective.get(name))
+                .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Makes the listener containers consume-transform-produce: the outbound events and the consumed offsets commit
+     * or abort together, so a retried record cannot leave duplicate events visible to read_committed consumers.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.transactions.enabled", havingValue = "true")
+    public KafkaTransactionManager<String, Object> kafkaTransactionManager(ProducerFactory<String, Object> producerFactory) {
+        return new KafkaTransactionManager<>(producerFactory);
+    }
+
+    @Bean
+    public RestTemplate restTemplate(ClientHttpRequestFactory stockHttpRequestFactory) {
+        return new RestTemplate(stockHttpRequestFactory);
     }
 
+    /**
+     * The HTTP transport used to call the stock service, either Apache HttpClient 5 with a pooled connection manager
+     * (the default) or the JDK HttpClient.  Both apply the connect and read timeouts, so a slow stock service cannot
+     * hold a listener thread indefinitely.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public ClientHttpRequestFactory stockHttpRequestFactory(@Value("${dispatch.stock.http.client:apache}") String httpClient,
+                                                            @Value("${dispatch.stock.http.connectTimeoutMs:1000}") long connectTimeoutMs,
+                                                            @Value("${dispatch.stock.http.readTimeoutMs:2000}") long readTimeoutMs,
+                                                            @Value("${dispatch.stock.http.connectionRequestTimeoutMs:500}") long connectionRequestTimeoutMs,
+                                                            @Value("${dispatch.stock.http.keepAliveMs:30000}") long keepAliveMs,
+                                                            @Value("${dispatch.stock.http.maxConnectionsPerRoute:20}") int maxConnectionsPerRoute,
+                                                            @Value("${dispatch.stock.http.maxConnections:50}") int maxConnections,
+                                                            ObjectProvider<MeterRegistry> meterRegistry) {
+        if ("jdk".equalsIgnoreCase(httpClient)) {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                    .build();
+            return new JdkClientHttpRequestFactory(client, Duration.ofMillis(readTimeoutMs));
+        }
+        if (!"apache".equalsIgnoreCase(httpClient)) {
+            throw new IllegalArgumentException("Unsupported dispatch.stock.http.client: " + httpClient);
+        }
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnections)
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                // Retrying a failed stock call is left to the listener's error handler.
+                .disableAutomaticRetries()
+                .build();
+        meterRegistry.ifAvailable(registry -> bindConnectionPoolMetrics(connectionManager, registry));
+        return new HttpComponentsClientHttpRequestFactory(client);
+    }
+
+    /**
+     * The JDK HttpClient behind StockServiceClient.checkAvailabilityAsync.  It reads responses on its selector thread
+     * and completes the returned futures on its executor, so no thread is held while a stock call is in progress.
+     */
+    @Bean
+    public HttpClient stockAsyncHttpClient(@Value("${dispatch.stock.http.connectTimeoutMs:1000}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    /**
+     * Pending counts requests waiting for a connection, so a sustained non-zero value means the pool is too small for
+     * the listener concurrency.
+     */
+    private static void bindConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager, MeterRegistry registry) {
+        Gauge.builder("dispatch.stock.http.pool.leased", connectionManager, manager -> manager.getTotalStats().getLeased())
+                .description("Stock service connections currently in use")
+                .register(registry);
+        Gauge.builder("dispatch.stock.http.pool.available", connectionManager, manager -> manager.getTotalStats().getAvailable())
+                .description("Idle stock service connections kept alive in the pool")
+                .register(registry);
+        Gauge.builder("dispatch.stock.http.pool.pending", connectionManager, manager -> manager.getTotalStats().getPending())
+                .description("Requests waiting for a stock service connection")
+                .register(registry);
+        Gauge.builder("dispatch.stock.http.pool.max", connectionManager, manager -> manager.getTotalStats().getMax())
+                .description("Maximum stock service connections")
+                .register(registry);
     }
 }
@@ -0,0 +1,66 @@
+package dev.lydtech.dispatch;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Named producer tunings, chosen with dispatch.producer.profile.
+ *
+ * - default: the Kafka client defaults.
+ * - low-latency: sends as soon as a record is ready, with cheap lz4 compression of whatever has accumulated.
+ * - high-throughput: waits up to 20ms to fill large zstd-compressed batches, so fewer, bigger requests reach the
+ *   broker at the cost of that wait.
+ * - durable: one request in flight per connection, so each batch is acknowledged before the next is sent, giving up
+ *   pipelining for the most conservative write path.
+ *
+ * The profiles other than default set acks=all and idempotence explicitly rather than relying on the client defaults,
+ * as the per-key ordering of the dispatch.tracking events depends on them.
+ */
+public enum ProducerProfile {
+
+    DEFAULT("default", null, null, null, null),
+    LOW_LATENCY("low-latency", 0, 16_384, "lz4", 5),
+    HIGH_THROUGHPUT("high-throughput", 20, 262_144, "zstd", 5),
+    DURABLE("durable", 5, 65_536, "zstd", 1);
+
+    private final String profileName;
+    private final Integer lingerMs;
+    private final Integer batchSize;
+    private final String compressionType;
+    private final Integer maxInFlight;
+
+    ProducerProfile(String profileName, Integer lingerMs, Integer batchSize, String compressionType, Integer maxInFlight) {
+        this.profileName = profileName;
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.compressionType = compressionType;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public static ProducerProfile fromName(String name) {
+        return Arrays.stream(values())
+                .filter(profile -> profile.profileName.equalsIgnoreCase(name.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported dispatch.producer.profile: " + name + ", expected one of "
+                        + Arrays.stream(values()).map(ProducerProfile::getProfileName).collect(Collectors.joining(", "))));
+    }
+
+    public void applyTo(Map<String, Object> config) {
+        if (this == DEFAULT) {
+            return;
+        }
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+    }
+}
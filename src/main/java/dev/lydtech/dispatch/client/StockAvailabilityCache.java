@@ -0,0 +1,252 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, in-process cache of stock availability results, consulted by the StockServiceClient before it calls out to
+ * the stock service.
+ *
+ * Available and unavailable results expire after separate TTLs.  Once expired, an entry is still served for the
+ * stale-while-revalidate period while a single background refresh fetches the current value.  When the cache is full
+ * the least recently used entry is evicted.
+ *
+ * Lookups are counted as dispatch.stock.cache.requests, by result (hit, stale or miss), and evictions as
+ * dispatch.stock.cache.evictions.
+ */
+@Slf4j
+@Component
+public class StockAvailabilityCache implements DisposableBean {
+
+    private final boolean enabled;
+    private final long positiveTtlNanos;
+    private final long negativeTtlNanos;
+    private final long staleWhileRevalidateNanos;
+    private final LongSupplier nanoClock;
+    private final Executor refreshExecutor;
+
+    private final Map<String, Entry> entries;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public StockAvailabilityCache(@Value("${dispatch.stock.cache.enabled:false}") boolean enabled,
+                                  @Value("${dispatch.stock.cache.maxSize:10000}") int maxSize,
+                                  @Value("${dispatch.stock.cache.positiveTtlMs:5000}") long positiveTtlMs,
+                                  @Value("${dispatch.stock.cache.negativeTtlMs:1000}") long negativeTtlMs,
+                                  @Value("${dispatch.stock.cache.staleWhileRevalidateMs:2000}") long staleWhileRevalidateMs,
+                                  DispatchMetrics dispatchMetrics) {
+        this(enabled, maxSize, positiveTtlMs, negativeTtlMs, staleWhileRevalidateMs, System::nanoTime,
+                Executors.newFixedThreadPool(2, refreshThreadFactory()), dispatchMetrics.getRegistry());
+    }
+
+    StockAvailabilityCache(boolean enabled, int maxSize, long positiveTtlMs, long negativeTtlMs, long staleWhileRevalidateMs,
+                           LongSupplier nanoClock, Executor refreshExecutor, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.positiveTtlNanos = TimeUnit.MILLISECONDS.toNanos(positiveTtlMs);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        this.staleWhileRevalidateNanos = TimeUnit.MILLISECONDS.toNanos(staleWhileRevalidateMs);
+        this.nanoClock = nanoClock;
+        this.refreshExecutor = refreshExecutor;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        requests(registry, "hit", hits);
+        requests(registry, "stale", staleHits);
+        requests(registry, "miss", misses);
+        FunctionCounter.builder("dispatch.stock.cache.evictions", evictions, AtomicLong::get)
+                .description("Stock availability cache entries evicted as the least recently used")
+                .register(registry);
+    }
+
+    /**
+     * A cache that is never consulted, with no refresh threads.
+     */
+    public static StockAvailabilityCache disabled() {
+        return new StockAvailabilityCache(false, 0, 0, 0, 0, System::nanoTime, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    private static void requests(MeterRegistry registry, String result, AtomicLong count) {
+        FunctionCounter.builder("dispatch.stock.cache.requests", count, AtomicLong::get)
+                .description("Stock availability cache lookups, by result")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached availability for the item, falling back to the loader on a miss.  A stale entry is returned
+     * as is while the loader refreshes it in the background.
+     */
+    public boolean get(String item, Function<String, Boolean> loader) {
+        long now = nanoClock.getAsLong();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(item);
+        }
+        if (entry != null) {
+            if (now - entry.expiresAt < 0) {
+                hits.incrementAndGet();
+                return entry.available;
+            }
+            if (now - entry.staleUntil < 0) {
+                staleHits.incrementAndGet();
+                refreshInBackground(item, loader);
+                return entry.available;
+            }
+        }
+        misses.incrementAndGet();
+        boolean available = loader.apply(item);
+        put(item, available);
+        return available;
+    }
+
+    /**
+     * As get, for a loader that completes asynchronously.  A fresh or stale entry is returned as a completed future,
+     * and a stale entry is refreshed by the loader without taking a refresh thread.
+     */
+    public CompletableFuture<Boolean> getAsync(String item, Function<String, CompletableFuture<Boolean>> loader) {
+        long now = nanoClock.getAsLong();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(item);
+        }
+        if (entry != null) {
+            if (now - entry.expiresAt < 0) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.available);
+            }
+            if (now - entry.staleUntil < 0) {
+                staleHits.incrementAndGet();
+                refreshAsync(item, loader);
+                return CompletableFuture.completedFuture(entry.available);
+            }
+        }
+        misses.incrementAndGet();
+        return loader.apply(item).thenApply(available -> {
+            put(item, available);
+            return available;
+        });
+    }
+
+    public void put(String item, boolean available) {
+        long expiresAt = nanoClock.getAsLong() + (available ? positiveTtlNanos : negativeTtlNanos);
+        Entry entry = new Entry(available, expiresAt, expiresAt + staleWhileRevalidateNanos);
+        synchronized (entries) {
+            entries.put(item, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void refreshInBackground(String item, Function<String, Boolean> loader) {
+        if (!refreshing.add(item)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(item, loader.apply(item));
+                } catch (Exception e) {
+                    log.warn("Failed to refresh stock availability for item: " + item + " - " + e.getMessage());
+                } finally {
+                    refreshing.remove(item);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(item);
+        }
+    }
+
+    private void refreshAsync(String item, Function<String, CompletableFuture<Boolean>> loader) {
+        if (!refreshing.add(item)) {
+            return;
+        }
+        CompletableFuture<Boolean> refresh;
+        try {
+            refresh = loader.apply(item);
+        } catch (RuntimeException e) {
+            refresh = CompletableFuture.failedFuture(e);
+        }
+        refresh.whenComplete((available, failure) -> {
+            if (failure == null) {
+                put(item, available);
+            } else {
+                log.warn("Failed to refresh stock availability for item: " + item + " - " + failure.getMessage());
+            }
+            refreshing.remove(item);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static CustomizableThreadFactory refreshThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("stock-cache-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private record Entry(boolean available, long expiresAt, long staleUntil) {
+    }
+}
@@ -0,0 +1,419 @@
+package dev.lydtech.dispatch.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Item availability held in a single buffer, as an open-addressing hash table of fixed-size slots.
+ *
+ * Each slot holds the item's hash, its availability and up to maxKeyBytes of its UTF-8 name, so an entry costs a few
+ * dozen bytes and no objects.  The table is sized at twice maxItems, and once maxItems items are held further new
+ * items are refused: they stay unknown, for the caller to look up elsewhere.  Removed items are deleted with backward
+ * shifting, so no tombstones build up.
+ *
+ * The buffer can be on the heap, off-heap (direct) or memory-mapped from a file.  Its header records, for each
+ * partition of the source topic, the offset after the last record applied, so that a snapshot of the buffer can be
+ * reloaded on start-up and the topic read on from there.  Heap and direct tables are written to the snapshot file by
+ * snapshot(); a memory-mapped table is its own snapshot file, which snapshot() flushes.
+ *
+ * Instances are not thread-safe.
+ */
+@Slf4j
+public class StockAvailabilityTable implements AutoCloseable {
+
+    public enum Storage { HEAP, DIRECT, MMAP }
+
+    public static final int MAX_PARTITIONS = 1024;
+    public static final int MAX_KEY_BYTES = 255;
+
+    private static final int FILE_MAGIC = 0x53544B31;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SLOTS_OFFSET = 4;
+    private static final int KEY_BYTES_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    private static final int SOURCE_OFFSET = 16;
+    private static final int PARTITION_OFFSETS = 24;
+    private static final int HEADER_BYTES = PARTITION_OFFSETS + MAX_PARTITIONS * 8;
+
+    // Slot layout: hash (int), state (byte), key length (byte), key bytes.
+    private static final int SLOT_STATE = 4;
+    private static final int SLOT_KEY_LENGTH = 5;
+    private static final int SLOT_KEY = 6;
+    private static final byte EMPTY = 0;
+    private static final byte UNAVAILABLE = 1;
+    private static final byte AVAILABLE = 2;
+
+    private final int maxItems;
+    private final int maxKeyBytes;
+    private final int slotBytes;
+    private final int slots;
+    private final int slotMask;
+    private final int source;
+    private final Storage storage;
+    private final Path file;
+    private final ByteBuffer buffer;
+    private int size;
+
+    /**
+     * source identifies what the table is built from, the topic name, so that a snapshot of another topic is not
+     * reloaded.  file is optional for heap and direct storage.
+     */
+    public StockAvailabilityTable(int maxItems, int maxKeyBytes, Storage storage, Path file, String source) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("maxItems must be at least 1");
+        }
+        if (maxKeyBytes < 1 || maxKeyBytes > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("maxKeyBytes must be between 1 and " + MAX_KEY_BYTES);
+        }
+        if (storage == Storage.MMAP && file == null) {
+            throw new IllegalArgumentException("A memory-mapped stock table needs a file");
+        }
+        this.maxItems = maxItems;
+        this.maxKeyBytes = maxKeyBytes;
+        this.slotBytes = SLOT_KEY + maxKeyBytes;
+        this.slots = powerOfTwoAtLeast(maxItems * 2L);
+        this.slotMask = slots - 1;
+        this.source = source.hashCode();
+        this.storage = storage;
+        this.file = file;
+        long bytes = HEADER_BYTES + (long) slots * slotBytes;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxItems and maxKeyBytes are too large for a stock table");
+        }
+        this.buffer = switch (storage) {
+            case HEAP -> ByteBuffer.allocate((int) bytes);
+            case DIRECT -> ByteBuffer.allocateDirect((int) bytes);
+            case MMAP -> map(file, bytes);
+        };
+        // A memory-mapped table is already loaded if its file was a valid snapshot.
+        if (isValidSnapshot(buffer) || (storage != Storage.MMAP && file != null && Files.exists(file) && load(file, bytes))) {
+            size = buffer.getInt(SIZE_OFFSET);
+            log.info("Loaded " + size + " stock items from snapshot " + file);
+        } else {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the availability of the item, or null if the table does not hold it.
+     */
+    public Boolean get(String item) {
+        int length = asciiLength(item);
+        if (length < 0) {
+            return get(item.getBytes(StandardCharsets.UTF_8));
+        }
+        if (length > maxKeyBytes) {
+            return null;
+        }
+        int hash = hash(item);
+        int position = hash & slotMask;
+        while (true) {
+            int slot = slotOffset(position);
+            byte state = buffer.get(slot + SLOT_STATE);
+            if (state == EMPTY) {
+                return null;
+            }
+            if (buffer.getInt(slot) == hash && keyEquals(slot, item, length)) {
+                return state == AVAILABLE;
+            }
+            position = (position + 1) & slotMask;
+        }
+    }
+
+    private Boolean get(byte[] key) {
+        int position = find(key, hash(key));
+        if (position < 0) {
+            return null;
+        }
+        return buffer.get(slotOffset(position) + SLOT_STATE) == AVAILABLE;
+    }
+
+    /**
+     * Sets the item's availability, returning false if it is new and the table is full or its name is too long.
+     */
+    public boolean put(String item, boolean available) {
+        byte[] key = item.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > maxKeyBytes) {
+            return false;
+        }
+        int hash = hash(key);
+        int position = find(key, hash);
+        if (position < 0) {
+            if (size >= maxItems) {
+                return false;
+            }
+            position = hash & slotMask;
+            while (buffer.get(slotOffset(position) + SLOT_STATE) != EMPTY) {
+                position = (position + 1) & slotMask;
+            }
+            int slot = slotOffset(position);
+            buffer.putInt(slot, hash);
+            buffer.put(slot + SLOT_KEY_LENGTH, (byte) key.length);
+            buffer.put(slot + SLOT_KEY, key);
+            setSize(size + 1);
+        }
+        buffer.put(slotOffset(position) + SLOT_STATE, available ? AVAILABLE : UNAVAILABLE);
+        return true;
+    }
+
+    public void remove(String item) {
+        byte[] key = item.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > maxKeyBytes) {
+            return;
+        }
+        int gap = find(key, hash(key));
+        if (gap < 0) {
+            return;
+        }
+        clearSlot(gap);
+        setSize(size - 1);
+        int position = gap;
+        while (true) {
+            position = (position + 1) & slotMask;
+            int slot = slotOffset(position);
+            if (buffer.get(slot + SLOT_STATE) == EMPTY) {
+                return;
+            }
+            int home = buffer.getInt(slot) & slotMask;
+            // The occupant can fill the gap unless its home position lies cyclically after the gap.
+            if (((position - home) & slotMask) >= ((position - gap) & slotMask)) {
+                buffer.put(slotOffset(gap), buffer, slot, slotBytes);
+                clearSlot(position);
+                gap = position;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The offset after the last record applied from the partition, or -1 if none has been.
+     */
+    public long offset(int partition) {
+        return buffer.getLong(PARTITION_OFFSETS + checkPartition(partition) * 8);
+    }
+
+    public void setOffset(int partition, long offset) {
+        buffer.putLong(PARTITION_OFFSETS + checkPartition(partition) * 8, offset);
+    }
+
+    /**
+     * Empties the table and forgets the partition offsets.
+     */
+    public void clear() {
+        for (int position = 0; position < slots; position++) {
+            clearSlot(position);
+        }
+        for (int partition = 0; partition < MAX_PARTITIONS; partition++) {
+            setOffset(partition, -1L);
+        }
+        buffer.putInt(MAGIC_OFFSET, FILE_MAGIC);
+        buffer.putInt(SLOTS_OFFSET, slots);
+        buffer.putInt(KEY_BYTES_OFFSET, maxKeyBytes);
+        buffer.putInt(SOURCE_OFFSET, source);
+        setSize(0);
+    }
+
+    /**
+     * Persists the table and its offsets to the file, if it has one.  A heap or direct table is written to a temporary
+     * file that then replaces the snapshot, so a crash mid-write leaves the previous snapshot in place.
+     */
+    public void snapshot() {
+        if (file == null) {
+            return;
+        }
+        if (storage == Storage.MMAP) {
+            ((MappedByteBuffer) buffer).force();
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer contents = buffer.duplicate().clear();
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write stock snapshot " + temporary, e);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to replace stock snapshot " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshot();
+    }
+
+    private boolean isValidSnapshot(ByteBuffer candidate) {
+        return candidate.getInt(MAGIC_OFFSET) == FILE_MAGIC
+                && candidate.getInt(SLOTS_OFFSET) == slots
+                && candidate.getInt(KEY_BYTES_OFFSET) == maxKeyBytes
+                && candidate.getInt(SOURCE_OFFSET) == source;
+    }
+
+    private boolean load(Path path, long bytes) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != bytes) {
+                log.warn("Stock snapshot " + path + " does not match the table size: starting empty");
+                return false;
+            }
+            ByteBuffer contents = buffer.duplicate().clear();
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                // Read until the buffer is full.
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read stock snapshot " + path + ": starting empty", e);
+            return false;
+        }
+        if (!isValidSnapshot(buffer)) {
+            log.warn("Stock snapshot " + path + " is for another table or topic: starting empty");
+            return false;
+        }
+        return true;
+    }
+
+    private static MappedByteBuffer map(Path path, long bytes) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long existingSize = channel.size();
+            if (existingSize > bytes) {
+                channel.truncate(bytes);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            if (existingSize > 0 && existingSize != bytes) {
+                log.warn("Stock snapshot " + path + " does not match the table size: starting empty");
+                mapped.putInt(MAGIC_OFFSET, 0);
+            }
+            return mapped;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map stock snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Returns the slot position holding the key, or -1.
+     */
+    private int find(byte[] key, int hash) {
+        int position = hash & slotMask;
+        while (true) {
+            int slot = slotOffset(position);
+            if (buffer.get(slot + SLOT_STATE) == EMPTY) {
+                return -1;
+            }
+            if (buffer.getInt(slot) == hash && keyEquals(slot, key)) {
+                return position;
+            }
+            position = (position + 1) & slotMask;
+        }
+    }
+
+    private boolean keyEquals(int slot, byte[] key) {
+        if (Byte.toUnsignedInt(buffer.get(slot + SLOT_KEY_LENGTH)) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(slot + SLOT_KEY + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares an ASCII item, whose UTF-8 bytes are its chars, without encoding it.
+     */
+    private boolean keyEquals(int slot, String item, int length) {
+        if (Byte.toUnsignedInt(buffer.get(slot + SLOT_KEY_LENGTH)) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(slot + SLOT_KEY + i) != (byte) item.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearSlot(int position) {
+        int slot = slotOffset(position);
+        buffer.putInt(slot, 0);
+        buffer.put(slot + SLOT_STATE, EMPTY);
+        buffer.put(slot + SLOT_KEY_LENGTH, (byte) 0);
+    }
+
+    private void setSize(int size) {
+        this.size = size;
+        buffer.putInt(SIZE_OFFSET, size);
+    }
+
+    private int slotOffset(int position) {
+        return HEADER_BYTES + position * slotBytes;
+    }
+
+    private static int checkPartition(int partition) {
+        if (partition < 0 || partition >= MAX_PARTITIONS) {
+            throw new IllegalArgumentException("A stock table tracks at most " + MAX_PARTITIONS + " partitions");
+        }
+        return partition;
+    }
+
+    /**
+     * The item's length if it is all ASCII, otherwise -1.
+     */
+    private static int asciiLength(String item) {
+        int length = item.length();
+        for (int i = 0; i < length; i++) {
+            if (item.charAt(i) >= 0x80) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    private static int hash(byte[] key) {
+        int hash = 0;
+        for (byte b : key) {
+            hash = hash * 31 + (b & 0xFF);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * As hash(byte[]) of the item's UTF-8 bytes, for an ASCII item.
+     */
+    private static int hash(String item) {
+        int hash = 0;
+        for (int i = 0; i < item.length(); i++) {
+            hash = hash * 31 + item.charAt(i);
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int powerOfTwoAtLeast(long value) {
+        long power = Long.highestOneBit(Math.max(1L, value - 1)) << 1;
+        if (power > 1 << 30) {
+            throw new IllegalArgumentException("maxItems is too large");
+        }
+        return (int) power;
+    }
+}
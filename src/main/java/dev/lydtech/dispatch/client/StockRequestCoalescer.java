@@ -0,0 +1,118 @@
+package dev.lydtech.dispatch.client;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Merges concurrent single-item availability checks into bulk lookups.
+ *
+ * The first caller to arrive opens a batch and becomes its leader: it waits for the coalescing window to pass (or for
+ * the batch to fill up), then makes one bulk call on its own thread for every item collected in the meantime.  Callers
+ * asking for an item that is already in an open or executing batch share that batch's result rather than adding a
+ * second lookup for it.
+ */
+public class StockRequestCoalescer {
+
+    private final Function<Collection<String>, Map<String, Boolean>> bulkLookup;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    // A lock rather than a monitor, so that waiting out the window does not pin a virtual thread to its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchClosed = lock.newCondition();
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new HashMap<>();
+    private Map<String, CompletableFuture<Boolean>> openBatch;
+
+    public StockRequestCoalescer(Function<Collection<String>, Map<String, Boolean>> bulkLookup, long windowMillis, int maxBatchSize) {
+        this.bulkLookup = bulkLookup;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public boolean checkAvailability(String item) {
+        CompletableFuture<Boolean> result;
+        Map<String, CompletableFuture<Boolean>> batchToLead = null;
+        lock.lock();
+        try {
+            result = inFlight.get(item);
+            if (result == null) {
+                if (openBatch == null) {
+                    openBatch = new LinkedHashMap<>();
+                    batchToLead = openBatch;
+                }
+                result = new CompletableFuture<>();
+                openBatch.put(item, result);
+                inFlight.put(item, result);
+                if (openBatch.size() >= maxBatchSize) {
+                    // Full, so close it now and wake the leader rather than waiting out the window.
+                    openBatch = null;
+                    batchClosed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batchToLead != null) {
+            awaitWindow(batchToLead);
+            execute(batchToLead);
+        }
+        return await(result);
+    }
+
+    private void awaitWindow(Map<String, CompletableFuture<Boolean>> batch) {
+        lock.lock();
+        try {
+            long remaining = windowNanos;
+            while (openBatch == batch && remaining > 0) {
+                remaining = batchClosed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+            lock.unlock();
+        }
+    }
+
+    private void execute(Map<String, CompletableFuture<Boolean>> batch) {
+        try {
+            Map<String, Boolean> availability = bulkLookup.apply(batch.keySet());
+            batch.forEach((item, future) -> future.complete(Boolean.TRUE.equals(availability.get(item))));
+        } catch (Throwable e) {
+            // Whatever the lookup throws, every caller waiting on the batch must be woken with it.
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            lock.lock();
+            try {
+                batch.forEach(inFlight::remove);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static boolean await(CompletableFuture<Boolean> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            // Rethrow the lookup's own exception so callers see the same RetryableException as a direct call.
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.exception.BulkheadFullException;
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and bulkhead for the calls the StockServiceClient makes to the stock service.
+ *
+ * The breaker keeps the outcomes of the last windowSize calls.  Once at least minimumCalls are recorded and
+ * failureRateThreshold percent of them failed, it opens and rejects calls without making them.  After openMs it
+ * half-opens and lets halfOpenCalls probe calls through: if they all succeed it closes, and if any fails it opens
+ * again.  Only RetryableExceptions (server errors and timeouts) count as failures, as any other response shows the
+ * stock service is up.
+ *
+ * The bulkhead allows at most maxConcurrentCalls calls in progress, waiting up to maxWaitMs for one to finish, so a
+ * slow stock service cannot hold every worker thread.  Zero means no limit.
+ *
+ * Rejected calls throw a CallNotPermittedException, or for callAsync complete exceptionally with one: its
+ * BulkheadFullException subclass when the bulkhead is full.  An async call never waits for the bulkhead, whatever
+ * maxWaitMs is, as that would block the thread starting it.  State listeners are called on the thread that changed the
+ * state, with the breaker locked, so they must not block.
+ */
+@Slf4j
+@Component
+public class StockServiceCircuitBreaker implements DisposableBean {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final Semaphore bulkhead;
+    private final long maxWaitMs;
+    private final LongSupplier nanoClock;
+    private final ScheduledExecutorService scheduler;
+    private final List<Consumer<State>> stateListeners = new CopyOnWriteArrayList<>();
+    private final Counter openRejections;
+    private final Counter bulkheadRejections;
+
+    // Guarded by this.  The window is a ring of the latest outcomes, true for a failure.
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCalls;
+    private int windowFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    @Autowired
+    public StockServiceCircuitBreaker(@Value("${dispatch.stock.breaker.enabled:false}") boolean enabled,
+                                      @Value("${dispatch.stock.breaker.windowSize:20}") int windowSize,
+                                      @Value("${dispatch.stock.breaker.minimumCalls:10}") int minimumCalls,
+                                      @Value("${dispatch.stock.breaker.failureRateThreshold:50}") int failureRateThreshold,
+                                      @Value("${dispatch.stock.breaker.openMs:5000}") long openMs,
+                                      @Value("${dispatch.stock.breaker.halfOpenCalls:3}") int halfOpenCalls,
+                                      @Value("${dispatch.stock.bulkhead.maxConcurrentCalls:0}") int maxConcurrentCalls,
+                                      @Value("${dispatch.stock.bulkhead.maxWaitMs:0}") long maxWaitMs,
+                                      DispatchMetrics dispatchMetrics) {
+        this(enabled, windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenCalls, maxConcurrentCalls, maxWaitMs,
+                dispatchMetrics.getRegistry(), System::nanoTime, enabled ? Executors.newSingleThreadScheduledExecutor(schedulerThreadFactory()) : null);
+    }
+
+    /**
+     * Without a scheduler the breaker only half-opens when a call is made after openMs.
+     */
+    StockServiceCircuitBreaker(boolean enabled, int windowSize, int minimumCalls, int failureRateThreshold, long openMs, int halfOpenCalls,
+                               int maxConcurrentCalls, long maxWaitMs, MeterRegistry registry, LongSupplier nanoClock,
+                               ScheduledExecutorService scheduler) {
+        this.enabled = enabled;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.bulkhead = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+        this.maxWaitMs = maxWaitMs;
+        this.nanoClock = nanoClock;
+        this.scheduler = scheduler;
+
+        for (State gaugeState : State.values()) {
+            Gauge.builder("dispatch.stock.breaker.state", this, breaker -> breaker.getState() == gaugeState ? 1 : 0)
+                    .description("1 for the stock service circuit breaker's current state, 0 for the others")
+                    .tag("state", gaugeState.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        Gauge.builder("dispatch.stock.breaker.failure.rate", this, StockServiceCircuitBreaker::getFailureRate)
+                .description("Percentage of the stock service calls in the breaker's window that failed")
+                .register(registry);
+        this.openRejections = rejections(registry, "open");
+        this.bulkheadRejections = rejections(registry, "bulkhead");
+    }
+
+    private static Counter rejections(MeterRegistry registry, String reason) {
+        return Counter.builder("dispatch.stock.breaker.rejected")
+                .description("Stock service calls rejected without being made")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public void addStateListener(Consumer<State> listener) {
+        stateListeners.add(listener);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getOpenDuration() {
+        return Duration.ofNanos(openNanos);
+    }
+
+    public synchronized double getFailureRate() {
+        return windowCalls == 0 ? 0.0 : 100.0 * windowFailures / windowCalls;
+    }
+
+    public <T> T call(Supplier<T> call) {
+        acquireBulkhead();
+        try {
+            if (!enabled) {
+                return call.get();
+            }
+            acquirePermission();
+            boolean failed = true;
+            try {
+                T result = call.get();
+                failed = false;
+                return result;
+            } catch (RetryableException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                failed = false;
+                throw e;
+            } finally {
+                onResult(failed);
+            }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * As call, for a call whose outcome is the completion of the future it returns.  The outcome is recorded, and the
+     * bulkhead permit released, when that future completes.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            bulkheadRejections.increment();
+            return CompletableFuture.failedFuture(new BulkheadFullException("Stock service bulkhead is full"));
+        }
+        CompletableFuture<T> result;
+        try {
+            if (enabled) {
+                acquirePermission();
+            }
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, failure) -> {
+            if (enabled && !(unwrap(failure) instanceof CallNotPermittedException)) {
+                onResult(unwrap(failure) instanceof RetryableException);
+            }
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private void acquireBulkhead() {
+        if (bulkhead == null) {
+            return;
+        }
+        try {
+            if (!bulkhead.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                bulkheadRejections.increment();
+                throw new BulkheadFullException("Stock service bulkhead is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RetryableException(e);
+        }
+    }
+
+    private synchronized void acquirePermission() {
+        if (state == State.OPEN) {
+            halfOpenIfDue();
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && halfOpenPermitted < halfOpenCalls) {
+            halfOpenPermitted++;
+            return;
+        }
+        openRejections.increment();
+        throw new CallNotPermittedException("Stock service circuit breaker is " + state);
+    }
+
+    private synchronized void onResult(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // The call was made before the breaker opened.
+            return;
+        }
+        if (windowCalls == window.length) {
+            windowFailures -= window[windowNext] ? 1 : 0;
+        } else {
+            windowCalls++;
+        }
+        window[windowNext] = failed;
+        windowFailures += failed ? 1 : 0;
+        windowNext = (windowNext + 1) % window.length;
+        if (windowCalls >= minimumCalls && windowFailures * 100L >= (long) failureRateThreshold * windowCalls) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void halfOpenIfDue() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Stock service circuit breaker {} -> {} (failure rate {}%)", state, newState, getFailureRate());
+        state = newState;
+        switch (newState) {
+            case OPEN -> {
+                openedAt = nanoClock.getAsLong();
+                if (scheduler != null) {
+                    scheduler.schedule(this::halfOpenIfDue, openNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            case HALF_OPEN -> {
+                halfOpenPermitted = 0;
+                halfOpenSucceeded = 0;
+            }
+            case CLOSED -> {
+                windowNext = 0;
+                windowCalls = 0;
+                windowFailures = 0;
+            }
+        }
+        stateListeners.forEach(listener -> listener.accept(newState));
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static CustomizableThreadFactory schedulerThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("stock-breaker-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -1,34 +1,115 @@
 package dev.lydtech.dispatch.client;
 
 import dev.lydtech.dispatch.exception.RetryableException;
-import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Component
 public class StockServiceClient {
+    private static final ParameterizedTypeReference<Map<String, Boolean>> BULK_RESPONSE_TYPE = new ParameterizedTypeReference<>() {};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+
     private final RestTemplate restTemplate;
     private final String stockServiceEndpoint;
+    private final UriComponents availabilityUri;
+    private final StockRequestCoalescer coalescer;
+    private final StockAvailabilityCache cache;
+    private final StockSnapshotStore snapshot;
+    private final StockServiceCircuitBreaker circuitBreaker;
+    private final HttpClient asyncHttpClient;
+    private final Duration readTimeout;
 
-    public StockServiceClient(@Autowired RestTemplate restTemplate, @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint) {
+    public StockServiceClient(@Autowired RestTemplate restTemplate,
+                              @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint,
+                              @Value("${dispatch.stock.coalesce.enabled:false}") boolean coalesceEnabled,
+                              @Value("${dispatch.stock.coalesce.windowMs:5}") long coalesceWindowMs,
+                              @Value("${dispatch.stock.coalesce.maxBatchSize:100}") int coalesceMaxBatchSize,
+                              StockAvailabilityCache cache,
+                              StockSnapshotStore snapshot,
+                              StockServiceCircuitBreaker circuitBreaker,
+                              HttpClient stockAsyncHttpClient,
+                              @Value("${dispatch.stock.http.readTimeoutMs:2000}") long readTimeoutMs) {
         this.restTemplate = restTemplate;
         this.stockServiceEndpoint = stockServiceEndpoint;
+        this.availabilityUri = UriComponentsBuilder.fromUriString(stockServiceEndpoint)
+                .queryParam("item", "{item}")
+                .encode()
+                .build();
+        this.coalescer = coalesceEnabled ? new StockRequestCoalescer(this::checkAvailability, coalesceWindowMs, coalesceMaxBatchSize) : null;
+        this.cache = cache;
+        this.snapshot = snapshot;
+        this.circuitBreaker = circuitBreaker;
+        this.asyncHttpClient = stockAsyncHttpClient;
+        this.readTimeout = readTimeoutMs > 0 ? Duration.ofMillis(readTimeoutMs) : null;
     }
 
     /**
      * The stock service returns true if item is available, false otherwise.
      */
     public String checkAvailability(String item) {
+        return checkAvailability(item, false);
+    }
+
+    /**
+     * As checkAvailability(item), but a consistent read always goes to the stock service rather than being answered
+     * from the snapshot or the cache.  Its result still refreshes the cache.
+     */
+    public String checkAvailability(String item, boolean consistentRead) {
+        if (!consistentRead) {
+            Boolean available = snapshot.get(item);
+            if (available != null) {
+                return String.valueOf(available);
+            }
+        }
+        if (!cache.isEnabled()) {
+            return fetchAvailability(item);
+        }
+        if (consistentRead) {
+            boolean available = Boolean.parseBoolean(fetchAvailability(item));
+            cache.put(item, available);
+            return String.valueOf(available);
+        }
+        return String.valueOf(cache.get(item, cachedItem -> Boolean.parseBoolean(fetchAvailability(cachedItem))));
+    }
+
+    /**
+     * When coalescing is enabled, concurrent checks are merged into bulk lookups.
+     */
+    private String fetchAvailability(String item) {
+        if (coalescer != null) {
+            return String.valueOf(coalescer.checkAvailability(item));
+        }
+        return circuitBreaker.call(() -> getAvailability(item));
+    }
+
+    private String getAvailability(String item) {
         try {
-            ResponseEntity<String> response = restTemplate.getForEntity(stockServiceEndpoint+"?item="+item, String.class);
+            ResponseEntity<String> response = restTemplate.getForEntity(availabilityUri.expand(item).toUri(), String.class);
             if (response.getStatusCodeValue() != 200) {
                 throw new RuntimeException("error " + response.getStatusCodeValue());
             }
@@ -41,4 +122,115 @@ public class StockServiceClient {
             throw e;
         }
     }
+
+    /**
+     * As checkAvailability(item), but the lookup is made with the non-blocking HTTP client, so no thread waits on the
+     * stock service.  The future completes with a RetryableException for a server error or an I/O failure, as the
+     * blocking call would throw, and is already complete when the snapshot or the cache answers.  Async lookups are not
+     * coalesced.
+     */
+    public CompletableFuture<Boolean> checkAvailabilityAsync(String item) {
+        Boolean available = snapshot.get(item);
+        if (available != null) {
+            return CompletableFuture.completedFuture(available);
+        }
+        if (!cache.isEnabled()) {
+            return fetchAvailabilityAsync(item);
+        }
+        return cache.getAsync(item, this::fetchAvailabilityAsync);
+    }
+
+    private CompletableFuture<Boolean> fetchAvailabilityAsync(String item) {
+        return circuitBreaker.callAsync(() -> getAvailabilityAsync(item));
+    }
+
+    private CompletableFuture<Boolean> getAvailabilityAsync(String item) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(availabilityUri.expand(item).toUri()).GET();
+        if (readTimeout != null) {
+            request.timeout(readTimeout);
+        }
+        return asyncHttpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                        if (cause instanceof IOException ioException) {
+                            log.warn("Failure calling external service", cause);
+                            throw new RetryableException(ioException);
+                        }
+                        log.error("Exception thrown: " + cause.getClass().getName(), cause);
+                        throw new CompletionException(cause);
+                    }
+                    if (response.statusCode() >= 500) {
+                        log.warn("Failure calling external service: status {}", response.statusCode());
+                        throw new RetryableException("error " + response.statusCode());
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new RuntimeException("error " + response.statusCode());
+                    }
+                    return parseAvailability(response.body());
+                });
+    }
+
+    /**
+     * Reads the body as Boolean.parseBoolean would read it as a String, comparing the bytes directly.
+     */
+    static boolean parseAvailability(byte[] body) {
+        if (body == null || body.length != TRUE.length) {
+            return false;
+        }
+        for (int i = 0; i < TRUE.length; i++) {
+            // Setting 0x20 lower-cases an ASCII letter.
+            if ((body[i] | 0x20) != TRUE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks several items with a single call to the stock service's bulk endpoint, which returns a JSON object mapping
+     * each item to its availability.  Items missing from the response are reported as unavailable.  Items the snapshot
+     * holds are answered from it, and the rest asked for.
+     */
+    public Map<String, Boolean> checkAvailability(Collection<String> items) {
+        if (!snapshot.isEnabled()) {
+            return circuitBreaker.call(() -> getBulkAvailability(items));
+        }
+        Map<String, Boolean> availability = new HashMap<>();
+        List<String> remaining = new ArrayList<>();
+        for (String item : items) {
+            Boolean available = snapshot.get(item);
+            if (available != null) {
+                availability.put(item, available);
+            } else {
+                remaining.add(item);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            availability.putAll(circuitBreaker.call(() -> getBulkAvailability(remaining)));
+        }
+        return availability;
+    }
+
+    private Map<String, Boolean> getBulkAvailability(Collection<String> items) {
+        URI uri = UriComponentsBuilder.fromUriString(stockServiceEndpoint)
+                .path("/bulk")
+                .queryParam("item", items.toArray())
+                .encode()
+                .build()
+                .toUri();
+        try {
+            ResponseEntity<Map<String, Boolean>> response = restTemplate.exchange(uri, HttpMethod.GET, null, BULK_RESPONSE_TYPE);
+            if (response.getStatusCodeValue() != 200) {
+                throw new RuntimeException("error " + response.getStatusCodeValue());
+            }
+            return response.getBody() != null ? response.getBody() : Map.of();
+        } catch (HttpServerErrorException | ResourceAccessException e) {
+            log.warn("Failure calling external service", e);
+            throw new RetryableException(e);
+        } catch (Exception e) {
+            log.error("Exception thrown: " + e.getClass().getName(), e);
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,301 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.startup.StartupWarmUp;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Stock availability materialized from a compacted topic, consulted by the StockServiceClient before it calls out to
+ * the stock service.
+ *
+ * Each record on the topic is keyed by item, with a value of true or false as the stock service would return it, and a
+ * null value (a tombstone) removes the item.  A background thread reads every partition of the topic into a
+ * StockAvailabilityTable, without a consumer group, and keeps tailing it.  On start-up the table is reloaded from its
+ * snapshot file, when one is configured, and the topic read on from the offsets recorded with it; if those offsets are
+ * no longer on the topic, the table is rebuilt from the beginning.  The snapshot is written every snapshotIntervalMs
+ * and on shutdown.
+ *
+ * The store only answers once it has read up to the end offsets of the topic taken when it started, and only while
+ * its last poll was within maxStalenessMs, so a stalled reader falls back to the stock service rather than serving
+ * stale availability.  Items it does not hold are also left to the stock service.
+ *
+ * Lookups are lock-free unless they race with the reader applying a poll.  The item count and the time since the last
+ * poll are published as dispatch.stock.snapshot.*
+ */
+@Slf4j
+@Component
+public class StockSnapshotStore implements SmartLifecycle {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final boolean enabled;
+    private final String topic;
+    private final long snapshotIntervalNanos;
+    private final long maxStalenessNanos;
+    private final Supplier<Consumer<String, byte[]>> consumers;
+    private final Supplier<StockAvailabilityTable> tables;
+    private final LongSupplier nanoClock;
+    private final StampedLock lock = new StampedLock();
+
+    private volatile StockAvailabilityTable table;
+    private volatile Consumer<String, byte[]> consumer;
+    private volatile Thread reader;
+    private volatile boolean running;
+    private volatile boolean caughtUp;
+    private volatile long lastPollNanos;
+
+    @Autowired
+    public StockSnapshotStore(@Value("${dispatch.stock.snapshot.enabled:false}") boolean enabled,
+                              @Value("${dispatch.stock.snapshot.topic:stock.availability}") String topic,
+                              @Value("${dispatch.stock.snapshot.maxItems:1000000}") int maxItems,
+                              @Value("${dispatch.stock.snapshot.maxKeyBytes:64}") int maxKeyBytes,
+                              @Value("${dispatch.stock.snapshot.storage:heap}") String storage,
+                              @Value("${dispatch.stock.snapshot.file:}") String file,
+                              @Value("${dispatch.stock.snapshot.snapshotIntervalMs:60000}") long snapshotIntervalMs,
+                              @Value("${dispatch.stock.snapshot.maxStalenessMs:5000}") long maxStalenessMs,
+                              @Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                              DispatchMetrics dispatchMetrics) {
+        this(enabled, topic, snapshotIntervalMs, maxStalenessMs,
+                () -> new KafkaConsumer<>(consumerProperties(bootstrapServers), new StringDeserializer(), new ByteArrayDeserializer()),
+                () -> new StockAvailabilityTable(maxItems, maxKeyBytes, StockAvailabilityTable.Storage.valueOf(storage.toUpperCase(Locale.ROOT)),
+                        file.isEmpty() ? null : Path.of(file), topic),
+                System::nanoTime, dispatchMetrics.getRegistry());
+    }
+
+    StockSnapshotStore(boolean enabled, String topic, long snapshotIntervalMs, long maxStalenessMs,
+                       Supplier<Consumer<String, byte[]>> consumers, Supplier<StockAvailabilityTable> tables,
+                       LongSupplier nanoClock, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.topic = topic;
+        this.snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(snapshotIntervalMs);
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMs);
+        this.consumers = consumers;
+        this.tables = tables;
+        this.nanoClock = nanoClock;
+        Gauge.builder("dispatch.stock.snapshot.items", this, store -> store.table != null ? store.table.size() : 0)
+                .description("Items held in the stock snapshot")
+                .register(registry);
+        Gauge.builder("dispatch.stock.snapshot.staleness", this, store -> store.lastPollNanos == 0 ? 0
+                        : TimeUnit.NANOSECONDS.toMillis(store.nanoClock.getAsLong() - store.lastPollNanos))
+                .description("Milliseconds since the stock snapshot last polled its topic")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * A store that never answers, for a StockServiceClient that always calls the stock service.
+     */
+    public static StockSnapshotStore disabled() {
+        return new StockSnapshotStore(false, "", 0, 0, () -> null, () -> null, System::nanoTime, new SimpleMeterRegistry());
+    }
+
+    private static Map<String, Object> consumerProperties(String bootstrapServers) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.put(ConsumerConfig.CLIENT_ID_CONFIG, "dispatch-stock-snapshot");
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return properties;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True once the store has caught up with the topic and while its reader keeps polling.
+     */
+    public boolean isUpToDate() {
+        return caughtUp && nanoClock.getAsLong() - lastPollNanos <= maxStalenessNanos;
+    }
+
+    /**
+     * Returns the item's availability, or null when the store is not up to date or does not hold the item.
+     */
+    public Boolean get(String item) {
+        if (!enabled || !isUpToDate()) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Boolean available = table.get(item);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                available = table.get(item);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Before the listener containers, and the warm-up, so the table is loading while they start.
+     */
+    @Override
+    public int getPhase() {
+        return StartupWarmUp.PHASE - 100;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (!enabled) {
+            return;
+        }
+        table = tables.get();
+        consumer = consumers.get();
+        reader = new Thread(this::read, "stock-snapshot");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (reader != null) {
+            consumer.wakeup();
+            try {
+                reader.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reader = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void read() {
+        try {
+            List<TopicPartition> partitions = consumer.partitionsFor(topic).stream()
+                    .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            seek(partitions, consumer.beginningOffsets(partitions), endOffsets);
+            long lastSnapshotNanos = nanoClock.getAsLong();
+            while (running) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                apply(records);
+                lastPollNanos = nanoClock.getAsLong();
+                if (!caughtUp && reachedEnd(endOffsets)) {
+                    caughtUp = true;
+                    log.info("Stock snapshot caught up with {}: {} items", topic, table.size());
+                }
+                if (lastPollNanos - lastSnapshotNanos >= snapshotIntervalNanos) {
+                    snapshot();
+                    lastSnapshotNanos = lastPollNanos;
+                }
+            }
+        } catch (WakeupException e) {
+            // Stopping.
+        } catch (Exception e) {
+            log.error("Stock snapshot stopped reading {}: the stock service will be called instead", topic, e);
+        } finally {
+            caughtUp = false;
+            snapshot();
+            consumer.close();
+        }
+    }
+
+    /**
+     * Resumes each partition from the table's offset, unless any offset is outside the topic, when the topic has been
+     * recreated or truncated since the snapshot, and the table is rebuilt.
+     */
+    private void seek(List<TopicPartition> partitions, Map<TopicPartition, Long> beginningOffsets, Map<TopicPartition, Long> endOffsets) {
+        boolean resumable = partitions.stream().allMatch(partition -> {
+            long offset = table.offset(partition.partition());
+            return offset < 0 ? table.size() == 0 : offset >= beginningOffsets.get(partition) && offset <= endOffsets.get(partition);
+        });
+        if (!resumable) {
+            log.warn("Stock snapshot offsets are not on {}: rebuilding it", topic);
+            long stamp = lock.writeLock();
+            try {
+                table.clear();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        for (TopicPartition partition : partitions) {
+            long offset = table.offset(partition.partition());
+            if (offset >= 0) {
+                consumer.seek(partition, offset);
+            } else {
+                consumer.seekToBeginning(List.of(partition));
+            }
+        }
+    }
+
+    private void apply(ConsumerRecords<String, byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (ConsumerRecord<String, byte[]> record : records) {
+                if (record.key() != null) {
+                    if (record.value() == null) {
+                        table.remove(record.key());
+                    } else if (!table.put(record.key(), StockServiceClient.parseAvailability(record.value()))) {
+                        log.warn("Stock snapshot is full or the item name is too long: {} is left to the stock service", record.key());
+                    }
+                }
+                table.setOffset(record.partition(), record.offset() + 1);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean reachedEnd(Map<TopicPartition, Long> endOffsets) {
+        return endOffsets.entrySet().stream().allMatch(endOffset -> consumer.position(endOffset.getKey()) >= endOffset.getValue());
+    }
+
+    private void snapshot() {
+        long stamp = lock.readLock();
+        try {
+            table.snapshot();
+        } catch (Exception e) {
+            log.warn("Unable to snapshot the stock table", e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
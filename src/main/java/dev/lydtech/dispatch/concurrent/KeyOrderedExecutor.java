@@ -0,0 +1,250 @@
+package dev.lydtech.dispatch.concurrent;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Processes the items of a batch in parallel while keeping the order of items that share a key.
+ *
+ * Items are sharded by key hash across a fixed number of workers, and each worker takes its shard's items in batch
+ * order.  When an item fails its worker stops, and every worker skips items positioned after the lowest failure seen
+ * so far.  When execute throws, every item before the reported index has therefore been processed successfully, so
+ * the caller can safely commit up to that point and re-deliver the rest.
+ *
+ * The in-flight limit caps the items being processed at once across all callers sharing the executor, which matters
+ * when it runs each shard on its own virtual thread and the number of shards is large.
+ *
+ * An executor created with async runs executeAsync instead, for tasks that return a future rather than blocking: the
+ * items of each key are chained onto each other's completion, no thread is held while an item is in progress, and the
+ * in-flight limit caps the keys being processed at once.
+ */
+public class KeyOrderedExecutor implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Task<T> {
+        void run(T item) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface AsyncTask<T> {
+        CompletableFuture<?> start(T item);
+    }
+
+    private final int workers;
+    private final ExecutorService executorService;
+    private final Semaphore inFlight;
+    private final boolean async;
+
+    /**
+     * With a single worker, items are processed on the calling thread and no executor service is needed.
+     */
+    public KeyOrderedExecutor(int workers, ExecutorService executorService) {
+        this(workers, executorService, Integer.MAX_VALUE);
+    }
+
+    public KeyOrderedExecutor(int workers, ExecutorService executorService, int maxInFlight) {
+        this(workers, executorService, maxInFlight, false);
+    }
+
+    private KeyOrderedExecutor(int workers, ExecutorService executorService, int maxInFlight, boolean async) {
+        if (workers < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("workers and maxInFlight must be at least 1");
+        }
+        this.workers = workers;
+        this.executorService = executorService;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.async = async;
+    }
+
+    /**
+     * An executor for executeAsync.  The next item of a key is started on the executor service, rather than on
+     * whichever thread completed the previous item's future.
+     */
+    public static KeyOrderedExecutor async(ExecutorService executorService, int maxInFlight) {
+        return new KeyOrderedExecutor(1, executorService, maxInFlight, true);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public <T> void execute(List<T> items, Function<T, Object> keyFunction, Task<T> task) {
+        if (workers == 1 || items.size() < 2) {
+            for (int index = 0; index < items.size(); index++) {
+                runItem(items.get(index), index, task);
+            }
+            return;
+        }
+
+        List<List<Integer>> shards = new ArrayList<>(workers);
+        for (int shard = 0; shard < workers; shard++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int index = 0; index < items.size(); index++) {
+            Object key = keyFunction.apply(items.get(index));
+            int shard = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % workers;
+            shards.get(shard).add(index);
+        }
+
+        AtomicInteger lowestFailedIndex = new AtomicInteger(Integer.MAX_VALUE);
+        List<Future<ItemFailedException>> results = new ArrayList<>(workers);
+        for (List<Integer> shard : shards) {
+            if (!shard.isEmpty()) {
+                results.add(executorService.submit(() -> runShard(items, shard, task, lowestFailedIndex, inFlight)));
+            }
+        }
+
+        ItemFailedException lowestFailure = null;
+        for (Future<ItemFailedException> result : results) {
+            ItemFailedException failure = await(result);
+            if (failure != null && (lowestFailure == null || failure.getIndex() < lowestFailure.getIndex())) {
+                lowestFailure = failure;
+            }
+        }
+        if (lowestFailure != null) {
+            throw lowestFailure;
+        }
+    }
+
+    /**
+     * As execute, for tasks that complete asynchronously.  The calling thread starts the first item of each key,
+     * waiting while maxInFlight keys are in progress, and then waits for the whole batch.  An item that throws or whose
+     * future completes exceptionally fails, with the same ItemFailedException guarantee as execute.
+     */
+    public <T> void executeAsync(List<T> items, Function<T, Object> keyFunction, AsyncTask<T> task) {
+        Map<Object, List<Integer>> chains = new LinkedHashMap<>();
+        for (int index = 0; index < items.size(); index++) {
+            chains.computeIfAbsent(keyFunction.apply(items.get(index)), key -> new ArrayList<>()).add(index);
+        }
+
+        AtomicReference<ItemFailedException> lowestFailure = new AtomicReference<>();
+        List<CompletableFuture<Void>> results = new ArrayList<>(chains.size());
+        try {
+            for (List<Integer> chain : chains.values()) {
+                inFlight.acquire();
+                CompletableFuture<Void> result = new CompletableFuture<>();
+                result.whenComplete((ignored, failure) -> inFlight.release());
+                runChain(items, chain, 0, task, lowestFailure, result);
+                results.add(result);
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for batch items", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch item chain failed unexpectedly", e.getCause());
+        }
+        if (lowestFailure.get() != null) {
+            throw lowestFailure.get();
+        }
+    }
+
+    private <T> void runChain(List<T> items, List<Integer> chain, int position, AsyncTask<T> task,
+                              AtomicReference<ItemFailedException> lowestFailure, CompletableFuture<Void> result) {
+        int index = chain.get(position);
+        ItemFailedException failedSoFar = lowestFailure.get();
+        if (failedSoFar != null && index > failedSoFar.getIndex()) {
+            // An earlier item has failed, so this one would be re-delivered anyway.
+            result.complete(null);
+            return;
+        }
+        CompletableFuture<?> item;
+        try {
+            item = task.start(items.get(index));
+        } catch (Exception e) {
+            item = CompletableFuture.failedFuture(e);
+        }
+        item.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                ItemFailedException itemFailure = new ItemFailedException(index, cause instanceof Exception e ? e : new CompletionException(cause));
+                lowestFailure.accumulateAndGet(itemFailure, (current, next) -> current == null || next.getIndex() < current.getIndex() ? next : current);
+                result.complete(null);
+            } else if (position + 1 == chain.size()) {
+                result.complete(null);
+            } else {
+                try {
+                    executorService.execute(() -> runChain(items, chain, position + 1, task, lowestFailure, result));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private static <T> ItemFailedException runShard(List<T> items, List<Integer> shard, Task<T> task, AtomicInteger lowestFailedIndex,
+                                                    Semaphore inFlight) throws InterruptedException {
+        for (int index : shard) {
+            if (index > lowestFailedIndex.get()) {
+                // An earlier item has failed, so this one would be re-delivered anyway.
+                return null;
+            }
+            inFlight.acquire();
+            try {
+                runItem(items.get(index), index, task);
+            } catch (ItemFailedException e) {
+                lowestFailedIndex.accumulateAndGet(index, Math::min);
+                return e;
+            } finally {
+                inFlight.release();
+            }
+        }
+        return null;
+    }
+
+    private static <T> void runItem(T item, int index, Task<T> task) {
+        try {
+            task.run(item);
+        } catch (Exception e) {
+            throw new ItemFailedException(index, e);
+        }
+    }
+
+    private static ItemFailedException await(Future<ItemFailedException> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for batch workers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch worker failed unexpectedly", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Thrown from execute with the index of the lowest item that failed, and that item's exception as the cause.
+     */
+    @Getter
+    public static class ItemFailedException extends RuntimeException {
+        private final int index;
+
+        public ItemFailedException(int index, Exception cause) {
+            super(cause.getMessage(), cause);
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package dev.lydtech.dispatch.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate at which permits are taken, across threads.  Tokens accrue at ratePerSecond up to burst, and each
+ * acquire takes one, waiting when none is left.  A caller reserves its token before waiting for it, so callers are
+ * served in the order they arrive and the rate holds however many threads share the bucket.
+ *
+ * A rate of zero or less means no limit.
+ */
+public class TokenBucket {
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private final double nanosPerToken;
+    private final double burst;
+    private final LongSupplier nanoClock;
+    private final Sleeper sleeper;
+
+    // Guarded by this.  Negative while callers are waiting for tokens they have reserved.
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    TokenBucket(double ratePerSecond, int burst, LongSupplier nanoClock, Sleeper sleeper) {
+        this.nanosPerToken = ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+        this.burst = Math.max(1, burst);
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+        this.tokens = this.burst;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    public void acquire() throws InterruptedException {
+        if (nanosPerToken == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            tokens = Math.min(burst, tokens + (now - refilledAt) / nanosPerToken) - 1;
+            refilledAt = now;
+            waitNanos = tokens >= 0 ? 0 : (long) Math.ceil(-tokens * nanosPerToken);
+        }
+        if (waitNanos > 0) {
+            sleeper.sleep(waitNanos);
+        }
+    }
+}
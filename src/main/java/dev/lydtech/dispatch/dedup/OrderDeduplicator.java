@@ -0,0 +1,73 @@
+package dev.lydtech.dispatch.dedup;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Drops re-delivered order.created events, keyed by orderId, before they reach the DispatchService.
+ *
+ * An order is only marked as processed once it has been dispatched successfully, so a failed attempt is still
+ * retried.  Within a Kafka transaction the mark is deferred until the transaction commits, as an aborted transaction
+ * means the order will be consumed again.
+ */
+@Slf4j
+@Component
+public class OrderDeduplicator implements DisposableBean {
+
+    private final SeenOrderIds seenOrderIds;
+
+    public OrderDeduplicator(@Value("${dispatch.dedup.enabled:false}") boolean enabled,
+                             @Value("${dispatch.dedup.windowSize:100000}") int windowSize,
+                             @Value("${dispatch.dedup.file:}") String file) {
+        this.seenOrderIds = enabled ? new SeenOrderIds(windowSize, file.isEmpty() ? null : Path.of(file)) : null;
+    }
+
+    public boolean isDuplicate(OrderCreated orderCreated) {
+        if (seenOrderIds == null || orderCreated == null || orderCreated.getOrderId() == null) {
+            return false;
+        }
+        synchronized (seenOrderIds) {
+            return seenOrderIds.contains(orderCreated.getOrderId());
+        }
+    }
+
+    public void markProcessed(OrderCreated orderCreated) {
+        if (seenOrderIds == null || orderCreated == null || orderCreated.getOrderId() == null) {
+            return;
+        }
+        UUID orderId = orderCreated.getOrderId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(orderId);
+                }
+            });
+        } else {
+            add(orderId);
+        }
+    }
+
+    private void add(UUID orderId) {
+        synchronized (seenOrderIds) {
+            seenOrderIds.add(orderId);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (seenOrderIds != null) {
+            synchronized (seenOrderIds) {
+                seenOrderIds.close();
+            }
+        }
+    }
+}
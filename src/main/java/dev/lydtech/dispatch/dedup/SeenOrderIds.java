@@ -0,0 +1,248 @@
+package dev.lydtech.dispatch.dedup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A fixed-size window of the most recently seen UUIDs, each held as its two longs.
+ *
+ * Ids are kept in a ring, so once the window is full each new id evicts the oldest.  Lookups first go to a Bloom
+ * filter, which answers most misses without touching the ring, and only a possible hit is confirmed exactly through an
+ * open-addressing index of ring slots.  A Bloom filter cannot forget evicted ids, so two generations are kept: a new
+ * one is started every window's worth of additions and the one before the previous is discarded, which always covers
+ * at least the current window.
+ *
+ * When a file is given, the ring is also written through to it as a memory-mapped region, and an existing file with
+ * the same window size is reloaded on start-up.  Writes reach the file when the operating system flushes the mapping,
+ * so the window survives a process restart, but the latest ids may be lost if the host itself fails.
+ *
+ * Instances are not thread-safe.
+ */
+@Slf4j
+public class SeenOrderIds implements AutoCloseable {
+
+    private static final int FILE_MAGIC = 0x44445550;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+    private static final int BLOOM_BITS_PER_ID = 8;
+    private static final int BLOOM_HASHES = 4;
+
+    private final int capacity;
+    private final long[] mostSignificantBits;
+    private final long[] leastSignificantBits;
+
+    // Ring slot + 1 for each occupied position, 0 when empty.
+    private final int[] index;
+    private final int indexMask;
+
+    private long[] currentFilter;
+    private long[] previousFilter;
+    private final int filterMask;
+    private int addedToCurrentFilter;
+
+    // Total ids ever added, so the next ring slot is next % capacity.
+    private long next;
+
+    private final MappedByteBuffer file;
+
+    public SeenOrderIds(int capacity) {
+        this(capacity, null);
+    }
+
+    public SeenOrderIds(int capacity, Path path) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.mostSignificantBits = new long[capacity];
+        this.leastSignificantBits = new long[capacity];
+        this.index = new int[powerOfTwoAtLeast(capacity * 2L)];
+        this.indexMask = index.length - 1;
+        int filterBits = Math.max(64, powerOfTwoAtLeast((long) capacity * BLOOM_BITS_PER_ID));
+        this.currentFilter = new long[filterBits / 64];
+        this.previousFilter = new long[filterBits / 64];
+        this.filterMask = filterBits - 1;
+        this.file = path != null ? map(path) : null;
+    }
+
+    public boolean contains(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        long hash = hash(msb, lsb);
+        if (!mightContain(currentFilter, hash) && !mightContain(previousFilter, hash)) {
+            return false;
+        }
+        return find(msb, lsb, hash) >= 0;
+    }
+
+    /**
+     * Adds the id unless it is already in the window, evicting the oldest id if the window is full.
+     */
+    public void add(UUID id) {
+        if (contains(id)) {
+            return;
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int slot = (int) (next % capacity);
+        if (next >= capacity) {
+            removeFromIndex(slot);
+        }
+        insert(slot, msb, lsb);
+        next++;
+        if (file != null) {
+            file.putLong(HEADER_BYTES + slot * ENTRY_BYTES, msb);
+            file.putLong(HEADER_BYTES + slot * ENTRY_BYTES + 8, lsb);
+            file.putLong(8, next);
+        }
+    }
+
+    public int size() {
+        return (int) Math.min(next, capacity);
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            file.force();
+        }
+    }
+
+    private void insert(int slot, long msb, long lsb) {
+        mostSignificantBits[slot] = msb;
+        leastSignificantBits[slot] = lsb;
+        long hash = hash(msb, lsb);
+        int position = (int) hash & indexMask;
+        while (index[position] != 0) {
+            position = (position + 1) & indexMask;
+        }
+        index[position] = slot + 1;
+
+        if (addedToCurrentFilter == capacity) {
+            long[] discarded = previousFilter;
+            Arrays.fill(discarded, 0L);
+            previousFilter = currentFilter;
+            currentFilter = discarded;
+            addedToCurrentFilter = 0;
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & filterMask;
+            currentFilter[bit >>> 6] |= 1L << bit;
+        }
+        addedToCurrentFilter++;
+    }
+
+    private boolean mightContain(long[] filter, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & filterMask;
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index position holding the id, or -1.
+     */
+    private int find(long msb, long lsb, long hash) {
+        int position = (int) hash & indexMask;
+        while (index[position] != 0) {
+            int slot = index[position] - 1;
+            if (mostSignificantBits[slot] == msb && leastSignificantBits[slot] == lsb) {
+                return position;
+            }
+            position = (position + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the ring slot from the index, shifting back any later entries of its probe run so that lookups never
+     * stop early at the gap.
+     */
+    private void removeFromIndex(int slot) {
+        int gap = find(mostSignificantBits[slot], leastSignificantBits[slot], hash(mostSignificantBits[slot], leastSignificantBits[slot]));
+        if (gap < 0) {
+            return;
+        }
+        index[gap] = 0;
+        int position = gap;
+        while (true) {
+            position = (position + 1) & indexMask;
+            if (index[position] == 0) {
+                return;
+            }
+            int occupant = index[position] - 1;
+            int home = (int) hash(mostSignificantBits[occupant], leastSignificantBits[occupant]) & indexMask;
+            // The occupant can fill the gap unless its home position lies cyclically after the gap.
+            if (((position - home) & indexMask) >= ((position - gap) & indexMask)) {
+                index[gap] = index[position];
+                index[position] = 0;
+                gap = position;
+            }
+        }
+    }
+
+    private MappedByteBuffer map(Path path) {
+        long size = HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is too large for a dedup file");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long existingSize = channel.size();
+            if (existingSize > size) {
+                channel.truncate(size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (existingSize == size && buffer.getInt(0) == FILE_MAGIC && buffer.getInt(4) == capacity) {
+                load(buffer);
+            } else {
+                if (existingSize > 0) {
+                    log.warn("Dedup file " + path + " does not match a window of " + capacity + ": starting empty");
+                }
+                buffer.putInt(0, FILE_MAGIC);
+                buffer.putInt(4, capacity);
+                buffer.putLong(8, 0L);
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map dedup file " + path, e);
+        }
+    }
+
+    private void load(MappedByteBuffer buffer) {
+        long total = buffer.getLong(8);
+        for (long n = Math.max(0, total - capacity); n < total; n++) {
+            int slot = (int) (n % capacity);
+            int offset = HEADER_BYTES + slot * ENTRY_BYTES;
+            insert(slot, buffer.getLong(offset), buffer.getLong(offset + 8));
+        }
+        next = total;
+        log.info("Loaded " + size() + " recent order ids from dedup file");
+    }
+
+    private static long hash(long msb, long lsb) {
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb * 0xC2B2AE3D27D4EB4FL;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static int powerOfTwoAtLeast(long value) {
+        long power = Long.highestOneBit(Math.max(1L, value - 1)) << 1;
+        if (power > 1 << 30) {
+            throw new IllegalArgumentException("capacity is too large");
+        }
+        return (int) power;
+    }
+}
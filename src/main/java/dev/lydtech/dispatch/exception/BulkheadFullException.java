@@ -0,0 +1,13 @@
+package dev.lydtech.dispatch.exception;
+
+/**
+ * A call to a downstream service that was rejected because its bulkhead had no free slot.  Unlike an open circuit
+ * breaker this says nothing about the service's health, only that enough calls were already in progress, so it is
+ * retried after a short pause rather than after the breaker's open period.
+ */
+public class BulkheadFullException extends CallNotPermittedException {
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
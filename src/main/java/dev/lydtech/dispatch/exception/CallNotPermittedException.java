@@ -0,0 +1,12 @@
+package dev.lydtech.dispatch.exception;
+
+/**
+ * A call to a downstream service that was rejected before being made, because its circuit breaker is open or, as the
+ * BulkheadFullException subclass, its bulkhead is full.  It is retried like a RetryableException, but as the call was
+ * never attempted it does not use up the record's retries.
+ */
+public class CallNotPermittedException extends RuntimeException {
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
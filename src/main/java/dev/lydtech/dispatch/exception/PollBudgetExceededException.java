@@ -0,0 +1,11 @@
+package dev.lydtech.dispatch.exception;
+
+/**
+ * Thrown by the batch listener to hand the records it had no time for in this poll back to the error handler, which
+ * commits the records before them and re-seeks the rest.  Nothing failed, so it never uses up a record's retries.
+ */
+public class PollBudgetExceededException extends RuntimeException {
+    public PollBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,59 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.client.StockServiceCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pauses the order.created listener containers while the stock service circuit breaker is open, so that records wait
+ * on the broker instead of being rejected and retried, and resumes them when it half-opens to let the probe calls
+ * through.
+ *
+ * This covers the main listener and, when retry topics are enabled, its retry topic listeners, whose ids all start
+ * with the main listener's id.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dispatch.stock.breaker.enabled", havingValue = "true")
+public class CircuitBreakerContainerPauser {
+
+    private static final String LISTENER_ID_PREFIX = "orderConsumerClient";
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    public CircuitBreakerContainerPauser(StockServiceCircuitBreaker circuitBreaker, KafkaListenerEndpointRegistry registry) {
+        this.registry = registry;
+        circuitBreaker.addStateListener(state -> {
+            if (state == StockServiceCircuitBreaker.State.OPEN) {
+                pause();
+            } else {
+                resume();
+            }
+        });
+    }
+
+    private void pause() {
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (isOrderListener(container) && !container.isPauseRequested()) {
+                log.warn("Pausing listener {} while the stock service circuit breaker is open", container.getListenerId());
+                container.pause();
+            }
+        }
+    }
+
+    private void resume() {
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (isOrderListener(container) && container.isPauseRequested()) {
+                log.info("Resuming listener {}", container.getListenerId());
+                container.resume();
+            }
+        }
+    }
+
+    private static boolean isOrderListener(MessageListenerContainer container) {
+        return container.getListenerId() != null && container.getListenerId().startsWith(LISTENER_ID_PREFIX);
+    }
+}
@@ -0,0 +1,147 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.PollBudgetExceededException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTrace;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consumes order.created a poll at a time, as an alternative to the record listener in OrderCreatedHandler.
+ *
+ * Records are handed to the KeyOrderedExecutor, which keeps records with the same key in offset order but may process
+ * different keys in parallel.  If one fails, a BatchListenerFailedException carrying the lowest failed index is thrown
+ * so the error handler commits the records before it, retries or dead-letters the failed record, and re-delivers the
+ * rest.
+ *
+ * With an async executor each record is processed with DispatchService.processAsync instead.
+ *
+ * When PollBackPressure limits the batch, only the first records of the poll are processed and the rest are handed
+ * back with a BatchListenerFailedException at the first of them, which the error handler re-seeks without counting a
+ * failure.
+ *
+ * In transactional mode a failed record is instead dead-lettered within the batch's transaction by the
+ * TransactionalBatchRecoverer, or the whole batch is rolled back for another attempt.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@ConditionalOnProperty(name = "dispatch.listener.batch", havingValue = "true")
+public class OrderCreatedBatchHandler {
+
+    private final DispatchService dispatchService;
+    private final KeyOrderedExecutor keyOrderedExecutor;
+    private final TransactionalBatchRecoverer transactionalBatchRecoverer;
+    private final OrderDeduplicator orderDeduplicator;
+    private final DispatchMetrics dispatchMetrics;
+    private final PollBackPressure pollBackPressure;
+    private final HotKeyTracker hotKeyTracker;
+    private final DispatchTracer dispatchTracer;
+
+    @KafkaListener(
+            id = "orderConsumerClient",
+            topics = "order.created",
+            groupId = "dispatch.order.created.consumer",
+            containerFactory = "batchKafkaListenerContainerFactory"
+    )
+    public void listen(List<ConsumerRecord<String, OrderCreated>> records) {
+        log.debug("Received batch: size: {}", records.size());
+        int limit = pollBackPressure.batchLimit(records.size());
+        List<ConsumerRecord<String, OrderCreated>> batch = limit < records.size() ? records.subList(0, limit) : records;
+        if (hotKeyTracker.isEnabled()) {
+            for (ConsumerRecord<String, OrderCreated> record : batch) {
+                hotKeyTracker.record(record.partition(), record.key(), record.value());
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            if (keyOrderedExecutor.isAsync()) {
+                keyOrderedExecutor.executeAsync(batch, ConsumerRecord::key, this::processAsync);
+            } else {
+                keyOrderedExecutor.execute(batch, ConsumerRecord::key, this::process);
+            }
+            pollBackPressure.recordProcessed(batch.size(), System.nanoTime() - start);
+        } catch (KeyOrderedExecutor.ItemFailedException e) {
+            pollBackPressure.recordProcessed(e.getIndex() + 1, System.nanoTime() - start);
+            if (e.getCause() instanceof RetryableException || e.getCause() instanceof CallNotPermittedException) {
+                log.warn("Retryable exception: " + e.getMessage());
+                dispatchMetrics.outcome(DispatchMetrics.OUTCOME_RETRYABLE);
+                throw new BatchListenerFailedException(e.getMessage(), e.getCause(), e.getIndex());
+            }
+            log.error("NotRetryable exception: " + e.getMessage());
+            Throwable cause = e.getCause() instanceof NotRetryableException ? e.getCause() : new NotRetryableException((Exception) e.getCause());
+            throw new BatchListenerFailedException(e.getMessage(), cause, e.getIndex());
+        }
+        if (limit < records.size()) {
+            int deferred = records.size() - limit;
+            log.debug("Handing {} records back to be polled again", deferred);
+            pollBackPressure.deferred(deferred);
+            throw new BatchListenerFailedException("Poll budget used up", new PollBudgetExceededException(deferred + " records deferred"), limit);
+        }
+    }
+
+    private void process(ConsumerRecord<String, OrderCreated> record) throws Exception {
+        DispatchTrace trace = null;
+        try {
+            if (record.value() == null) {
+                // The ErrorHandlingDeserializer leaves a null value when the payload could not be deserialized.
+                throw new NotRetryableException(new IllegalArgumentException("Unable to deserialize record at offset " + record.offset()));
+            }
+            if (orderDeduplicator.isDuplicate(record.value())) {
+                log.info("Dropping duplicate order: orderId: {}", record.value().getOrderId());
+                dispatchMetrics.outcome(DispatchMetrics.OUTCOME_DUPLICATE);
+                return;
+            }
+            trace = dispatchTracer.start(record);
+            dispatchService.process(record.key(), record.value(), trace);
+            orderDeduplicator.markProcessed(record.value());
+            dispatchMetrics.recordEndToEnd(record.timestamp(), null);
+            transactionalBatchRecoverer.succeeded(record);
+            dispatchTracer.finish(trace, null);
+        } catch (Exception e) {
+            dispatchMetrics.recordEndToEnd(record.timestamp(), e);
+            dispatchTracer.finish(trace, e);
+            if (!transactionalBatchRecoverer.recover(record, e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Transactions are never enabled with an async executor, so there is no transactional recovery here.
+     */
+    private CompletableFuture<Void> processAsync(ConsumerRecord<String, OrderCreated> record) {
+        if (record.value() == null) {
+            throw new NotRetryableException(new IllegalArgumentException("Unable to deserialize record at offset " + record.offset()));
+        }
+        if (orderDeduplicator.isDuplicate(record.value())) {
+            log.info("Dropping duplicate order: orderId: {}", record.value().getOrderId());
+            dispatchMetrics.outcome(DispatchMetrics.OUTCOME_DUPLICATE);
+            return CompletableFuture.completedFuture(null);
+        }
+        DispatchTrace trace = dispatchTracer.start(record);
+        return dispatchService.processAsync(record.key(), record.value(), trace)
+                .whenComplete((ignored, failure) -> {
+                    dispatchMetrics.recordEndToEnd(record.timestamp(), failure);
+                    dispatchTracer.finish(trace, failure);
+                })
+                .thenRun(() -> orderDeduplicator.markProcessed(record.value()));
+    }
+}
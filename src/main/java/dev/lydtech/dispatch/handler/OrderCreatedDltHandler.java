@@ -0,0 +1,36 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Consumes order.created.DLT when retry topics are enabled.  In that mode the retry topic infrastructure, rather than
+ * DispatchConfiguration's recoverer, publishes to the DLT, so dead-lettered orders are logged and counted here.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@ConditionalOnProperty(name = "dispatch.retry.topics.enabled", havingValue = "true")
+public class OrderCreatedDltHandler {
+
+    private final DispatchMetrics dispatchMetrics;
+
+    public void handle(ConsumerRecord<String, Object> record) {
+        log.error("Order dead-lettered: key: {} - from: {} - cause: {}", record.key(),
+                header(record, KafkaHeaders.ORIGINAL_TOPIC), header(record, KafkaHeaders.EXCEPTION_CAUSE_FQCN));
+        dispatchMetrics.outcome(DispatchMetrics.OUTCOME_DLT);
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
@@ -1,11 +1,18 @@
 package dev.lydtech.dispatch.handler;
 
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
 import dev.lydtech.dispatch.exception.NotRetryableException;
 import dev.lydtech.dispatch.exception.RetryableException;
 import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
 import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTrace;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
@@ -16,9 +23,14 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @RequiredArgsConstructor
 @Component
+@ConditionalOnProperty(name = "dispatch.listener.batch", havingValue = "false", matchIfMissing = true)
 public class OrderCreatedHandler {
 
     private final DispatchService dispatchService;
+    private final OrderDeduplicator orderDeduplicator;
+    private final DispatchMetrics dispatchMetrics;
+    private final HotKeyTracker hotKeyTracker;
+    private final DispatchTracer dispatchTracer;
 
     @KafkaListener(
             id = "orderConsumerClient",
@@ -28,15 +40,32 @@ public class OrderCreatedHandler {
     )
     public void listen(@Header(KafkaHeaders.RECEIVED_PARTITION) Integer partition,
                        @Header(KafkaHeaders.RECEIVED_KEY) String key,
+                       @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp,
+                       @Header(name = DispatchTrace.POLL_TIME_HEADER, required = false) byte[] pollTime,
                        @Payload OrderCreated payload) {
-        log.info("Received message: partition: " + partition + " - key: " + key + " -  payload: " + payload);
+        log.debug("Received message: partition: {} - key: {} - payload: {}", partition, key, payload);
+        hotKeyTracker.record(partition, key, payload);
+        if (orderDeduplicator.isDuplicate(payload)) {
+            log.info("Dropping duplicate order: orderId: {}", payload.getOrderId());
+            dispatchMetrics.outcome(DispatchMetrics.OUTCOME_DUPLICATE);
+            return;
+        }
+        DispatchTrace trace = dispatchTracer.start(partition, timestamp, pollTime, payload);
         try {
-            dispatchService.process(key, payload);
-        }  catch (RetryableException e) {
+            dispatchService.process(key, payload, trace);
+            orderDeduplicator.markProcessed(payload);
+            dispatchMetrics.recordEndToEnd(timestamp, null);
+            dispatchTracer.finish(trace, null);
+        }  catch (RetryableException | CallNotPermittedException e) {
             log.warn("Retryable exception: " + e.getMessage());
+            dispatchMetrics.outcome(DispatchMetrics.OUTCOME_RETRYABLE);
+            dispatchMetrics.recordEndToEnd(timestamp, e);
+            dispatchTracer.finish(trace, e);
             throw e;
         } catch (Exception e) {
             log.error("NotRetryable exception: " + e.getMessage());
+            dispatchMetrics.recordEndToEnd(timestamp, e);
+            dispatchTracer.finish(trace, e);
             throw new NotRetryableException(e);
         }
     }
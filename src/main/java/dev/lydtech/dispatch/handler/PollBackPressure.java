@@ -0,0 +1,197 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive back-pressure for the order.created listeners, so that a slow stock service cannot push the processing of
+ * a poll past max.poll.interval.ms and trigger a rebalance, which would re-deliver the whole poll.
+ *
+ * It keeps a moving average of the time taken per record, measured around each record by the record listener
+ * container (as its RecordInterceptor) and around each poll by the batch listener.  From it:
+ *
+ * - The batch listener processes only as many records of a poll as fit in pollBudgetMs (half of max.poll.interval.ms
+ *   unless set), and hands the rest back to be polled again.  This is not done in transactional mode, where the
+ *   whole poll is one transaction.
+ * - When the average goes above pauseAboveMs, the partitions assigned to the order listeners are paused for pauseMs.
+ *   The consumer keeps polling while paused, so it stays in the group.  The average is reset on resuming, so the
+ *   first records after a pause decide whether to pause again.
+ */
+@Slf4j
+@Component
+public class PollBackPressure implements RecordInterceptor<String, Object>, DisposableBean {
+
+    private static final String LISTENER_ID_PREFIX = "orderConsumerClient";
+    private static final double SMOOTHING = 0.2;
+
+    private final boolean enabled;
+    private final boolean shrinkBatches;
+    private final int maxPollRecords;
+    private final long pollBudgetNanos;
+    private final long pauseAboveNanos;
+    private final long pauseMs;
+    private final Supplier<Collection<MessageListenerContainer>> containers;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadLocal<long[]> recordStart = ThreadLocal.withInitial(() -> new long[1]);
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final Counter deferred;
+    private final Counter pauses;
+
+    // Guarded by this.  Zero until the first record is measured.
+    private double averageNanos;
+
+    @Autowired
+    public PollBackPressure(@Value("${dispatch.consumer.backpressure.enabled:false}") boolean enabled,
+                            @Value("${dispatch.transactions.enabled:false}") boolean transactionsEnabled,
+                            @Value("${dispatch.consumer.maxPollRecords:500}") int maxPollRecords,
+                            @Value("${dispatch.consumer.maxPollIntervalMs:300000}") long maxPollIntervalMs,
+                            @Value("${dispatch.consumer.backpressure.pollBudgetMs:0}") long pollBudgetMs,
+                            @Value("${dispatch.consumer.backpressure.pauseAboveMs:1000}") long pauseAboveMs,
+                            @Value("${dispatch.consumer.backpressure.pauseMs:5000}") long pauseMs,
+                            ObjectProvider<KafkaListenerEndpointRegistry> registry,
+                            DispatchMetrics dispatchMetrics) {
+        this(enabled, !transactionsEnabled, maxPollRecords, pollBudgetMs > 0 ? pollBudgetMs : maxPollIntervalMs / 2, pauseAboveMs, pauseMs,
+                dispatchMetrics.getRegistry(), () -> registry.getObject().getListenerContainers(),
+                enabled ? Executors.newSingleThreadScheduledExecutor(schedulerThreadFactory()) : null);
+    }
+
+    PollBackPressure(boolean enabled, boolean shrinkBatches, int maxPollRecords, long pollBudgetMs, long pauseAboveMs, long pauseMs,
+                     MeterRegistry registry, Supplier<Collection<MessageListenerContainer>> containers, ScheduledExecutorService scheduler) {
+        this.enabled = enabled;
+        this.shrinkBatches = shrinkBatches;
+        this.maxPollRecords = maxPollRecords;
+        this.pollBudgetNanos = TimeUnit.MILLISECONDS.toNanos(pollBudgetMs);
+        this.pauseAboveNanos = TimeUnit.MILLISECONDS.toNanos(pauseAboveMs);
+        this.pauseMs = pauseMs;
+        this.containers = containers;
+        this.scheduler = scheduler;
+
+        Gauge.builder("dispatch.consumer.backpressure.record.time", this, backPressure -> backPressure.getAverageNanos() / 1e6)
+                .description("Moving average of the milliseconds taken to process an order.created record")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("dispatch.consumer.backpressure.batch.limit", this, backPressure -> backPressure.batchLimit(backPressure.maxPollRecords))
+                .description("Records of a full poll the batch listener currently processes before handing the rest back")
+                .register(registry);
+        this.deferred = Counter.builder("dispatch.consumer.backpressure.deferred")
+                .description("Records handed back to be polled again because the poll budget was used up")
+                .register(registry);
+        this.pauses = Counter.builder("dispatch.consumer.backpressure.pauses")
+                .description("Times the order listeners' partitions were paused because records were slow to process")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized double getAverageNanos() {
+        return averageNanos;
+    }
+
+    /**
+     * The number of records of a poll of pollSize to process now, at least one.
+     */
+    public int batchLimit(int pollSize) {
+        double average = getAverageNanos();
+        if (!enabled || !shrinkBatches || average == 0) {
+            return pollSize;
+        }
+        return (int) Math.max(1, Math.min(pollSize, pollBudgetNanos / average));
+    }
+
+    public void deferred(int records) {
+        deferred.increment(records);
+    }
+
+    /**
+     * Records that processing the given number of records took elapsedNanos in total.
+     */
+    public void recordProcessed(int records, long elapsedNanos) {
+        if (!enabled || records < 1) {
+            return;
+        }
+        double average;
+        synchronized (this) {
+            double perRecord = (double) elapsedNanos / records;
+            averageNanos = averageNanos == 0 ? perRecord : averageNanos + SMOOTHING * (perRecord - averageNanos);
+            average = averageNanos;
+        }
+        if (average > pauseAboveNanos && paused.compareAndSet(false, true)) {
+            pause(average);
+        }
+    }
+
+    @Override
+    public ConsumerRecord<String, Object> intercept(ConsumerRecord<String, Object> record, Consumer<String, Object> consumer) {
+        recordStart.get()[0] = System.nanoTime();
+        return record;
+    }
+
+    @Override
+    public void afterRecord(ConsumerRecord<String, Object> record, Consumer<String, Object> consumer) {
+        recordProcessed(1, System.nanoTime() - recordStart.get()[0]);
+    }
+
+    private void pause(double averageNanos) {
+        List<Runnable> resumes = new ArrayList<>();
+        for (MessageListenerContainer container : containers.get()) {
+            if (container.getListenerId() == null || !container.getListenerId().startsWith(LISTENER_ID_PREFIX)
+                    || container.getAssignedPartitions() == null) {
+                continue;
+            }
+            for (TopicPartition partition : container.getAssignedPartitions()) {
+                container.pausePartition(partition);
+                resumes.add(() -> container.resumePartition(partition));
+            }
+        }
+        pauses.increment();
+        log.warn("Records taking {}ms on average: pausing {} order.created partitions for {}ms", Math.round(averageNanos / 1e6), resumes.size(), pauseMs);
+        Runnable resume = () -> {
+            synchronized (this) {
+                this.averageNanos = 0;
+            }
+            resumes.forEach(Runnable::run);
+            paused.set(false);
+            log.info("Resumed {} order.created partitions", resumes.size());
+        };
+        scheduler.schedule(resume, pauseMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static CustomizableThreadFactory schedulerThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("poll-backpressure-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
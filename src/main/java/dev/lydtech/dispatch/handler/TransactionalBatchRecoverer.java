@@ -0,0 +1,68 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dead-letters failed records from inside the batch listener's transaction.
+ *
+ * In transactional batch mode a failure rolls back the whole poll, and the after-rollback processor can only re-seek
+ * it: it cannot commit the records ahead of the failure, because their outbound events were aborted with the rest.
+ * So instead the batch handler asks this recoverer whether to give up on a failed record.  If so, the record is
+ * published to the DLT in the same transaction and the batch carries on; if not, the batch is rolled back and retried.
+ *
+ * Records that cannot be retried are recovered straight away, and retryable ones once they have failed maxAttempts
+ * times.  When transactions are disabled nothing is recovered here and the container's error handler does the work.
+ */
+@Slf4j
+public class TransactionalBatchRecoverer {
+
+    private final boolean enabled;
+    private final ConsumerRecordRecoverer deadLetterRecoverer;
+    private final int maxAttempts;
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    public TransactionalBatchRecoverer(boolean enabled, ConsumerRecordRecoverer deadLetterRecoverer, int maxAttempts) {
+        this.enabled = enabled;
+        this.deadLetterRecoverer = deadLetterRecoverer;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns true if the record has been dead-lettered and the batch can continue, false if the exception should roll
+     * the batch back.
+     */
+    public boolean recover(ConsumerRecord<?, ?> record, Exception exception) {
+        if (!enabled) {
+            return false;
+        }
+        if (exception instanceof CallNotPermittedException) {
+            // The stock service was not called, so this is not an attempt.
+            return false;
+        }
+        String recordId = recordId(record);
+        if (exception instanceof RetryableException && attempts.merge(recordId, 1, Integer::sum) < maxAttempts) {
+            return false;
+        }
+        log.error("Recovering record to DLT: " + recordId + " - " + exception.getMessage());
+        deadLetterRecoverer.accept(record, exception);
+        attempts.remove(recordId);
+        return true;
+    }
+
+    public void succeeded(ConsumerRecord<?, ?> record) {
+        if (enabled && !attempts.isEmpty()) {
+            attempts.remove(recordId(record));
+        }
+    }
+
+    private static String recordId(ConsumerRecord<?, ?> record) {
+        return record.topic() + "-" + record.partition() + "@" + record.offset();
+    }
+}
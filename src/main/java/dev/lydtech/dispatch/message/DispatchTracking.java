@@ -0,0 +1,55 @@
+package dev.lydtech.dispatch.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The compact form of an order's dispatch.tracking events: the statuses the order has moved through, in order, in a
+ * single record.  version is the layout of the record, so a consumer can tell one it does not understand.
+ *
+ * Consumers that want the separate events written when compact tracking is off get them from toSeparateEvents.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchTracking {
+
+    public static final int CURRENT_VERSION = 1;
+
+    public enum Status { PREPARING, COMPLETED }
+
+    private static final List<Status> DISPATCHED = List.of(Status.PREPARING, Status.COMPLETED);
+
+    int version;
+    UUID orderId;
+    List<Status> statuses;
+    String dispatchedDate;
+
+    public static DispatchTracking dispatched(UUID orderId, String dispatchedDate) {
+        return new DispatchTracking(CURRENT_VERSION, orderId, DISPATCHED, dispatchedDate);
+    }
+
+    /**
+     * A DispatchPreparing and a DispatchCompleted for the statuses recorded, in the order they were reached.
+     */
+    public List<Object> toSeparateEvents() {
+        List<Object> events = new ArrayList<>(2);
+        if (statuses == null) {
+            return events;
+        }
+        for (Status status : statuses) {
+            events.add(switch (status) {
+                case PREPARING -> new DispatchPreparing(orderId);
+                case COMPLETED -> new DispatchCompleted(orderId, dispatchedDate);
+            });
+        }
+        return events;
+    }
+}
@@ -0,0 +1,154 @@
+package dev.lydtech.dispatch.metrics;
+
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The meters on the order dispatch path.
+ *
+ * Tags are limited to small fixed sets (outcome, topic, result), never items or order ids, so the number of time series
+ * stays bounded however many orders are processed.  Timers publish histogram buckets so that percentiles can be
+ * aggregated across instances.
+ */
+@Slf4j
+@Component
+public class DispatchMetrics {
+
+    public static final String OUTCOME_AVAILABLE = "available";
+    public static final String OUTCOME_UNAVAILABLE = "unavailable";
+    public static final String OUTCOME_RETRYABLE = "retryable";
+    public static final String OUTCOME_DLT = "dlt";
+    public static final String OUTCOME_DUPLICATE = "duplicate";
+
+    public static final String RESULT_SUCCESS = "success";
+    public static final String RESULT_FAILURE = "failure";
+
+    private final MeterRegistry registry;
+    private final long startMillis;
+    private final AtomicLong firstRecordMillis = new AtomicLong();
+    private final Map<String, Counter> outcomeCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sendSuccessTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sendFailureTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> stockCheckTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> endToEndTimers = new ConcurrentHashMap<>();
+
+    /**
+     * Falls back to a private registry when no MeterRegistry is configured, so the dispatch path never needs to check.
+     */
+    @Autowired
+    public DispatchMetrics(ObjectProvider<MeterRegistry> registry) {
+        this(registry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public DispatchMetrics(MeterRegistry registry) {
+        this(registry, ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * startMillis is when the process started, from which the time to the first dispatched record is measured.
+     */
+    DispatchMetrics(MeterRegistry registry, long startMillis) {
+        this.registry = registry;
+        this.startMillis = startMillis;
+        TimeGauge.builder("dispatch.startup.first.record", firstRecordMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time from the process starting until the first order.created record was processed, 0 until then")
+                .register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Records the time taken by a stock check, by result: OUTCOME_AVAILABLE, OUTCOME_UNAVAILABLE or RESULT_FAILURE when
+     * it threw.
+     */
+    public void recordStockCheck(long startNanos, String result) {
+        Timer timer = stockCheckTimers.get(result);
+        if (timer == null) {
+            timer = stockCheckTimers.computeIfAbsent(result, key -> Timer.builder("dispatch.stock.check")
+                    .description("Time to check stock availability, including cache hits, by result")
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time from handing an event to the producer until the broker acknowledged it, or the send failed.
+     */
+    public void recordSend(String topic, long startNanos, boolean success) {
+        Map<String, Timer> timers = success ? sendSuccessTimers : sendFailureTimers;
+        // A plain get first: computeIfAbsent with a capturing lambda allocates on every call, even when the meter exists.
+        Timer timer = timers.get(topic);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(topic, key -> Timer.builder("dispatch.producer.ack")
+                    .description("Time from sending an outbound event until the broker acknowledged it")
+                    .tag("topic", topic)
+                    .tag("result", success ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the latency of an order from the timestamp of its order.created record until processing it finished,
+     * tagged success, retryable or failure by the exception it failed with, if any.  A timestamp in the future
+     * (producer clock skew) is recorded as zero.  The first success also records the time since the process started.
+     */
+    public void recordEndToEnd(long recordTimestampMillis, Throwable failure) {
+        long nowMillis = System.currentTimeMillis();
+        String result = result(failure);
+        Timer timer = endToEndTimers.get(result);
+        if (timer == null) {
+            timer = endToEndTimers.computeIfAbsent(result, key -> Timer.builder("dispatch.order.latency")
+                    .description("Time from an order.created record's timestamp until processing it finished, by result")
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        timer.record(Math.max(0L, nowMillis - recordTimestampMillis), TimeUnit.MILLISECONDS);
+        if (failure == null && firstRecordMillis.get() == 0 && firstRecordMillis.compareAndSet(0, Math.max(1L, nowMillis - startMillis))) {
+            log.info("First record processed {}ms after startup", firstRecordMillis.get());
+        }
+    }
+
+    private static String result(Throwable failure) {
+        if (failure == null) {
+            return RESULT_SUCCESS;
+        }
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure instanceof RetryableException || failure instanceof CallNotPermittedException ? OUTCOME_RETRYABLE : RESULT_FAILURE;
+    }
+
+    public void outcome(String outcome) {
+        Counter counter = outcomeCounters.get(outcome);
+        if (counter == null) {
+            counter = outcomeCounters.computeIfAbsent(outcome, key -> Counter.builder("dispatch.orders")
+                    .description("Orders processed, by outcome")
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+}
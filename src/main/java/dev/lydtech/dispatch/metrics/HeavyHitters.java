@@ -0,0 +1,129 @@
+package dev.lydtech.dispatch.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most frequent strings in a stream, in bounded memory: a count-min sketch of depth rows of width counters
+ * estimates how often each string has been seen, and the capacity strings with the highest estimates are kept as
+ * candidates.
+ *
+ * An estimate is never below the true count, and exceeds it by at most 2 * total / width with probability
+ * 1 - (1/2)^depth, so strings that make up a noticeable share of the stream are reported accurately.  decay() halves
+ * every count, so that what is hot now is not swamped by what was hot an hour ago.
+ *
+ * Instances are not thread-safe.
+ */
+public class HeavyHitters {
+
+    public record Entry(String value, long count) {}
+
+    private final int capacity;
+    private final long[][] rows;
+    private final int widthMask;
+    private final Map<String, Long> candidates;
+    private long total;
+    private String minCandidate;
+    private long minCount;
+
+    public HeavyHitters(int capacity, int width, int depth) {
+        if (capacity < 1 || width < 1 || depth < 1) {
+            throw new IllegalArgumentException("capacity, width and depth must be at least 1");
+        }
+        int roundedWidth = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.capacity = capacity;
+        this.rows = new long[depth][roundedWidth];
+        this.widthMask = roundedWidth - 1;
+        this.candidates = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String value, long count) {
+        total += count;
+        int hash = value.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            int column = column(hash, row);
+            rows[row][column] += count;
+            estimate = Math.min(estimate, rows[row][column]);
+        }
+        if (candidates.containsKey(value)) {
+            candidates.put(value, estimate);
+            if (value.equals(minCandidate)) {
+                findMinCandidate();
+            }
+        } else if (candidates.size() < capacity) {
+            candidates.put(value, estimate);
+            if (minCandidate == null || estimate < minCount) {
+                minCandidate = value;
+                minCount = estimate;
+            }
+        } else if (estimate > minCount) {
+            candidates.remove(minCandidate);
+            candidates.put(value, estimate);
+            findMinCandidate();
+        }
+    }
+
+    public long estimate(String value) {
+        int hash = value.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            estimate = Math.min(estimate, rows[row][column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * The total count added, after decay.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * The candidates, most frequent first.
+     */
+    public List<Entry> top() {
+        List<Entry> top = new ArrayList<>(candidates.size());
+        candidates.forEach((value, count) -> top.add(new Entry(value, count)));
+        top.sort(Comparator.comparingLong(Entry::count).reversed());
+        return top;
+    }
+
+    /**
+     * Halves every count, dropping candidates that reach zero.
+     */
+    public void decay() {
+        for (long[] row : rows) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] >>= 1;
+            }
+        }
+        total >>= 1;
+        candidates.replaceAll((value, count) -> count >> 1);
+        candidates.values().removeIf(count -> count == 0);
+        findMinCandidate();
+    }
+
+    private void findMinCandidate() {
+        minCandidate = null;
+        minCount = 0;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            if (minCandidate == null || candidate.getValue() < minCount) {
+                minCandidate = candidate.getKey();
+                minCount = candidate.getValue();
+            }
+        }
+    }
+
+    /**
+     * Each row hashes with its own odd multiplier, so a collision in one row is independent of the others.
+     */
+    private int column(int hash, int row) {
+        int mixed = (hash ^ (row * 0x85EBCA6B)) * (0x9E3779B9 + 2 * row);
+        return (mixed ^ (mixed >>> 15)) & widthMask;
+    }
+}
@@ -0,0 +1,19 @@
+package dev.lydtech.dispatch.metrics;
+
+import java.util.List;
+
+/**
+ * The hottest order.created keys and items and the load on each partition, as tracked by the HotKeyTracker.
+ *
+ * Key and item counts are estimated from the sampled records, scaled up by the sample rate, and decay by half every
+ * window, so a share is of the recent records rather than of all records since startup.  Partition counts are exact,
+ * for the last complete window (or the current one, before the first window completes).  partitionSkew is the busiest
+ * partition's records over the mean across the partitions seen: 1 when the load is even.
+ */
+public record HotKeyReport(double sampleRate, long windowMs, List<HotValue> keys, List<HotValue> items,
+                           List<PartitionLoad> partitions, double partitionSkew) {
+
+    public record HotValue(String value, long estimatedRecords, double share) {}
+
+    public record PartitionLoad(int partition, long records, double recordsPerSecond, double share) {}
+}
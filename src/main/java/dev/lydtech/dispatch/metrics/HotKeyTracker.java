@@ -0,0 +1,206 @@
+package dev.lydtech.dispatch.metrics;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks which order.created keys, items and partitions take the most records, to show when a few keys or items
+ * dominate one partition and leave its consumer thread behind.
+ *
+ * Every record is counted against its partition, lock-free, as dispatch.partition.records, whose rate is the
+ * partition's processing rate.  Only a sampleRate fraction of records is passed to the HeavyHitters for keys and
+ * items, under a lock, so the hot path mostly pays for a random number.  Every windowMs the key and item counts are
+ * halved and the partition counts start a new window.
+ *
+ * dispatch.hotkeys.top.share publishes the hottest key's and item's share of the recent records, by dimension, and
+ * dispatch.hotkeys.partition.skew the busiest partition's load over the mean.  The hot keys and items themselves are
+ * only listed by report(), never as tags, so the number of time series stays bounded.
+ */
+@Component
+public class HotKeyTracker {
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long windowNanos;
+    private final DoubleSupplier random;
+    private final LongSupplier nanoClock;
+    private final MeterRegistry registry;
+    private final HeavyHitters keys;
+    private final HeavyHitters items;
+    private final Map<Integer, PartitionCounts> partitions = new ConcurrentHashMap<>();
+
+    // Written under this.
+    private volatile long windowStartNanos;
+    private boolean windowCompleted;
+
+    @Autowired
+    public HotKeyTracker(@Value("${dispatch.hotkeys.enabled:false}") boolean enabled,
+                         @Value("${dispatch.hotkeys.sampleRate:0.1}") double sampleRate,
+                         @Value("${dispatch.hotkeys.topK:20}") int topK,
+                         @Value("${dispatch.hotkeys.sketchWidth:2048}") int sketchWidth,
+                         @Value("${dispatch.hotkeys.sketchDepth:4}") int sketchDepth,
+                         @Value("${dispatch.hotkeys.windowMs:60000}") long windowMs,
+                         DispatchMetrics dispatchMetrics) {
+        this(enabled, sampleRate, topK, sketchWidth, sketchDepth, windowMs, () -> ThreadLocalRandom.current().nextDouble(),
+                System::nanoTime, dispatchMetrics.getRegistry());
+    }
+
+    HotKeyTracker(boolean enabled, double sampleRate, int topK, int sketchWidth, int sketchDepth, long windowMs,
+                  DoubleSupplier random, LongSupplier nanoClock, MeterRegistry registry) {
+        if (enabled && (sampleRate <= 0 || sampleRate > 1)) {
+            throw new IllegalArgumentException("dispatch.hotkeys.sampleRate must be above 0 and at most 1");
+        }
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.random = random;
+        this.nanoClock = nanoClock;
+        this.registry = registry;
+        this.keys = enabled ? new HeavyHitters(topK, sketchWidth, sketchDepth) : null;
+        this.items = enabled ? new HeavyHitters(topK, sketchWidth, sketchDepth) : null;
+        this.windowStartNanos = nanoClock.getAsLong();
+        if (enabled) {
+            Gauge.builder("dispatch.hotkeys.top.share", this, tracker -> tracker.topShare(tracker.keys))
+                    .description("The hottest order.created key's estimated share of the recent records")
+                    .tag("dimension", "key")
+                    .register(registry);
+            Gauge.builder("dispatch.hotkeys.top.share", this, tracker -> tracker.topShare(tracker.items))
+                    .description("The hottest order.created item's estimated share of the recent records")
+                    .tag("dimension", "item")
+                    .register(registry);
+            Gauge.builder("dispatch.hotkeys.partition.skew", this, tracker -> tracker.report().partitionSkew())
+                    .description("The busiest order.created partition's records over the mean across partitions")
+                    .register(registry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(int partition, String key, OrderCreated orderCreated) {
+        if (!enabled) {
+            return;
+        }
+        if (nanoClock.getAsLong() - windowStartNanos >= windowNanos) {
+            synchronized (this) {
+                rollWindow();
+            }
+        }
+        PartitionCounts counts = partitions.get(partition);
+        if (counts == null) {
+            counts = partitions.computeIfAbsent(partition, this::partitionCounts);
+        }
+        counts.counter.increment();
+        counts.current.incrementAndGet();
+        if (random.getAsDouble() < sampleRate) {
+            sample(key, orderCreated != null ? orderCreated.getItem() : null);
+        }
+    }
+
+    private synchronized void sample(String key, String item) {
+        rollWindow();
+        if (key != null) {
+            keys.add(key, 1);
+        }
+        if (item != null) {
+            items.add(item, 1);
+        }
+    }
+
+    public synchronized HotKeyReport report() {
+        if (!enabled) {
+            return new HotKeyReport(sampleRate, TimeUnit.NANOSECONDS.toMillis(windowNanos), List.of(), List.of(), List.of(), 1.0);
+        }
+        rollWindow();
+        double windowSeconds = windowCompleted ? windowNanos / 1e9 : Math.max(1, nanoClock.getAsLong() - windowStartNanos) / 1e9;
+        long totalRecords = 0;
+        long maxRecords = 0;
+        Map<Integer, Long> records = new TreeMap<>();
+        for (Map.Entry<Integer, PartitionCounts> partition : partitions.entrySet()) {
+            long count = windowCompleted ? partition.getValue().last : partition.getValue().current.get();
+            records.put(partition.getKey(), count);
+            totalRecords += count;
+            maxRecords = Math.max(maxRecords, count);
+        }
+        List<HotKeyReport.PartitionLoad> loads = new ArrayList<>();
+        for (Map.Entry<Integer, Long> partition : records.entrySet()) {
+            loads.add(new HotKeyReport.PartitionLoad(partition.getKey(), partition.getValue(), partition.getValue() / windowSeconds,
+                    totalRecords > 0 ? (double) partition.getValue() / totalRecords : 0));
+        }
+        loads.sort(Comparator.comparingLong(HotKeyReport.PartitionLoad::records).reversed());
+        double skew = totalRecords > 0 ? maxRecords / ((double) totalRecords / records.size()) : 1.0;
+        return new HotKeyReport(sampleRate, TimeUnit.NANOSECONDS.toMillis(windowNanos), hotValues(keys), hotValues(items), loads, skew);
+    }
+
+    private List<HotKeyReport.HotValue> hotValues(HeavyHitters heavyHitters) {
+        long total = heavyHitters.total();
+        return heavyHitters.top().stream()
+                .map(entry -> new HotKeyReport.HotValue(entry.value(), Math.round(entry.count() / sampleRate),
+                        total > 0 ? (double) entry.count() / total : 0))
+                .toList();
+    }
+
+    private synchronized double topShare(HeavyHitters heavyHitters) {
+        rollWindow();
+        List<HeavyHitters.Entry> top = heavyHitters.top();
+        return top.isEmpty() || heavyHitters.total() == 0 ? 0 : (double) top.get(0).count() / heavyHitters.total();
+    }
+
+    /**
+     * Starts a new window once the current one has run for windowMs, skipping any windows in which nothing was
+     * sampled or reported.
+     */
+    private void rollWindow() {
+        long now = nanoClock.getAsLong();
+        if (now - windowStartNanos < windowNanos) {
+            return;
+        }
+        long elapsedWindows = (now - windowStartNanos) / windowNanos;
+        for (long window = 0; window < Math.min(elapsedWindows, 64); window++) {
+            keys.decay();
+            items.decay();
+        }
+        for (PartitionCounts counts : partitions.values()) {
+            long current = counts.current.getAndSet(0);
+            counts.last = elapsedWindows == 1 ? current : 0;
+        }
+        windowStartNanos += elapsedWindows * windowNanos;
+        windowCompleted = true;
+    }
+
+    private PartitionCounts partitionCounts(int partition) {
+        return new PartitionCounts(Counter.builder("dispatch.partition.records")
+                .description("order.created records received, by partition")
+                .tag("partition", String.valueOf(partition))
+                .register(registry));
+    }
+
+    private static class PartitionCounts {
+        private final Counter counter;
+        private final AtomicLong current = new AtomicLong();
+        // Guarded by the tracker.
+        private long last;
+
+        private PartitionCounts(Counter counter) {
+            this.counter = counter;
+        }
+    }
+}
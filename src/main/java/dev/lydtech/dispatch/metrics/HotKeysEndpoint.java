@@ -0,0 +1,26 @@
+package dev.lydtech.dispatch.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lists the current hot order.created keys and items and the load on each partition on /actuator/hotkeys.
+ */
+@Component
+@Endpoint(id = "hotkeys")
+@ConditionalOnProperty(name = "dispatch.hotkeys.enabled", havingValue = "true")
+public class HotKeysEndpoint {
+
+    private final HotKeyTracker hotKeyTracker;
+
+    public HotKeysEndpoint(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    @ReadOperation
+    public HotKeyReport hotKeys() {
+        return hotKeyTracker.report();
+    }
+}
@@ -0,0 +1,88 @@
+package dev.lydtech.dispatch.replay;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Triggers and follows DLT replays on /actuator/dltreplay: GET for the status, POST to start a replay and DELETE to
+ * stop it.  The POST body may set exceptionTypes (comma-separated), from and to (ISO-8601 instants), ratePerSecond,
+ * parallelism and resume, which default to the dispatch.dlt.replay.* properties.
+ *
+ * It is not in the default web exposure, as a replay writes to the outbound topics: expose it only on an internal
+ * management port or behind authentication.
+ */
+@Component
+@Endpoint(id = "dltreplay")
+@ConditionalOnProperty(name = "dispatch.dlt.replay.enabled", havingValue = "true")
+public class DltReplayEndpoint {
+
+    private final DltReprocessor reprocessor;
+    private final double defaultRatePerSecond;
+    private final int defaultParallelism;
+
+    public DltReplayEndpoint(DltReprocessor reprocessor,
+                             @Value("${dispatch.dlt.replay.ratePerSecond:20}") double defaultRatePerSecond,
+                             @Value("${dispatch.dlt.replay.parallelism:4}") int defaultParallelism) {
+        this.reprocessor = reprocessor;
+        this.defaultRatePerSecond = defaultRatePerSecond;
+        this.defaultParallelism = defaultParallelism;
+    }
+
+    @ReadOperation
+    public ReplayStatus status() {
+        return reprocessor.getStatus();
+    }
+
+    @WriteOperation
+    public ReplayStatus start(@Nullable String exceptionTypes, @Nullable String from, @Nullable String to,
+                              @Nullable Double ratePerSecond, @Nullable Integer parallelism, @Nullable Boolean resume) {
+        ReplayRequest request = new ReplayRequest(types(exceptionTypes), instant("from", from), instant("to", to),
+                ratePerSecond != null ? ratePerSecond : defaultRatePerSecond,
+                parallelism != null ? parallelism : defaultParallelism,
+                resume == null || resume);
+        try {
+            return reprocessor.start(request);
+        } catch (IllegalStateException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    @DeleteOperation
+    public ReplayStatus stop() {
+        return reprocessor.stop();
+    }
+
+    private static Set<String> types(String exceptionTypes) {
+        if (exceptionTypes == null) {
+            return Set.of();
+        }
+        return Arrays.stream(exceptionTypes.split(","))
+                .map(String::trim)
+                .filter(type -> !type.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    private static Instant instant(String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new InvalidEndpointRequestException(name + " is not an ISO-8601 instant: " + value, name + " is not an ISO-8601 instant");
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package dev.lydtech.dispatch.replay;
+
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.concurrent.TokenBucket;
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.service.DispatchService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Replays the records on order.created.DLT through the DispatchService, out of band from the order.created listeners.
+ *
+ * A replay reads every partition of the DLT with its own consumer, in polls of up to batchSize records, up to the end
+ * offsets at the time it started, so records dead-lettered while it runs wait for the next one.  Records matching the
+ * ReplayRequest are dispatched by parallelism workers, keeping the order of records with the same key, at no more than
+ * ratePerSecond in total, so a replay after an outage does not flood the stock service with the backlog.
+ *
+ * After each poll the offsets are committed for the replay's consumer group, up to the first record of each partition
+ * not yet attempted, and a replay with resume starts from there.  A record whose replay fails with a
+ * NotRetryableException is counted and logged and stays on the DLT, as its checkpoint moves past it: replay it again
+ * with resume off.  Any other failure, such as the stock service being unavailable again or its circuit breaker being
+ * open, stops the replay without checkpointing past the record, so resume picks it up once the cause has cleared.
+ * Records are dispatched at least once, as those after an unfinished record in a stopped poll are attempted again on
+ * resume.
+ *
+ * Progress is published as dispatch.dlt.replay.records, by result, and dispatch.dlt.replay.remaining.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dispatch.dlt.replay.enabled", havingValue = "true")
+public class DltReprocessor implements DisposableBean {
+
+    public static final String DLT_TOPIC = "order.created.DLT";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    public enum State { IDLE, RUNNING, STOPPING, STOPPED, COMPLETED, FAILED }
+
+    private final Supplier<Consumer<String, Object>> consumers;
+    private final DispatchService dispatchService;
+    private final OrderDeduplicator orderDeduplicator;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final Clock clock;
+    private final ExecutorService runner;
+    private final Counter replayedCounter;
+    private final Counter failedCounter;
+    private final Counter filteredCounter;
+    private final Counter duplicateCounter;
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong remaining = new AtomicLong();
+    private volatile boolean stopRequested;
+    private volatile String stoppedBy;
+
+    // Guarded by this.
+    private State state = State.IDLE;
+    private ReplayRequest request;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    @Autowired
+    public DltReprocessor(@Value("${dispatch.dlt.replay.groupId:dispatch.order.created.dlt.replay}") String groupId,
+                          @Value("${dispatch.dlt.replay.batchSize:1000}") int batchSize,
+                          ConsumerFactory<String, Object> consumerFactory,
+                          DispatchService dispatchService,
+                          OrderDeduplicator orderDeduplicator,
+                          KafkaTemplate<String, Object> kafkaTemplate,
+                          DispatchMetrics dispatchMetrics) {
+        this(() -> consumerFactory.createConsumer(groupId, "dispatch-dlt-replay", null, replayConsumerProperties(batchSize)),
+                dispatchService, orderDeduplicator, kafkaTemplate, dispatchMetrics.getRegistry(), Clock.systemUTC());
+    }
+
+    DltReprocessor(Supplier<Consumer<String, Object>> consumers, DispatchService dispatchService, OrderDeduplicator orderDeduplicator,
+                   KafkaTemplate<String, Object> kafkaTemplate, MeterRegistry registry, Clock clock) {
+        this.consumers = consumers;
+        this.dispatchService = dispatchService;
+        this.orderDeduplicator = orderDeduplicator;
+        this.kafkaTemplate = kafkaTemplate;
+        this.clock = clock;
+        this.runner = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("dlt-replay-"));
+        this.replayedCounter = records(registry, "replayed");
+        this.failedCounter = records(registry, "failed");
+        this.filteredCounter = records(registry, "filtered");
+        this.duplicateCounter = records(registry, "duplicate");
+        Gauge.builder("dispatch.dlt.replay.remaining", remaining, AtomicLong::get)
+                .description("DLT records the running replay has still to read")
+                .register(registry);
+    }
+
+    private static Counter records(MeterRegistry registry, String result) {
+        return Counter.builder("dispatch.dlt.replay.records")
+                .description("order.created.DLT records read by a replay, by result")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Properties replayConsumerProperties(int batchSize) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return properties;
+    }
+
+    /**
+     * Starts a replay in the background.  Only one replay runs at a time.
+     */
+    public synchronized ReplayStatus start(ReplayRequest request) {
+        if (state == State.RUNNING || state == State.STOPPING) {
+            throw new IllegalStateException("A DLT replay is already running");
+        }
+        this.request = request;
+        this.state = State.RUNNING;
+        this.startedAt = clock.instant();
+        this.finishedAt = null;
+        this.error = null;
+        stopRequested = false;
+        stoppedBy = null;
+        replayed.set(0);
+        failed.set(0);
+        filtered.set(0);
+        duplicates.set(0);
+        read.set(0);
+        remaining.set(0);
+        log.info("Starting DLT replay: {}", request);
+        runner.execute(() -> run(request));
+        return getStatus();
+    }
+
+    /**
+     * Asks the running replay to stop.  It finishes the records in progress and checkpoints before stopping.
+     */
+    public synchronized ReplayStatus stop() {
+        if (state == State.RUNNING) {
+            state = State.STOPPING;
+            stopRequested = true;
+        }
+        return getStatus();
+    }
+
+    public synchronized ReplayStatus getStatus() {
+        Instant end = finishedAt != null ? finishedAt : clock.instant();
+        double seconds = startedAt != null ? Duration.between(startedAt, end).toMillis() / 1000.0 : 0;
+        return new ReplayStatus(state, request, startedAt, finishedAt, replayed.get(), failed.get(), filtered.get(), duplicates.get(),
+                remaining.get(), seconds > 0 ? read.get() / seconds : 0, error);
+    }
+
+    private void run(ReplayRequest request) {
+        try (Consumer<String, Object> consumer = consumers.get();
+             KeyOrderedExecutor executor = executor(request.parallelism())) {
+            List<TopicPartition> partitions = consumer.partitionsFor(DLT_TOPIC).stream()
+                    .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            seek(consumer, partitions, request);
+            TokenBucket tokenBucket = new TokenBucket(request.ratePerSecond(), Math.max(1, request.parallelism()));
+            updateRemaining(consumer, endOffsets);
+            while (!stopRequested && stoppedBy == null && remaining.get() > 0) {
+                List<ConsumerRecord<String, Object>> batch = new ArrayList<>();
+                for (ConsumerRecord<String, Object> record : consumer.poll(POLL_TIMEOUT)) {
+                    if (record.offset() < endOffsets.get(new TopicPartition(record.topic(), record.partition()))) {
+                        batch.add(record);
+                    }
+                }
+                boolean[] attempted = new boolean[batch.size()];
+                executor.execute(IntStream.range(0, batch.size()).boxed().toList(), index -> batch.get(index).key(), index -> {
+                    if (!stopRequested && stoppedBy == null) {
+                        attempted[index] = replay(batch.get(index), request, tokenBucket);
+                    }
+                });
+                checkpoint(consumer, batch, attempted);
+                updateRemaining(consumer, endOffsets);
+            }
+            if (stoppedBy != null) {
+                finish(State.STOPPED, stoppedBy);
+            } else {
+                finish(stopRequested ? State.STOPPED : State.COMPLETED, null);
+            }
+        } catch (Exception e) {
+            log.error("DLT replay failed", e);
+            finish(State.FAILED, e.toString());
+        }
+    }
+
+    private static KeyOrderedExecutor executor(int parallelism) {
+        if (parallelism <= 1) {
+            return new KeyOrderedExecutor(1, null);
+        }
+        return new KeyOrderedExecutor(parallelism, Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("dlt-replay-worker-")));
+    }
+
+    private void seek(Consumer<String, Object> consumer, List<TopicPartition> partitions, ReplayRequest request) {
+        Map<TopicPartition, OffsetAndMetadata> checkpoints = request.resume() ? consumer.committed(new HashSet<>(partitions)) : Map.of();
+        Map<TopicPartition, Long> fromTimes = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            if (checkpoints.get(partition) == null && request.from() != null) {
+                fromTimes.put(partition, request.from().toEpochMilli());
+            }
+        }
+        Map<TopicPartition, OffsetAndTimestamp> fromOffsets = fromTimes.isEmpty() ? Map.of() : consumer.offsetsForTimes(fromTimes);
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata checkpoint = checkpoints.get(partition);
+            if (checkpoint != null) {
+                consumer.seek(partition, checkpoint.offset());
+            } else if (fromTimes.containsKey(partition)) {
+                // No record at or after from.
+                OffsetAndTimestamp fromOffset = fromOffsets.get(partition);
+                if (fromOffset != null) {
+                    consumer.seek(partition, fromOffset.offset());
+                } else {
+                    consumer.seekToEnd(List.of(partition));
+                }
+            } else {
+                consumer.seekToBeginning(List.of(partition));
+            }
+        }
+    }
+
+    /**
+     * Replays the record if it matches, returning whether the checkpoint can move past it: false when it failed in a
+     * way that could succeed later, which also stops the replay.
+     */
+    private boolean replay(ConsumerRecord<String, Object> record, ReplayRequest request, TokenBucket tokenBucket) throws InterruptedException {
+        read.incrementAndGet();
+        if (!request.matches(record)) {
+            count(filtered, filteredCounter);
+            return true;
+        }
+        if (!(record.value() instanceof OrderCreated orderCreated)) {
+            log.warn("Not replaying DLT record {}-{}@{}: no order.created payload", record.topic(), record.partition(), record.offset());
+            count(failed, failedCounter);
+            return true;
+        }
+        if (orderDeduplicator.isDuplicate(orderCreated)) {
+            count(duplicates, duplicateCounter);
+            return true;
+        }
+        tokenBucket.acquire();
+        try {
+            dispatch(record.key(), orderCreated);
+            orderDeduplicator.markProcessed(orderCreated);
+            count(replayed, replayedCounter);
+        } catch (NotRetryableException e) {
+            log.warn("Replay of order {} from {}-{}@{} failed: {}", orderCreated.getOrderId(), record.topic(), record.partition(),
+                    record.offset(), e.toString());
+            count(failed, failedCounter);
+        } catch (Exception e) {
+            log.warn("Stopping DLT replay at order {} from {}-{}@{}: {}", orderCreated.getOrderId(), record.topic(), record.partition(),
+                    record.offset(), e.toString());
+            stoppedBy = "Stopped at " + record.topic() + "-" + record.partition() + "@" + record.offset() + ": " + e;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * With transactions enabled, the outbound events of each order are written in a transaction of their own.
+     */
+    private void dispatch(String key, OrderCreated orderCreated) throws Exception {
+        if (!kafkaTemplate.isTransactional()) {
+            dispatchService.process(key, orderCreated);
+            return;
+        }
+        kafkaTemplate.executeInTransaction(operations -> {
+            try {
+                dispatchService.process(key, orderCreated);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new NotRetryableException(e);
+            }
+            return null;
+        });
+    }
+
+    private static void count(AtomicLong total, Counter counter) {
+        total.incrementAndGet();
+        counter.increment();
+    }
+
+    /**
+     * Commits, for each partition in the poll, the offset of its first record not attempted, or the offset after its
+     * last record when all were.
+     */
+    private static void checkpoint(Consumer<String, Object> consumer, List<ConsumerRecord<String, Object>> batch, boolean[] attempted) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Set<TopicPartition> unfinished = new HashSet<>();
+        for (int index = 0; index < batch.size(); index++) {
+            ConsumerRecord<String, Object> record = batch.get(index);
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (unfinished.contains(partition)) {
+                continue;
+            }
+            if (!attempted[index]) {
+                unfinished.add(partition);
+            }
+            offsets.put(partition, new OffsetAndMetadata(attempted[index] ? record.offset() + 1 : record.offset()));
+        }
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+    }
+
+    private void updateRemaining(Consumer<String, Object> consumer, Map<TopicPartition, Long> endOffsets) {
+        long total = 0;
+        for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+            total += Math.max(0, endOffset.getValue() - consumer.position(endOffset.getKey()));
+        }
+        remaining.set(total);
+    }
+
+    private synchronized void finish(State finalState, String error) {
+        this.state = finalState;
+        this.finishedAt = clock.instant();
+        this.error = error;
+        if (finalState == State.COMPLETED) {
+            remaining.set(0);
+        }
+        log.info("DLT replay {}: replayed {}, failed {}, filtered {}, duplicates {}", finalState, replayed.get(), failed.get(),
+                filtered.get(), duplicates.get());
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        stop();
+        runner.shutdown();
+        if (!runner.awaitTermination(10, TimeUnit.SECONDS)) {
+            runner.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.lydtech.dispatch.replay;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * What a DLT replay covers and how fast it goes.
+ *
+ * A record is replayed when its exception, or the exception's cause, is one of exceptionTypes (by fully qualified or
+ * simple class name), and its timestamp is at or after from and before to.  Empty or null criteria match every record.
+ * The DeadLetterPublishingRecoverer keeps the order.created record's timestamp, so from and to select by when the
+ * order was created.
+ *
+ * With resume, each partition starts from the checkpoint left by the last replay, if any.
+ */
+public record ReplayRequest(Set<String> exceptionTypes, Instant from, Instant to, double ratePerSecond, int parallelism, boolean resume) {
+
+    public boolean matches(ConsumerRecord<?, ?> record) {
+        if (from != null && record.timestamp() < from.toEpochMilli()) {
+            return false;
+        }
+        if (to != null && record.timestamp() >= to.toEpochMilli()) {
+            return false;
+        }
+        if (exceptionTypes == null || exceptionTypes.isEmpty()) {
+            return true;
+        }
+        return matchesType(header(record, KafkaHeaders.DLT_EXCEPTION_FQCN)) || matchesType(header(record, KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN));
+    }
+
+    private boolean matchesType(String className) {
+        return className != null
+                && (exceptionTypes.contains(className) || exceptionTypes.contains(className.substring(className.lastIndexOf('.') + 1)));
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
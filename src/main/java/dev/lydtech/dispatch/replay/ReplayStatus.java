@@ -0,0 +1,12 @@
+package dev.lydtech.dispatch.replay;
+
+import java.time.Instant;
+
+/**
+ * The progress of the current or last DLT replay.  remaining is the number of DLT records still to be read before the
+ * end offsets taken when the replay started, and recordsPerSecond the rate at which records have been read.
+ */
+public record ReplayStatus(DltReprocessor.State state, ReplayRequest request, Instant startedAt, Instant finishedAt,
+                           long replayed, long failed, long filtered, long duplicates, long remaining,
+                           double recordsPerSecond, String error) {
+}
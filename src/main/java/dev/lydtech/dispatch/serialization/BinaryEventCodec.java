@@ -0,0 +1,263 @@
+package dev.lydtech.dispatch.serialization;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The compact binary encoding of the dispatch events.
+ *
+ * Every payload starts with a magic byte, which no JSON document can start with, so a reader can tell the two formats
+ * apart.  Then come the schema version, the event type and a mask with a bit set for each null field, followed by the
+ * non-null fields in declaration order:
+ *
+ *   UUID      two longs, most significant first
+ *   String    varint length, then UTF-8 bytes
+ *   date      the ISO-8601 date as epoch days, an int
+ *   version   a byte
+ *   statuses  a byte with the bit of each status's ordinal set, as statuses are reached in declaration order
+ */
+public final class BinaryEventCodec {
+
+    public static final byte MAGIC = (byte) 0xD5;
+    public static final byte VERSION = 1;
+
+    private static final byte ORDER_CREATED = 1;
+    private static final byte DISPATCH_PREPARING = 2;
+    private static final byte ORDER_DISPATCHED = 3;
+    private static final byte DISPATCH_COMPLETED = 4;
+    private static final byte DISPATCH_TRACKING = 5;
+
+    private static final int HEADER_BYTES = 4;
+    private static final int UUID_BYTES = 16;
+
+    private static volatile ParsedDate lastParsedDate;
+
+    private BinaryEventCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(Object event) {
+        if (event instanceof OrderCreated orderCreated) {
+            byte[] item = utf8(orderCreated.getItem());
+            ByteBuffer buffer = header(ORDER_CREATED, uuidBytes(orderCreated.getOrderId()) + stringBytes(item),
+                    nullMask(orderCreated.getOrderId(), item));
+            putUuid(buffer, orderCreated.getOrderId());
+            putString(buffer, item);
+            return buffer.array();
+        }
+        if (event instanceof DispatchPreparing dispatchPreparing) {
+            ByteBuffer buffer = header(DISPATCH_PREPARING, uuidBytes(dispatchPreparing.getOrderId()), nullMask(dispatchPreparing.getOrderId()));
+            putUuid(buffer, dispatchPreparing.getOrderId());
+            return buffer.array();
+        }
+        if (event instanceof OrderDispatched orderDispatched) {
+            byte[] notes = utf8(orderDispatched.getNotes());
+            ByteBuffer buffer = header(ORDER_DISPATCHED,
+                    uuidBytes(orderDispatched.getOrderId()) + uuidBytes(orderDispatched.getProcessedById()) + stringBytes(notes),
+                    nullMask(orderDispatched.getOrderId(), orderDispatched.getProcessedById(), notes));
+            putUuid(buffer, orderDispatched.getOrderId());
+            putUuid(buffer, orderDispatched.getProcessedById());
+            putString(buffer, notes);
+            return buffer.array();
+        }
+        if (event instanceof DispatchCompleted dispatchCompleted) {
+            Integer epochDay = epochDay(dispatchCompleted.getDispatchedDate());
+            ByteBuffer buffer = header(DISPATCH_COMPLETED, uuidBytes(dispatchCompleted.getOrderId()) + (epochDay != null ? Integer.BYTES : 0),
+                    nullMask(dispatchCompleted.getOrderId(), epochDay));
+            putUuid(buffer, dispatchCompleted.getOrderId());
+            if (epochDay != null) {
+                buffer.putInt(epochDay);
+            }
+            return buffer.array();
+        }
+        if (event instanceof DispatchTracking dispatchTracking) {
+            Integer epochDay = epochDay(dispatchTracking.getDispatchedDate());
+            List<DispatchTracking.Status> statuses = dispatchTracking.getStatuses();
+            ByteBuffer buffer = header(DISPATCH_TRACKING,
+                    1 + uuidBytes(dispatchTracking.getOrderId()) + (statuses != null ? 1 : 0) + (epochDay != null ? Integer.BYTES : 0),
+                    nullMask(dispatchTracking.getVersion(), dispatchTracking.getOrderId(), statuses, epochDay));
+            buffer.put((byte) dispatchTracking.getVersion());
+            putUuid(buffer, dispatchTracking.getOrderId());
+            if (statuses != null) {
+                buffer.put(statusBits(statuses));
+            }
+            if (epochDay != null) {
+                buffer.putInt(epochDay);
+            }
+            return buffer.array();
+        }
+        throw new SerializationException("No binary encoding for " + (event == null ? "null" : event.getClass().getName()));
+    }
+
+    public static Object decode(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.get();
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported binary event version " + version);
+            }
+            byte type = buffer.get();
+            int nullMask = buffer.get();
+            return switch (type) {
+                case ORDER_CREATED -> new OrderCreated(getUuid(buffer, nullMask, 0), getString(buffer, nullMask, 1));
+                case DISPATCH_PREPARING -> new DispatchPreparing(getUuid(buffer, nullMask, 0));
+                case ORDER_DISPATCHED -> new OrderDispatched(getUuid(buffer, nullMask, 0), getUuid(buffer, nullMask, 1), getString(buffer, nullMask, 2));
+                case DISPATCH_COMPLETED -> new DispatchCompleted(getUuid(buffer, nullMask, 0), getDate(buffer, nullMask, 1));
+                case DISPATCH_TRACKING -> new DispatchTracking(buffer.get(), getUuid(buffer, nullMask, 1), getStatuses(buffer, nullMask, 2),
+                        getDate(buffer, nullMask, 3));
+                default -> throw new SerializationException("Unknown binary event type " + type);
+            };
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated binary event", e);
+        }
+    }
+
+    private static ByteBuffer header(byte type, int bodyBytes, int nullMask) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyBytes);
+        buffer.put(MAGIC).put(VERSION).put(type).put((byte) nullMask);
+        return buffer;
+    }
+
+    private static int nullMask(Object... fields) {
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    private static boolean isNull(int nullMask, int field) {
+        return (nullMask & (1 << field)) != 0;
+    }
+
+    private static int uuidBytes(UUID uuid) {
+        return uuid != null ? UUID_BYTES : 0;
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        if (uuid != null) {
+            buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID getUuid(ByteBuffer buffer, int nullMask, int field) {
+        return isNull(nullMask, field) ? null : new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringBytes(byte[] utf8) {
+        if (utf8 == null) {
+            return 0;
+        }
+        int lengthBytes = 1;
+        for (int length = utf8.length; length >= 0x80; length >>>= 7) {
+            lengthBytes++;
+        }
+        return lengthBytes + utf8.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] utf8) {
+        if (utf8 == null) {
+            return;
+        }
+        int length = utf8.length;
+        while (length >= 0x80) {
+            buffer.put((byte) (length | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        buffer.put(utf8);
+    }
+
+    private static String getString(ByteBuffer buffer, int nullMask, int field) {
+        if (isNull(nullMask, field)) {
+            return null;
+        }
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+            if (shift > 21) {
+                throw new SerializationException("Malformed string length");
+            }
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static byte statusBits(List<DispatchTracking.Status> statuses) {
+        int bits = 0;
+        for (DispatchTracking.Status status : statuses) {
+            bits |= 1 << status.ordinal();
+        }
+        return (byte) bits;
+    }
+
+    private static List<DispatchTracking.Status> getStatuses(ByteBuffer buffer, int nullMask, int field) {
+        if (isNull(nullMask, field)) {
+            return null;
+        }
+        int bits = buffer.get();
+        List<DispatchTracking.Status> statuses = new ArrayList<>(Integer.bitCount(bits));
+        for (DispatchTracking.Status status : DispatchTracking.Status.values()) {
+            if ((bits & (1 << status.ordinal())) != 0) {
+                statuses.add(status);
+            }
+        }
+        return statuses;
+    }
+
+    private static Integer epochDay(String isoDate) {
+        if (isoDate == null) {
+            return null;
+        }
+        // Nearly every event in a day carries the same date, so the last one parsed is kept.
+        ParsedDate parsed = lastParsedDate;
+        if (parsed != null && parsed.isoDate.equals(isoDate)) {
+            return parsed.epochDay;
+        }
+        try {
+            int epochDay = Math.toIntExact(LocalDate.parse(isoDate).toEpochDay());
+            lastParsedDate = new ParsedDate(isoDate, epochDay);
+            return epochDay;
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new SerializationException("dispatchedDate is not an ISO-8601 date: " + isoDate, e);
+        }
+    }
+
+    private static String getDate(ByteBuffer buffer, int nullMask, int field) {
+        return isNull(nullMask, field) ? null : LocalDate.ofEpochDay(buffer.getInt()).toString();
+    }
+
+    private record ParsedDate(String isoDate, int epochDay) {
+    }
+}
@@ -0,0 +1,15 @@
+package dev.lydtech.dispatch.serialization;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Writes dispatch events in the compact binary encoding of BinaryEventCodec.  No type headers are added, as the event
+ * type is part of the payload.
+ */
+public class BinaryEventSerializer implements Serializer<Object> {
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return data == null ? null : BinaryEventCodec.encode(data);
+    }
+}
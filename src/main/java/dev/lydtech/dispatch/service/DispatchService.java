@@ -1,56 +1,277 @@
 package dev.lydtech.dispatch.service;
 
 import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.RetryableException;
 import dev.lydtech.dispatch.message.DispatchCompleted;
 import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
 import dev.lydtech.dispatch.message.OrderCreated;
 import dev.lydtech.dispatch.message.OrderDispatched;
-import lombok.RequiredArgsConstructor;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.tracing.DispatchTrace;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class DispatchService {
 
-    private static final String DISPATCH_TRACKING_TOPIC = "dispatch.tracking";
-    private static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
+    public static final String DISPATCH_TRACKING_TOPIC = "dispatch.tracking";
+    public static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
     private static final UUID APPLICATION_ID = UUID.randomUUID();
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final StockServiceClient stockServiceClient;
+    private final boolean pipelinedSends;
+    private final boolean compactTracking;
+    private final DispatchMetrics dispatchMetrics;
+    private final Clock clock;
+    private volatile DispatchedDate dispatchedDate;
+
+    @Autowired
+    public DispatchService(KafkaTemplate<String, Object> kafkaTemplate,
+                           StockServiceClient stockServiceClient,
+                           @Value("${dispatch.producer.pipelinedSends:false}") boolean pipelinedSends,
+                           @Value("${dispatch.tracking.compact:false}") boolean compactTracking,
+                           DispatchMetrics dispatchMetrics) {
+        this(kafkaTemplate, stockServiceClient, pipelinedSends, compactTracking, dispatchMetrics, Clock.systemDefaultZone());
+    }
+
+    DispatchService(KafkaTemplate<String, Object> kafkaTemplate,
+                    StockServiceClient stockServiceClient,
+                    boolean pipelinedSends,
+                    boolean compactTracking,
+                    DispatchMetrics dispatchMetrics,
+                    Clock clock) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.stockServiceClient = stockServiceClient;
+        this.pipelinedSends = pipelinedSends;
+        this.compactTracking = compactTracking;
+        this.dispatchMetrics = dispatchMetrics;
+        this.clock = clock;
+    }
 
     public void process(String key, OrderCreated orderCreated) throws Exception {
+        process(key, orderCreated, null);
+    }
 
-        String available = stockServiceClient.checkAvailability(orderCreated.getItem());
+    /**
+     * As process, recording the stock check and the sends on the trace, if the order is traced.
+     */
+    public void process(String key, OrderCreated orderCreated, DispatchTrace trace) throws Exception {
+
+        long stockCheckStart = System.nanoTime();
+        if (trace != null) {
+            trace.stockCheckStarted();
+        }
+        String available;
+        String stockCheckResult = DispatchMetrics.RESULT_FAILURE;
+        try {
+            available = stockServiceClient.checkAvailability(orderCreated.getItem());
+            stockCheckResult = Boolean.valueOf(available) ? DispatchMetrics.OUTCOME_AVAILABLE : DispatchMetrics.OUTCOME_UNAVAILABLE;
+        } finally {
+            dispatchMetrics.recordStockCheck(stockCheckStart, stockCheckResult);
+        }
+        if (trace != null) {
+            trace.stockCheckEnded();
+        }
 
         if(Boolean.valueOf(available)) {
-            DispatchPreparing dispatchPreparing = DispatchPreparing.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .build();
-            kafkaTemplate.send(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing).get();
-
-            OrderDispatched orderDispatched = OrderDispatched.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .processedById(APPLICATION_ID)
-                    .notes("Dispatched: " + orderCreated.getItem())
-                    .build();
-            kafkaTemplate.send(ORDER_DISPATCHED_TOPIC, key, orderDispatched).get();
-
-            DispatchCompleted dispatchCompleted = DispatchCompleted.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .dispatchedDate(LocalDate.now().toString())
-                    .build();
-            kafkaTemplate.send(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted).get();
-
-            log.info("Sent messages: key: " + key + " - orderId: " + orderCreated.getOrderId() + " - processedById: " + APPLICATION_ID);
+            if (compactTracking) {
+                // The DispatchTracking record already says COMPLETED, so it only goes out once OrderDispatched has been
+                // acknowledged, as DispatchCompleted does.  There is nothing left to pipeline.
+                await(send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated), trace));
+                await(send(DISPATCH_TRACKING_TOPIC, key, DispatchTracking.dispatched(orderCreated.getOrderId(), dispatchedDate()), trace));
+            } else if (pipelinedSends) {
+                awaitAll(sendDispatchEvents(key, orderCreated, trace));
+            } else {
+                send(DISPATCH_TRACKING_TOPIC, key, new DispatchPreparing(orderCreated.getOrderId()), trace).get();
+                send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated), trace).get();
+                send(DISPATCH_TRACKING_TOPIC, key, new DispatchCompleted(orderCreated.getOrderId(), dispatchedDate()), trace).get();
+            }
+
+            outcome(DispatchMetrics.OUTCOME_AVAILABLE, trace);
+            log.debug("Sent messages: key: {} - orderId: {} - processedById: {}", key, orderCreated.getOrderId(), APPLICATION_ID);
         } else {
-            log.info("Item " + orderCreated.getItem() + " is unavailable.");
+            outcome(DispatchMetrics.OUTCOME_UNAVAILABLE, trace);
+            log.info("Item {} is unavailable.", orderCreated.getItem());
         }
 
     }
+
+    /**
+     * As process, but the availability check is made with the non-blocking stock client and the sends are chained onto
+     * it, so the returned future completes once the broker has acknowledged all the events without any thread
+     * waiting on the stock service or the broker.  Send failures complete it with a RetryableException or a
+     * NotRetryableException, as for pipelined sends.
+     *
+     * The sends are made on whichever thread completes the availability check, so this cannot be used with Kafka
+     * transactions, which are bound to the listener thread.
+     */
+    public CompletableFuture<Void> processAsync(String key, OrderCreated orderCreated) {
+        return processAsync(key, orderCreated, null);
+    }
+
+    /**
+     * As processAsync, recording the stock check and the sends on the trace, if the order is traced.
+     */
+    public CompletableFuture<Void> processAsync(String key, OrderCreated orderCreated, DispatchTrace trace) {
+        long stockCheckStart = System.nanoTime();
+        if (trace != null) {
+            trace.stockCheckStarted();
+        }
+        return stockServiceClient.checkAvailabilityAsync(orderCreated.getItem())
+                .whenComplete((available, failure) -> dispatchMetrics.recordStockCheck(stockCheckStart, failure != null
+                        ? DispatchMetrics.RESULT_FAILURE
+                        : available ? DispatchMetrics.OUTCOME_AVAILABLE : DispatchMetrics.OUTCOME_UNAVAILABLE))
+                .thenCompose(available -> {
+                    if (trace != null) {
+                        trace.stockCheckEnded();
+                    }
+                    if (!available) {
+                        outcome(DispatchMetrics.OUTCOME_UNAVAILABLE, trace);
+                        log.info("Item {} is unavailable.", orderCreated.getItem());
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return CompletableFuture.allOf(sendDispatchEvents(key, orderCreated, trace))
+                            .handle((ignored, failure) -> {
+                                if (failure != null) {
+                                    Exception cause = failure instanceof CompletionException && failure.getCause() instanceof Exception exception
+                                            ? exception : new CompletionException(failure);
+                                    throw isRetryable(cause) ? new RetryableException(cause) : new NotRetryableException(cause);
+                                }
+                                outcome(DispatchMetrics.OUTCOME_AVAILABLE, trace);
+                                log.debug("Sent messages: key: {} - orderId: {} - processedById: {}", key, orderCreated.getOrderId(), APPLICATION_ID);
+                                return null;
+                            });
+                });
+    }
+
+    /**
+     * Hands the events for a dispatched order to the producer without waiting between them: a DispatchPreparing, an
+     * OrderDispatched and a DispatchCompleted.  The two dispatch.tracking events share a key and so a partition, and
+     * the idempotent producer keeps them in order.
+     *
+     * With compact tracking the DispatchTracking record, which already says COMPLETED, is only sent once OrderDispatched
+     * has been acknowledged.  It is sent from the common pool rather than the producer's I/O thread, which completes the
+     * acknowledgement and must not block in send.  Only processAsync sends compact tracking this way: it never runs in a
+     * transaction, which would be bound to the listener thread.
+     */
+    private CompletableFuture<?>[] sendDispatchEvents(String key, OrderCreated orderCreated, DispatchTrace trace) {
+        if (compactTracking) {
+            return new CompletableFuture<?>[] {
+                    send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated), trace)
+                            .thenComposeAsync(dispatched -> send(DISPATCH_TRACKING_TOPIC, key,
+                                    DispatchTracking.dispatched(orderCreated.getOrderId(), dispatchedDate()), trace))
+            };
+        }
+        return new CompletableFuture<?>[] {
+                send(DISPATCH_TRACKING_TOPIC, key, new DispatchPreparing(orderCreated.getOrderId()), trace),
+                send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated), trace),
+                send(DISPATCH_TRACKING_TOPIC, key, new DispatchCompleted(orderCreated.getOrderId(), dispatchedDate()), trace)
+        };
+    }
+
+    private void outcome(String outcome, DispatchTrace trace) {
+        dispatchMetrics.outcome(outcome);
+        if (trace != null) {
+            trace.outcome(outcome);
+        }
+    }
+
+    private static OrderDispatched orderDispatched(OrderCreated orderCreated) {
+        return new OrderDispatched(orderCreated.getOrderId(), APPLICATION_ID, "Dispatched: " + orderCreated.getItem());
+    }
+
+    /**
+     * Waits for one send as the configured mode does: with pipelined sends classifying a failure as awaitAll does,
+     * otherwise as the sequential sends do.
+     */
+    private void await(CompletableFuture<?> send) throws Exception {
+        if (pipelinedSends) {
+            awaitAll(new CompletableFuture<?>[] {send});
+        } else {
+            send.get();
+        }
+    }
+
+    /**
+     * Blocks once until every send has been acknowledged, so the listener only returns (and the offset is only
+     * committed) when all the events are written.
+     */
+    private void awaitAll(CompletableFuture<?>[] sends) {
+        try {
+            CompletableFuture.allOf(sends).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RetryableException(e);
+        } catch (ExecutionException e) {
+            if (isRetryable(e.getCause())) {
+                throw new RetryableException(e);
+            }
+            throw new NotRetryableException(e);
+        }
+    }
+
+    /**
+     * Today's date for DispatchCompleted, formatted once a day rather than once an order.
+     */
+    String dispatchedDate() {
+        long now = clock.millis();
+        DispatchedDate cached = this.dispatchedDate;
+        if (cached == null || now >= cached.validUntilMillis()) {
+            LocalDate today = LocalDate.now(clock);
+            long tomorrow = today.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+            cached = new DispatchedDate(today.toString(), tomorrow);
+            this.dispatchedDate = cached;
+        }
+        return cached.value();
+    }
+
+    /**
+     * Sends the event, timing it until the broker acknowledges it.  A traced order's event is sent as a ProducerRecord
+     * carrying the trace's stage headers.
+     */
+    private CompletableFuture<SendResult<String, Object>> send(String topic, String key, Object event, DispatchTrace trace) {
+        long start = System.nanoTime();
+        if (trace == null) {
+            CompletableFuture<SendResult<String, Object>> result = kafkaTemplate.send(topic, key, event);
+            result.whenComplete((sendResult, failure) -> dispatchMetrics.recordSend(topic, start, failure == null));
+            return result;
+        }
+        DispatchTrace.Send traced = trace.startSend(topic, event);
+        CompletableFuture<SendResult<String, Object>> result = kafkaTemplate.send(new ProducerRecord<>(topic, null, key, event, traced.headers()));
+        result.whenComplete((sendResult, failure) -> {
+            dispatchMetrics.recordSend(topic, start, failure == null);
+            traced.completed(failure == null);
+        });
+        return result;
+    }
+
+    /**
+     * A send failure is retryable if Kafka flagged any exception in the cause chain as transient.
+     */
+    private static boolean isRetryable(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.apache.kafka.common.errors.RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record DispatchedDate(String value, long validUntilMillis) {
+    }
 }
@@ -0,0 +1,237 @@
+package dev.lydtech.dispatch.startup;
+
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.serialization.BinaryEventSerializer;
+import dev.lydtech.dispatch.serialization.BinaryOrJsonDeserializer;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpMethod;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static dev.lydtech.dispatch.service.DispatchService.DISPATCH_TRACKING_TOPIC;
+import static dev.lydtech.dispatch.service.DispatchService.ORDER_DISPATCHED_TOPIC;
+
+/**
+ * Warms up the dispatch path before the listener containers start, so the first orders after a deploy do not pay for
+ * it.  In parallel, it:
+ *
+ * - creates the producer and fetches the metadata of the output topics (in a transaction when transactions are enabled,
+ *   so the transactional producer is initialised and cached);
+ * - serializes each outbound event as JSON and in the binary encoding, and deserializes an order.created payload;
+ * - makes stockConnections concurrent requests to the stock service, so that many pooled connections are open, plus
+ *   one with the async HTTP client in async executor mode.  Any response, even an error status, counts.
+ *
+ * The Kafka clients create their own serializer instances, so the serializers step loads and compiles the shared
+ * serialization code rather than filling those instances' caches.
+ *
+ * Failed steps are logged and skipped, and the listeners start after at most timeoutMs whether or not the warm-up has
+ * finished.  The time taken is published as dispatch.startup.warmup.
+ */
+@Slf4j
+@Component
+public class StartupWarmUp implements SmartLifecycle {
+
+    /**
+     * Before the listener containers, which start in the KafkaListenerEndpointRegistry's phase.
+     */
+    public static final int PHASE = AbstractMessageListenerContainer.DEFAULT_PHASE - 100;
+    private static final List<String> OUTPUT_TOPICS = List.of(DISPATCH_TRACKING_TOPIC, ORDER_DISPATCHED_TOPIC);
+    private static final String WARM_UP_ITEM = "warm-up";
+
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final int stockConnections;
+    private final URI stockUri;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ConsumerFactory<String, Object> consumerFactory;
+    private final RestTemplate restTemplate;
+    private final HttpClient asyncHttpClient;
+    private final boolean asyncExecutor;
+    private final AtomicLong warmUpMillis = new AtomicLong();
+    private volatile boolean running;
+
+    @Autowired
+    public StartupWarmUp(@Value("${dispatch.warmup.enabled:false}") boolean enabled,
+                         @Value("${dispatch.warmup.timeoutMs:30000}") long timeoutMs,
+                         @Value("${dispatch.warmup.stockConnections:2}") int stockConnections,
+                         @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint,
+                         KafkaTemplate<String, Object> kafkaTemplate,
+                         ConsumerFactory<String, Object> consumerFactory,
+                         RestTemplate restTemplate,
+                         HttpClient stockAsyncHttpClient,
+                         KeyOrderedExecutor keyOrderedExecutor,
+                         DispatchMetrics dispatchMetrics) {
+        this.enabled = enabled;
+        this.timeoutMs = timeoutMs;
+        this.stockConnections = stockConnections;
+        this.stockUri = UriComponentsBuilder.fromUriString(stockServiceEndpoint)
+                .queryParam("item", WARM_UP_ITEM)
+                .encode()
+                .build()
+                .toUri();
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.restTemplate = restTemplate;
+        this.asyncHttpClient = stockAsyncHttpClient;
+        this.asyncExecutor = keyOrderedExecutor.isAsync();
+        TimeGauge.builder("dispatch.startup.warmup", warmUpMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time taken to warm up the dispatch path before the listeners started")
+                .register(dispatchMetrics.getRegistry());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (enabled) {
+            warmUp();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    void warmUp() {
+        long startNanos = System.nanoTime();
+        ExecutorService executor = Executors.newCachedThreadPool(threadFactory());
+        try {
+            CompletableFuture.allOf(
+                    step("producer", this::warmUpProducer, executor),
+                    step("serializers", this::warmUpSerializers, executor),
+                    step("stock service connections", () -> warmUpStockService(executor), executor))
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Warm-up did not finish within {}ms: starting the listeners anyway", timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Not thrown, as each step handles its own failures.
+            log.warn("Warm-up failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        warmUpMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        log.info("Warm-up finished in {}ms", warmUpMillis.get());
+    }
+
+    public Duration getWarmUpTime() {
+        return Duration.ofMillis(warmUpMillis.get());
+    }
+
+    private static CompletableFuture<Void> step(String name, Runnable step, ExecutorService executor) {
+        return CompletableFuture.runAsync(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                step.run();
+                log.info("Warmed up {} in {}ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            } catch (RuntimeException e) {
+                log.warn("Warming up {} failed: {}", name, e.toString());
+            }
+        }, executor);
+    }
+
+    private void warmUpProducer() {
+        if (kafkaTemplate.isTransactional()) {
+            kafkaTemplate.executeInTransaction(this::fetchMetadata);
+        } else {
+            fetchMetadata(kafkaTemplate);
+        }
+    }
+
+    private Void fetchMetadata(KafkaOperations<String, Object> operations) {
+        for (String topic : OUTPUT_TOPICS) {
+            log.debug("Topic {} has {} partitions", topic, operations.partitionsFor(topic).size());
+        }
+        return null;
+    }
+
+    private void warmUpSerializers() {
+        UUID orderId = UUID.randomUUID();
+        List<Object> events = List.of(new DispatchPreparing(orderId),
+                new OrderDispatched(orderId, orderId, "Dispatched: " + WARM_UP_ITEM),
+                new DispatchCompleted(orderId, LocalDate.now().toString()));
+        try (JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+             BinaryEventSerializer binarySerializer = new BinaryEventSerializer();
+             BinaryOrJsonDeserializer deserializer = new BinaryOrJsonDeserializer();
+             JsonSerializer<OrderCreated> orderCreatedSerializer = new JsonSerializer<>()) {
+            orderCreatedSerializer.setAddTypeInfo(false);
+            deserializer.configure(consumerFactory.getConfigurationProperties(), false);
+            for (Object event : events) {
+                jsonSerializer.serialize(DISPATCH_TRACKING_TOPIC, event);
+                binarySerializer.serialize(DISPATCH_TRACKING_TOPIC, event);
+            }
+            OrderCreated orderCreated = OrderCreated.builder().orderId(orderId).item(WARM_UP_ITEM).build();
+            deserializer.deserialize("order.created", orderCreatedSerializer.serialize("order.created", orderCreated));
+        }
+    }
+
+    private void warmUpStockService(ExecutorService executor) {
+        CompletableFuture<?>[] requests = IntStream.range(0, Math.max(1, stockConnections))
+                .mapToObj(i -> CompletableFuture.runAsync(this::requestStock, executor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<?> asyncRequest = asyncExecutor
+                ? asyncHttpClient.sendAsync(HttpRequest.newBuilder(stockUri).GET().build(), HttpResponse.BodyHandlers.discarding())
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture.allOf(requests).join();
+        asyncRequest.join();
+    }
+
+    private void requestStock() {
+        try {
+            restTemplate.execute(stockUri, HttpMethod.GET, null, response -> null);
+        } catch (RestClientResponseException e) {
+            log.debug("Stock service warm-up request returned {}", e.getStatusCode());
+        }
+    }
+
+    private static CustomizableThreadFactory threadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dispatch-warmup-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -0,0 +1,218 @@
+package dev.lydtech.dispatch.tracing;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * The stage timestamps of one sampled order, from its order.created record being written to the broker acknowledging
+ * its last outbound event.  Started by the DispatchTracer, filled in by the DispatchService as the order moves through
+ * the stock check and the sends, and turned into spans when the tracer finishes it.
+ *
+ * Each outbound record of a traced order carries the stages reached by the time it was sent, as headers holding
+ * microseconds since the epoch in decimal ASCII: the order.created record timestamp (dispatch.ts.record), when the
+ * consumer polled it (dispatch.ts.poll), the start and end of the stock check (dispatch.ts.stock.start and .end) and
+ * the send itself (dispatch.ts.send).  A W3C traceparent header names the send's span, so a downstream consumer can
+ * continue the trace.
+ *
+ * The stock check and the sends may be recorded on different threads with the async executor, so all the mutable
+ * state is volatile or concurrent.
+ */
+public class DispatchTrace {
+
+    public static final String RECORD_TIMESTAMP_HEADER = "dispatch.ts.record";
+    public static final String POLL_TIME_HEADER = "dispatch.ts.poll";
+    public static final String STOCK_CHECK_START_HEADER = "dispatch.ts.stock.start";
+    public static final String STOCK_CHECK_END_HEADER = "dispatch.ts.stock.end";
+    public static final String SEND_TIME_HEADER = "dispatch.ts.send";
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+
+    private final String traceId = randomHex(2);
+    private final String spanId = randomHex(1);
+    private final int partition;
+    private final UUID orderId;
+    private final long recordMicros;
+    private final long pollMicros;
+    private final long receivedMicros;
+    private final boolean stageHeaders;
+    private final LongSupplier epochMicros;
+    private final List<Send> sends = new CopyOnWriteArrayList<>();
+
+    private volatile long stockCheckStartMicros;
+    private volatile long stockCheckEndMicros;
+    private volatile String outcome;
+
+    DispatchTrace(int partition, UUID orderId, long recordMicros, long pollMicros, boolean stageHeaders, LongSupplier epochMicros) {
+        this.partition = partition;
+        this.orderId = orderId;
+        this.recordMicros = recordMicros;
+        this.pollMicros = pollMicros;
+        this.receivedMicros = epochMicros.getAsLong();
+        this.stageHeaders = stageHeaders;
+        this.epochMicros = epochMicros;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void stockCheckStarted() {
+        stockCheckStartMicros = epochMicros.getAsLong();
+    }
+
+    public void stockCheckEnded() {
+        stockCheckEndMicros = epochMicros.getAsLong();
+    }
+
+    public void outcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * Records the sending of an event, whose headers() are to go on its record and whose completed() is to be called
+     * when the broker acknowledges it or the send fails.
+     */
+    public Send startSend(String topic, Object event) {
+        Send send = new Send(topic, event.getClass().getSimpleName(), epochMicros.getAsLong());
+        sends.add(send);
+        return send;
+    }
+
+    /**
+     * The order's spans, ending now: a root span from the record timestamp (or the poll, with producer clock skew) with
+     * a child for each stage.  A stage that never completed ends now and is marked as an error, as is the root when
+     * processing failed.
+     */
+    List<Span> spans(Throwable failure) {
+        long endMicros = epochMicros.getAsLong();
+        List<Span> spans = new ArrayList<>(4 + sends.size());
+        Map<String, Object> rootAttributes = messagingAttributes(ORDER_CREATED_TOPIC);
+        rootAttributes.put("messaging.kafka.destination.partition", partition);
+        if (orderId != null) {
+            rootAttributes.put("dispatch.order_id", orderId.toString());
+        }
+        if (outcome != null) {
+            rootAttributes.put("dispatch.outcome", outcome);
+        }
+        if (failure != null) {
+            rootAttributes.put("exception.type", failure.getClass().getName());
+        }
+        long startMicros = Math.min(recordMicros, pollMicros);
+        spans.add(new Span(traceId, spanId, null, "dispatch order", Span.Kind.CONSUMER, nanos(startMicros), nanos(endMicros),
+                rootAttributes, failure != null));
+        spans.add(child(randomHex(1), ORDER_CREATED_TOPIC + " queued", Span.Kind.INTERNAL, startMicros, pollMicros, Map.of(), false));
+        spans.add(child(randomHex(1), ORDER_CREATED_TOPIC + " poll wait", Span.Kind.INTERNAL, pollMicros, receivedMicros, Map.of(), false));
+        long stockCheckStart = stockCheckStartMicros;
+        if (stockCheckStart != 0) {
+            long stockCheckEnd = stockCheckEndMicros;
+            spans.add(child(randomHex(1), "stock check", Span.Kind.CLIENT, stockCheckStart, stockCheckEnd != 0 ? stockCheckEnd : endMicros,
+                    Map.of(), stockCheckEnd == 0));
+        }
+        for (Send send : sends) {
+            Map<String, Object> attributes = messagingAttributes(send.topic);
+            attributes.put("dispatch.event", send.event);
+            long ackMicros = send.ackMicros;
+            spans.add(child(send.spanId, send.topic + " publish", Span.Kind.PRODUCER, send.sendMicros, ackMicros != 0 ? ackMicros : endMicros,
+                    attributes, ackMicros == 0 || !send.success));
+        }
+        return spans;
+    }
+
+    private Span child(String childSpanId, String name, Span.Kind kind, long startMicros, long endMicros, Map<String, Object> attributes, boolean error) {
+        return new Span(traceId, childSpanId, spanId, name, kind, nanos(startMicros), nanos(Math.max(startMicros, endMicros)), attributes, error);
+    }
+
+    private static Map<String, Object> messagingAttributes(String topic) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("messaging.system", "kafka");
+        attributes.put("messaging.destination.name", topic);
+        return attributes;
+    }
+
+    private static long nanos(long micros) {
+        return micros * 1000;
+    }
+
+    /**
+     * Random lower-case hex of the given number of longs, never all zeros, as W3C trace context requires.
+     */
+    private static String randomHex(int longs) {
+        StringBuilder hex = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            long value = ThreadLocalRandom.current().nextLong();
+            if (value == 0) {
+                value = 1;
+            }
+            String digits = Long.toHexString(value);
+            hex.append("0".repeat(16 - digits.length())).append(digits);
+        }
+        return hex.toString();
+    }
+
+    static byte[] encodeMicros(long micros) {
+        return Long.toString(micros).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static long decodeMicros(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * One outbound event of a traced order.
+     */
+    public class Send {
+
+        private final String topic;
+        private final String event;
+        private final String spanId = randomHex(1);
+        private final long sendMicros;
+
+        private volatile long ackMicros;
+        private volatile boolean success;
+
+        private Send(String topic, String event, long sendMicros) {
+            this.topic = topic;
+            this.event = event;
+            this.sendMicros = sendMicros;
+        }
+
+        /**
+         * The stage headers for the event's record, or null when the tracer is configured without them.
+         */
+        public Iterable<Header> headers() {
+            if (!stageHeaders) {
+                return null;
+            }
+            RecordHeaders headers = new RecordHeaders();
+            headers.add(RECORD_TIMESTAMP_HEADER, encodeMicros(recordMicros));
+            headers.add(POLL_TIME_HEADER, encodeMicros(pollMicros));
+            long stockCheckStart = stockCheckStartMicros;
+            long stockCheckEnd = stockCheckEndMicros;
+            if (stockCheckStart != 0) {
+                headers.add(STOCK_CHECK_START_HEADER, encodeMicros(stockCheckStart));
+            }
+            if (stockCheckEnd != 0) {
+                headers.add(STOCK_CHECK_END_HEADER, encodeMicros(stockCheckEnd));
+            }
+            headers.add(SEND_TIME_HEADER, encodeMicros(sendMicros));
+            headers.add(TRACEPARENT_HEADER, ("00-" + traceId + "-" + spanId + "-01").getBytes(StandardCharsets.US_ASCII));
+            return headers;
+        }
+
+        public void completed(boolean success) {
+            this.success = success;
+            this.ackMicros = epochMicros.getAsLong();
+        }
+    }
+}
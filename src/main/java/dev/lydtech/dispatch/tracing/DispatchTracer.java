@@ -0,0 +1,137 @@
+package dev.lydtech.dispatch.tracing;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Traces where the time goes for a sample of orders: waiting in the order.created partition, waiting in the poll,
+ * the stock check, and each outbound send until the broker acknowledges it.
+ *
+ * Sampling is done by the PollTimeInterceptor as records are polled, at dispatch.tracing.sampleRate, and only the
+ * records it stamped are traced.  The listeners start a DispatchTrace for each of them and finish it once the order
+ * is dispatched, when its spans are handed to the exporter: none, memory (the most recent memory.maxSpans spans, on
+ * /actuator/dispatchtraces) or file (OTLP JSON lines).  The stage timestamps also go on the outbound records as
+ * headers unless dispatch.tracing.headers is false.
+ *
+ * Unsampled records pass through with a null trace, so the dispatch path costs nothing extra for them.
+ */
+@Slf4j
+@Component
+public class DispatchTracer implements DisposableBean {
+
+    private final boolean enabled;
+    private final boolean stageHeaders;
+    private final SpanExporter exporter;
+    private final LongSupplier epochMicros;
+
+    @Autowired
+    public DispatchTracer(@Value("${dispatch.tracing.enabled:false}") boolean enabled,
+                          @Value("${dispatch.tracing.headers:true}") boolean stageHeaders,
+                          @Value("${dispatch.tracing.exporter:none}") String exporter,
+                          @Value("${dispatch.tracing.file:dispatch-spans.jsonl}") String file,
+                          @Value("${dispatch.tracing.memory.maxSpans:10000}") int maxSpans) {
+        this(enabled, stageHeaders, enabled ? exporter(exporter, file, maxSpans) : null, DispatchTracer::epochMicros);
+    }
+
+    DispatchTracer(boolean enabled, boolean stageHeaders, SpanExporter exporter, LongSupplier epochMicros) {
+        this.enabled = enabled;
+        this.stageHeaders = stageHeaders;
+        this.exporter = exporter;
+        this.epochMicros = epochMicros;
+    }
+
+    /**
+     * A tracer that never traces.
+     */
+    public static DispatchTracer disabled() {
+        return new DispatchTracer(false, false, null, DispatchTracer::epochMicros);
+    }
+
+    private static SpanExporter exporter(String exporter, String file, int maxSpans) {
+        return switch (exporter) {
+            case "none" -> null;
+            case "memory" -> new InMemorySpanExporter(maxSpans);
+            case "file" -> new FileSpanExporter(Path.of(file));
+            default -> throw new IllegalArgumentException("Unknown dispatch.tracing.exporter: " + exporter);
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The exporter the spans go to, or null when they are not exported.
+     */
+    public SpanExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Starts tracing the order if its record was sampled, that is if pollTime holds its dispatch.ts.poll header, and
+     * otherwise returns null.
+     */
+    public DispatchTrace start(int partition, long recordTimestampMillis, byte[] pollTime, OrderCreated orderCreated) {
+        if (!enabled || pollTime == null) {
+            return null;
+        }
+        long pollMicros;
+        try {
+            pollMicros = DispatchTrace.decodeMicros(pollTime);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed {} header", DispatchTrace.POLL_TIME_HEADER);
+            return null;
+        }
+        return new DispatchTrace(partition, orderCreated != null ? orderCreated.getOrderId() : null, recordTimestampMillis * 1000,
+                pollMicros, stageHeaders, epochMicros);
+    }
+
+    public DispatchTrace start(ConsumerRecord<String, OrderCreated> record) {
+        if (!enabled) {
+            return null;
+        }
+        Header pollTime = record.headers().lastHeader(DispatchTrace.POLL_TIME_HEADER);
+        return start(record.partition(), record.timestamp(), pollTime != null ? pollTime.value() : null, record.value());
+    }
+
+    /**
+     * Ends the trace, if there is one, and exports its spans.  failure is the exception processing failed with, if it
+     * did.
+     */
+    public void finish(DispatchTrace trace, Throwable failure) {
+        if (trace == null || exporter == null) {
+            return;
+        }
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        try {
+            exporter.export(trace.spans(failure));
+        } catch (RuntimeException e) {
+            log.warn("Unable to export trace {}: {}", trace.getTraceId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (exporter != null) {
+            exporter.close();
+        }
+    }
+
+    static long epochMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+}
@@ -0,0 +1,28 @@
+package dev.lydtech.dispatch.tracing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Lists the spans held by the in-memory exporter, oldest first, on /actuator/dispatchtraces.
+ */
+@Component
+@Endpoint(id = "dispatchtraces")
+@ConditionalOnProperty(name = "dispatch.tracing.exporter", havingValue = "memory")
+public class DispatchTracesEndpoint {
+
+    private final DispatchTracer dispatchTracer;
+
+    public DispatchTracesEndpoint(DispatchTracer dispatchTracer) {
+        this.dispatchTracer = dispatchTracer;
+    }
+
+    @ReadOperation
+    public List<Span> spans() {
+        return dispatchTracer.getExporter() instanceof InMemorySpanExporter exporter ? exporter.getFinishedSpans() : List.of();
+    }
+}
@@ -0,0 +1,121 @@
+package dev.lydtech.dispatch.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends spans to a file in the OTLP JSON encoding, one ExportTraceServiceRequest per line and per order, as the
+ * OpenTelemetry Collector's file exporter writes them, so that the file can be read by its otlpjsonfile receiver and
+ * forwarded to any tracing backend.
+ *
+ * Each export is written and flushed under a lock.  A failed write is logged and the spans dropped, so tracing never
+ * fails a dispatch.
+ */
+@Slf4j
+public class FileSpanExporter implements SpanExporter {
+
+    private static final String SERVICE_NAME = "dispatch";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int STATUS_CODE_OK = 1;
+    private static final int STATUS_CODE_ERROR = 2;
+
+    private final Path file;
+    // Guarded by this.
+    private final BufferedWriter writer;
+
+    public FileSpanExporter(Path file) {
+        this.file = file;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open span file " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void export(List<Span> spans) {
+        try {
+            writer.write(MAPPER.writeValueAsString(exportRequest(spans)));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Unable to write {} spans to {}: {}", spans.size(), file, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Unable to close span file {}: {}", file, e.getMessage());
+        }
+    }
+
+    static ObjectNode exportRequest(List<Span> spans) {
+        ObjectNode request = MAPPER.createObjectNode();
+        ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+        attributes(resourceSpans.putObject("resource"), Map.of("service.name", SERVICE_NAME));
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", FileSpanExporter.class.getPackageName());
+        ArrayNode otlpSpans = scopeSpans.putArray("spans");
+        for (Span span : spans) {
+            ObjectNode otlpSpan = otlpSpans.addObject()
+                    .put("traceId", span.traceId())
+                    .put("spanId", span.spanId());
+            if (span.parentSpanId() != null) {
+                otlpSpan.put("parentSpanId", span.parentSpanId());
+            }
+            otlpSpan.put("name", span.name())
+                    .put("kind", kind(span.kind()))
+                    // 64-bit integers are strings in OTLP JSON.
+                    .put("startTimeUnixNano", Long.toString(span.startEpochNanos()))
+                    .put("endTimeUnixNano", Long.toString(span.endEpochNanos()));
+            attributes(otlpSpan, span.attributes());
+            otlpSpan.putObject("status").put("code", span.error() ? STATUS_CODE_ERROR : STATUS_CODE_OK);
+        }
+        return request;
+    }
+
+    /**
+     * The OTLP SpanKind value: enums are integers in OTLP JSON.  SERVER (2) has no counterpart here.
+     */
+    private static int kind(Span.Kind kind) {
+        return switch (kind) {
+            case INTERNAL -> 1;
+            case CLIENT -> 3;
+            case PRODUCER -> 4;
+            case CONSUMER -> 5;
+        };
+    }
+
+    private static void attributes(ObjectNode node, Map<String, Object> attributes) {
+        ArrayNode array = node.putArray("attributes");
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            ObjectNode value = array.addObject().put("key", attribute.getKey()).putObject("value");
+            if (attribute.getValue() instanceof Integer || attribute.getValue() instanceof Long) {
+                value.put("intValue", attribute.getValue().toString());
+            } else if (attribute.getValue() instanceof Boolean bool) {
+                value.put("boolValue", bool);
+            } else {
+                value.put("stringValue", String.valueOf(attribute.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package dev.lydtech.dispatch.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the most recent maxSpans spans in memory, for tests and for /actuator/dispatchtraces.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final int maxSpans;
+    // Guarded by this.
+    private final Deque<Span> spans = new ArrayDeque<>();
+
+    public InMemorySpanExporter(int maxSpans) {
+        if (maxSpans < 1) {
+            throw new IllegalArgumentException("maxSpans must be at least 1");
+        }
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    public synchronized void export(List<Span> exported) {
+        for (Span span : exported) {
+            if (spans.size() == maxSpans) {
+                spans.removeFirst();
+            }
+            spans.addLast(span);
+        }
+    }
+
+    /**
+     * The spans held, oldest first.
+     */
+    public synchronized List<Span> getFinishedSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public synchronized void reset() {
+        spans.clear();
+    }
+}
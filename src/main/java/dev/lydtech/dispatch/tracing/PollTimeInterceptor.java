@@ -0,0 +1,54 @@
+package dev.lydtech.dispatch.tracing;
+
+import org.apache.kafka.clients.consumer.ConsumerInterceptor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples order.created records for tracing as the consumer polls them, stamping each sampled record with a
+ * dispatch.ts.poll header holding the poll time.  The DispatchTracer traces exactly the records carrying the header,
+ * so an unsampled record costs one random number.
+ *
+ * Any dispatch.ts.poll header the record already had, such as one copied from an earlier attempt onto a retry topic,
+ * is removed first.  Configured with dispatch.tracing.sampleRate in the consumer properties.
+ */
+public class PollTimeInterceptor implements ConsumerInterceptor<Object, Object> {
+
+    public static final String SAMPLE_RATE_CONFIG = "dispatch.tracing.sampleRate";
+
+    private double sampleRate;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object sampleRate = configs.get(SAMPLE_RATE_CONFIG);
+        this.sampleRate = sampleRate != null ? Double.parseDouble(sampleRate.toString()) : 0;
+    }
+
+    @Override
+    public ConsumerRecords<Object, Object> onConsume(ConsumerRecords<Object, Object> records) {
+        byte[] pollTime = null;
+        for (ConsumerRecord<Object, Object> record : records) {
+            record.headers().remove(DispatchTrace.POLL_TIME_HEADER);
+            if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                if (pollTime == null) {
+                    pollTime = DispatchTrace.encodeMicros(DispatchTracer.epochMicros());
+                }
+                record.headers().add(DispatchTrace.POLL_TIME_HEADER, pollTime);
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public void onCommit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
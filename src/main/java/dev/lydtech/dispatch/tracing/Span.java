@@ -0,0 +1,19 @@
+package dev.lydtech.dispatch.tracing;
+
+import java.util.Map;
+
+/**
+ * One timed stage of dispatching an order, shaped like an OpenTelemetry span: W3C trace and span ids as lower-case hex
+ * (32 and 16 characters), the parent span's id (null for the root), a kind, start and end times in nanoseconds since
+ * the epoch, attributes named after the OpenTelemetry semantic conventions where one applies, and whether the stage
+ * failed.
+ */
+public record Span(String traceId, String spanId, String parentSpanId, String name, Kind kind,
+                   long startEpochNanos, long endEpochNanos, Map<String, Object> attributes, boolean error) {
+
+    public enum Kind { INTERNAL, CONSUMER, CLIENT, PRODUCER }
+
+    public long durationNanos() {
+        return endEpochNanos - startEpochNanos;
+    }
+}
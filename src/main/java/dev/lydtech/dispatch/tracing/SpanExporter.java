@@ -0,0 +1,16 @@
+package dev.lydtech.dispatch.tracing;
+
+import java.util.List;
+
+/**
+ * Receives the spans of each sampled order once it has been dispatched.  Called on the thread that finished the
+ * order, so an exporter must be thread-safe and should not block for long.
+ */
+public interface SpanExporter extends AutoCloseable {
+
+    void export(List<Span> spans);
+
+    @Override
+    default void close() {
+    }
+}
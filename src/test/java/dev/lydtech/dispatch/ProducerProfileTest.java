@@ -0,0 +1,66 @@
+package dev.lydtech.dispatch;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProducerProfileTest {
+
+    @Test
+    void fromName_ResolvesProfileNames() {
+        assertThat(ProducerProfile.fromName("default"), equalTo(ProducerProfile.DEFAULT));
+        assertThat(ProducerProfile.fromName("low-latency"), equalTo(ProducerProfile.LOW_LATENCY));
+        assertThat(ProducerProfile.fromName(" High-Throughput "), equalTo(ProducerProfile.HIGH_THROUGHPUT));
+        assertThat(ProducerProfile.fromName("durable"), equalTo(ProducerProfile.DURABLE));
+        assertThrows(IllegalArgumentException.class, () -> ProducerProfile.fromName("fast"));
+    }
+
+    @Test
+    void applyTo_DefaultLeavesClientDefaults() {
+        Map<String, Object> config = new HashMap<>();
+
+        ProducerProfile.DEFAULT.applyTo(config);
+
+        assertThat(config, anEmptyMap());
+    }
+
+    @Test
+    void applyTo_HighThroughput() {
+        ProducerConfig config = producerConfig(ProducerProfile.HIGH_THROUGHPUT);
+
+        assertThat(config.getLong(ProducerConfig.LINGER_MS_CONFIG), equalTo(20L));
+        assertThat(config.getInt(ProducerConfig.BATCH_SIZE_CONFIG), equalTo(262_144));
+        assertThat(config.getString(ProducerConfig.COMPRESSION_TYPE_CONFIG), equalTo("zstd"));
+        assertThat(config.getInt(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION), equalTo(5));
+    }
+
+    /**
+     * ProducerConfig rejects inconsistent settings, such as idempotence with more than five requests in flight.
+     */
+    @Test
+    void applyTo_EveryProfileIsValidAndIdempotent() {
+        for (ProducerProfile profile : ProducerProfile.values()) {
+            ProducerConfig config = producerConfig(profile);
+
+            assertThat(profile.getProfileName(), config.getBoolean(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG), equalTo(true));
+            assertThat(profile.getProfileName(), config.getString(ProducerConfig.ACKS_CONFIG), equalTo("-1"));
+        }
+    }
+
+    private static ProducerConfig producerConfig(ProducerProfile profile) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        profile.applyTo(config);
+        return new ProducerConfig(config);
+    }
+}
@@ -0,0 +1,142 @@
+package dev.lydtech.dispatch.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class StockAvailabilityCacheTest {
+
+    private AtomicLong clock;
+    private List<Runnable> refreshes;
+    private AtomicInteger loads;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        refreshes = new ArrayList<>();
+        loads = new AtomicInteger();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void get_HitWithinTtl() {
+        StockAvailabilityCache cache = buildCache(10, 1000, 100, 0);
+
+        assertThat(cache.get("my-item", loader(true)), equalTo(true));
+        advance(999);
+        assertThat(cache.get("my-item", loader(false)), equalTo(true));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getHits(), equalTo(1L));
+    }
+
+    @Test
+    void get_NegativeResultsUseTheirOwnTtl() {
+        StockAvailabilityCache cache = buildCache(10, 1000, 100, 0);
+
+        assertThat(cache.get("my-item", loader(false)), equalTo(false));
+        advance(100);
+        assertThat(cache.get("my-item", loader(true)), equalTo(true));
+
+        assertThat(loads.get(), equalTo(2));
+        assertThat(cache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    void get_StaleEntryIsServedWhileRefreshing() {
+        StockAvailabilityCache cache = buildCache(10, 1000, 1000, 500);
+        cache.get("my-item", loader(true));
+        advance(1200);
+
+        assertThat(cache.get("my-item", loader(false)), equalTo(true));
+        assertThat(cache.get("my-item", loader(false)), equalTo(true));
+        assertThat(cache.getStaleHits(), equalTo(2L));
+        assertThat(refreshes.size(), equalTo(1));
+
+        refreshes.get(0).run();
+        assertThat(cache.get("my-item", loader(true)), equalTo(false));
+        assertThat(cache.getHits(), equalTo(1L));
+    }
+
+    @Test
+    void get_EntryPastStaleWindowIsReloaded() {
+        StockAvailabilityCache cache = buildCache(10, 1000, 1000, 500);
+        cache.get("my-item", loader(true));
+        advance(1500);
+
+        assertThat(cache.get("my-item", loader(false)), equalTo(false));
+        assertThat(refreshes.size(), equalTo(0));
+        assertThat(cache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    void put_EvictsLeastRecentlyUsedEntry() {
+        StockAvailabilityCache cache = buildCache(2, 1000, 1000, 0);
+        cache.get("item-a", loader(true));
+        cache.get("item-b", loader(true));
+        cache.get("item-a", loader(true));
+        cache.get("item-c", loader(true));
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.getEvictions(), equalTo(1L));
+
+        cache.get("item-a", loader(true));
+        assertThat(cache.getHits(), equalTo(2L));
+        cache.get("item-b", loader(true));
+        assertThat(cache.getMisses(), equalTo(4L));
+    }
+
+    @Test
+    void get_LookupsAndEvictionsArePublished() {
+        StockAvailabilityCache cache = buildCache(1, 1000, 1000, 500);
+        cache.get("item-a", loader(true));
+        cache.get("item-a", loader(true));
+        advance(1200);
+        cache.get("item-a", loader(true));
+        cache.get("item-b", loader(true));
+
+        assertThat(registry.get("dispatch.stock.cache.requests").tag("result", "hit").functionCounter().count(), equalTo(1.0));
+        assertThat(registry.get("dispatch.stock.cache.requests").tag("result", "stale").functionCounter().count(), equalTo(1.0));
+        assertThat(registry.get("dispatch.stock.cache.requests").tag("result", "miss").functionCounter().count(), equalTo(2.0));
+        assertThat(registry.get("dispatch.stock.cache.evictions").functionCounter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void destroy_ShutsDownTheRefreshPool() {
+        ExecutorService refreshPool = Executors.newSingleThreadExecutor();
+        StockAvailabilityCache cache = new StockAvailabilityCache(true, 10, 1000, 1000, 500, clock::get, refreshPool, registry);
+
+        cache.destroy();
+
+        assertThat(refreshPool.isShutdown(), equalTo(true));
+    }
+
+    private StockAvailabilityCache buildCache(int maxSize, long positiveTtlMs, long negativeTtlMs, long staleWhileRevalidateMs) {
+        return new StockAvailabilityCache(true, maxSize, positiveTtlMs, negativeTtlMs, staleWhileRevalidateMs, clock::get, refreshes::add, registry);
+    }
+
+    private Function<String, Boolean> loader(boolean available) {
+        return item -> {
+            loads.incrementAndGet();
+            return available;
+        };
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,134 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.StockAvailabilityTable.Storage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class StockAvailabilityTableTest {
+
+    private static final String TOPIC = "stock.availability";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void get_OnlyItemsPut() {
+        StockAvailabilityTable table = new StockAvailabilityTable(10, 16, Storage.HEAP, null, TOPIC);
+
+        table.put("item-a", true);
+        table.put("item-b", false);
+        table.put("item-b", true);
+
+        assertThat(table.get("item-a"), equalTo(true));
+        assertThat(table.get("item-b"), equalTo(true));
+        assertThat(table.get("item-c"), nullValue());
+        assertThat(table.size(), equalTo(2));
+    }
+
+    @Test
+    void get_NonAsciiItems() {
+        StockAvailabilityTable table = new StockAvailabilityTable(10, 16, Storage.HEAP, null, TOPIC);
+
+        table.put("crème-brûlée", true);
+
+        assertThat(table.get("crème-brûlée"), equalTo(true));
+        assertThat(table.get("creme-brulee"), nullValue());
+    }
+
+    @Test
+    void put_RefusesNewItemsOnceFullOrTooLong() {
+        StockAvailabilityTable table = new StockAvailabilityTable(2, 8, Storage.HEAP, null, TOPIC);
+
+        assertThat(table.put("item-a", true), equalTo(true));
+        assertThat(table.put("item-b", true), equalTo(true));
+        assertThat(table.put("item-c", true), equalTo(false));
+        assertThat(table.put("item-a", false), equalTo(true));
+        assertThat(table.put("item-too-long", true), equalTo(false));
+
+        assertThat(table.get("item-a"), equalTo(false));
+        assertThat(table.get("item-c"), nullValue());
+        assertThat(table.get("item-too-long"), nullValue());
+    }
+
+    @Test
+    void remove_IsExactUnderHeavyCollisions() {
+        // A small table keeps the probe runs long, exercising removal from their middle.
+        StockAvailabilityTable table = new StockAvailabilityTable(16, 16, Storage.DIRECT, null, TOPIC);
+        Map<String, Boolean> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String item = "item-" + random.nextInt(24);
+            if (random.nextInt(3) == 0) {
+                table.remove(item);
+                expected.remove(item);
+            } else if (expected.containsKey(item) || expected.size() < 16) {
+                boolean available = random.nextBoolean();
+                table.put(item, available);
+                expected.put(item, available);
+            }
+        }
+
+        for (int i = 0; i < 24; i++) {
+            assertThat("item-" + i, table.get("item-" + i), equalTo(expected.get("item-" + i)));
+        }
+        assertThat(table.size(), equalTo(expected.size()));
+    }
+
+    @Test
+    void snapshot_HeapTableSurvivesReopening() {
+        assertSurvivesReopening(Storage.HEAP);
+    }
+
+    @Test
+    void snapshot_DirectTableSurvivesReopening() {
+        assertSurvivesReopening(Storage.DIRECT);
+    }
+
+    @Test
+    void snapshot_MemoryMappedTableSurvivesReopening() {
+        assertSurvivesReopening(Storage.MMAP);
+    }
+
+    @Test
+    void snapshot_OfAnotherTopicOrSizeIsNotReloaded() {
+        Path file = tempDir.resolve("stock.dat");
+        StockAvailabilityTable table = new StockAvailabilityTable(100, 16, Storage.HEAP, file, TOPIC);
+        table.put("item-a", true);
+        table.setOffset(0, 1);
+        table.snapshot();
+
+        assertThat(new StockAvailabilityTable(100, 16, Storage.HEAP, file, "other.topic").size(), equalTo(0));
+        StockAvailabilityTable resized = new StockAvailabilityTable(1000, 16, Storage.HEAP, file, TOPIC);
+        assertThat(resized.size(), equalTo(0));
+        assertThat(resized.offset(0), equalTo(-1L));
+    }
+
+    private void assertSurvivesReopening(Storage storage) {
+        Path file = tempDir.resolve("stock-" + storage + ".dat");
+        StockAvailabilityTable table = new StockAvailabilityTable(100, 16, storage, file, TOPIC);
+        table.put("item-a", true);
+        table.put("item-b", false);
+        table.put("item-c", true);
+        table.remove("item-c");
+        table.setOffset(1, 42);
+        table.close();
+
+        StockAvailabilityTable reopened = new StockAvailabilityTable(100, 16, storage, file, TOPIC);
+
+        assertThat(reopened.size(), equalTo(2));
+        assertThat(reopened.get("item-a"), equalTo(true));
+        assertThat(reopened.get("item-b"), equalTo(false));
+        assertThat(reopened.get("item-c"), nullValue());
+        assertThat(reopened.offset(0), equalTo(-1L));
+        assertThat(reopened.offset(1), equalTo(42L));
+    }
+}
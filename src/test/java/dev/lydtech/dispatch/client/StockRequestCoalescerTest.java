@@ -0,0 +1,107 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.exception.RetryableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockRequestCoalescerTest {
+
+    @Test
+    void checkAvailability_SingleCaller() {
+        List<Collection<String>> lookups = new CopyOnWriteArrayList<>();
+        StockRequestCoalescer coalescer = new StockRequestCoalescer(recording(lookups, Map.of("my-item", true)), 1, 10);
+
+        assertThat(coalescer.checkAvailability("my-item"), equalTo(true));
+        assertThat(coalescer.checkAvailability("other-item"), equalTo(false));
+        assertThat(lookups.size(), equalTo(2));
+    }
+
+    @Test
+    void checkAvailability_ConcurrentCallersShareOneLookup() throws Exception {
+        List<Collection<String>> lookups = new CopyOnWriteArrayList<>();
+        StockRequestCoalescer coalescer = new StockRequestCoalescer(recording(lookups, Map.of("item-a", true, "item-b", false)), 500, 100);
+
+        List<Future<Boolean>> results = runConcurrently(coalescer, List.of("item-a", "item-b", "item-a", "item-a"));
+
+        assertThat(results.get(0).get(), equalTo(true));
+        assertThat(results.get(1).get(), equalTo(false));
+        assertThat(results.get(2).get(), equalTo(true));
+        assertThat(results.get(3).get(), equalTo(true));
+        assertThat(lookups.size(), equalTo(1));
+        assertThat(lookups.get(0), containsInAnyOrder("item-a", "item-b"));
+    }
+
+    @Test
+    void checkAvailability_FullBatchIsSentBeforeWindowEnds() throws Exception {
+        List<Collection<String>> lookups = new CopyOnWriteArrayList<>();
+        StockRequestCoalescer coalescer = new StockRequestCoalescer(recording(lookups, Map.of()), 60_000, 2);
+
+        List<Future<Boolean>> results = runConcurrently(coalescer, List.of("item-a", "item-b"));
+
+        assertThat(results.get(0).get(), equalTo(false));
+        assertThat(results.get(1).get(), equalTo(false));
+        assertThat(lookups.size(), equalTo(1));
+    }
+
+    @Test
+    void checkAvailability_LookupFailureIsSharedByAllCallers() {
+        StockRequestCoalescer coalescer = new StockRequestCoalescer(items -> {
+            throw new RetryableException("Service unavailable");
+        }, 1, 10);
+
+        assertThrows(RetryableException.class, () -> coalescer.checkAvailability("my-item"));
+    }
+
+    @Test
+    void checkAvailability_LookupErrorIsSharedByAllCallers() throws Exception {
+        StockRequestCoalescer coalescer = new StockRequestCoalescer(items -> {
+            throw new AssertionError("Broken lookup");
+        }, 500, 100);
+
+        List<Future<Boolean>> results = runConcurrently(coalescer, List.of("item-a", "item-b"));
+
+        for (Future<Boolean> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertThat(e.getCause().getClass(), equalTo(AssertionError.class));
+        }
+    }
+
+    private static Function<Collection<String>, Map<String, Boolean>> recording(List<Collection<String>> lookups, Map<String, Boolean> availability) {
+        return items -> {
+            lookups.add(new ArrayList<>(items));
+            return availability;
+        };
+    }
+
+    private static List<Future<Boolean>> runConcurrently(StockRequestCoalescer coalescer, List<String> items) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(items.size());
+        CountDownLatch started = new CountDownLatch(items.size());
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (String item : items) {
+            results.add(executor.submit(() -> {
+                started.countDown();
+                return coalescer.checkAvailability(item);
+            }));
+        }
+        started.await();
+        executor.shutdown();
+        return results;
+    }
+}
@@ -0,0 +1,209 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.exception.BulkheadFullException;
+import dev.lydtech.dispatch.exception.CallNotPermittedException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dev.lydtech.dispatch.client.StockServiceCircuitBreaker.State.CLOSED;
+import static dev.lydtech.dispatch.client.StockServiceCircuitBreaker.State.HALF_OPEN;
+import static dev.lydtech.dispatch.client.StockServiceCircuitBreaker.State.OPEN;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockServiceCircuitBreakerTest {
+
+    private AtomicLong clock;
+    private AtomicInteger calls;
+    private SimpleMeterRegistry registry;
+    private List<StockServiceCircuitBreaker.State> transitions;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        calls = new AtomicInteger();
+        registry = new SimpleMeterRegistry();
+        transitions = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    void call_OpensAtFailureRateThreshold() {
+        StockServiceCircuitBreaker breaker = buildBreaker(10, 4, 50, 2, 0, 0);
+
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(CLOSED));
+        fail(breaker);
+
+        assertThat(breaker.getState(), equalTo(OPEN));
+        assertThrows(CallNotPermittedException.class, () -> succeed(breaker));
+        assertThat(calls.get(), equalTo(4));
+        assertThat(registry.get("dispatch.stock.breaker.state").tag("state", "open").gauge().value(), equalTo(1.0));
+        assertThat(registry.get("dispatch.stock.breaker.rejected").tag("reason", "open").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void call_NotOpenedBeforeMinimumCalls() {
+        StockServiceCircuitBreaker breaker = buildBreaker(10, 4, 50, 2, 0, 0);
+
+        fail(breaker);
+        fail(breaker);
+        fail(breaker);
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+    }
+
+    @Test
+    void call_OnlyLatestWindowCounts() {
+        StockServiceCircuitBreaker breaker = buildBreaker(4, 4, 75, 2, 0, 0);
+
+        fail(breaker);
+        fail(breaker);
+        succeed(breaker);
+        succeed(breaker);
+        // The first failure has left the window, so this is two failures in four.
+        fail(breaker);
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+        assertThat(breaker.getFailureRate(), equalTo(50.0));
+    }
+
+    @Test
+    void call_ClientErrorsAreNotFailures() {
+        StockServiceCircuitBreaker breaker = buildBreaker(2, 2, 50, 2, 0, 0);
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.call(() -> {
+                throw new IllegalStateException("400 Bad Request");
+            }));
+        }
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+    }
+
+    @Test
+    void call_HalfOpensAfterOpenDurationAndClosesWhenProbesSucceed() {
+        StockServiceCircuitBreaker breaker = buildBreaker(2, 2, 50, 2, 0, 0);
+        fail(breaker);
+        fail(breaker);
+
+        advance(999);
+        assertThrows(CallNotPermittedException.class, () -> succeed(breaker));
+        advance(1);
+        succeed(breaker);
+        assertThat(breaker.getState(), equalTo(HALF_OPEN));
+        succeed(breaker);
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+        assertThat(transitions, contains(OPEN, HALF_OPEN, CLOSED));
+        assertThat(breaker.getFailureRate(), equalTo(0.0));
+    }
+
+    @Test
+    void call_HalfOpenProbeFailureReopens() {
+        StockServiceCircuitBreaker breaker = buildBreaker(2, 2, 50, 2, 0, 0);
+        fail(breaker);
+        fail(breaker);
+        advance(1000);
+
+        fail(breaker);
+
+        assertThat(breaker.getState(), equalTo(OPEN));
+        assertThat(transitions, contains(OPEN, HALF_OPEN, OPEN));
+        assertThrows(CallNotPermittedException.class, () -> succeed(breaker));
+    }
+
+    @Test
+    void call_HalfOpenOnlyPermitsProbeCalls() {
+        StockServiceCircuitBreaker breaker = buildBreaker(2, 2, 50, 1, 0, 0);
+        fail(breaker);
+        fail(breaker);
+        advance(1000);
+
+        // The probe call is still in progress when another call is made.
+        breaker.call(() -> assertThrows(CallNotPermittedException.class, () -> succeed(breaker)));
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+    }
+
+    @Test
+    void call_BulkheadRejectsCallsBeyondLimit() {
+        StockServiceCircuitBreaker breaker = buildBreaker(10, 10, 50, 1, 1, 0);
+
+        breaker.call(() -> assertThrows(BulkheadFullException.class, () -> succeed(breaker)));
+        succeed(breaker);
+
+        assertThat(registry.get("dispatch.stock.breaker.rejected").tag("reason", "bulkhead").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void callAsync_RecordsOutcomeWhenFutureCompletes() {
+        StockServiceCircuitBreaker breaker = buildBreaker(2, 2, 50, 1, 1, 0);
+        CompletableFuture<Boolean> first = new CompletableFuture<>();
+        CompletableFuture<Boolean> second = new CompletableFuture<>();
+
+        CompletableFuture<Boolean> firstResult = breaker.callAsync(() -> first);
+        // The first call still holds the only bulkhead permit.
+        CompletableFuture<Boolean> rejected = breaker.callAsync(() -> second);
+        first.completeExceptionally(new RetryableException("503 Service Unavailable"));
+        CompletableFuture<Boolean> secondResult = breaker.callAsync(() -> second);
+        second.completeExceptionally(new RetryableException("503 Service Unavailable"));
+
+        assertThat(rejected.isCompletedExceptionally(), equalTo(true));
+        assertThat(assertThrows(ExecutionException.class, rejected::get).getCause().getClass(), equalTo(BulkheadFullException.class));
+        assertThrows(CompletionException.class, firstResult::join);
+        assertThrows(CompletionException.class, secondResult::join);
+        assertThat(breaker.getState(), equalTo(OPEN));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> breaker.callAsync(() -> CompletableFuture.completedFuture(true)).get());
+        assertThat(e.getCause().getClass(), equalTo(CallNotPermittedException.class));
+    }
+
+    @Test
+    void call_DisabledBreakerNeverOpens() {
+        StockServiceCircuitBreaker breaker = new StockServiceCircuitBreaker(false, 2, 2, 50, 1000, 1, 0, 0, registry, clock::get, null);
+
+        for (int i = 0; i < 5; i++) {
+            fail(breaker);
+        }
+
+        assertThat(breaker.getState(), equalTo(CLOSED));
+        assertThat(calls.get(), equalTo(5));
+    }
+
+    private StockServiceCircuitBreaker buildBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int halfOpenCalls,
+                                                    int maxConcurrentCalls, long maxWaitMs) {
+        StockServiceCircuitBreaker breaker = new StockServiceCircuitBreaker(true, windowSize, minimumCalls, failureRateThreshold, 1000,
+                halfOpenCalls, maxConcurrentCalls, maxWaitMs, registry, clock::get, null);
+        breaker.addStateListener(transitions::add);
+        return breaker;
+    }
+
+    private void succeed(StockServiceCircuitBreaker breaker) {
+        breaker.call(() -> calls.incrementAndGet());
+    }
+
+    private void fail(StockServiceCircuitBreaker breaker) {
+        assertThrows(RetryableException.class, () -> breaker.call(() -> {
+            calls.incrementAndGet();
+            throw new RetryableException("503 Service Unavailable");
+        }));
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
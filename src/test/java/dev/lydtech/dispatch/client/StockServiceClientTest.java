@@ -1,30 +1,56 @@
 package dev.lydtech.dispatch.client;
 
 import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class StockServiceClientTest {
     private RestTemplate restTemplateMock;
+    private HttpClient httpClientMock;
     private StockServiceClient client;
 
     private static final String STOCK_SERVICE_ENDPOINT = "endpoint";
-    private static final String STOCK_SERVICE_QUERY = STOCK_SERVICE_ENDPOINT + "?item=my-item";
+    private static final URI STOCK_SERVICE_QUERY = URI.create(STOCK_SERVICE_ENDPOINT + "?item=my-item");
+    private static final String ASYNC_STOCK_SERVICE_ENDPOINT = "http://stock/api/stock";
+    private static final StockServiceCircuitBreaker DISABLED_BREAKER = new StockServiceCircuitBreaker(false, 0, 0, 0, 0, 0, 0, 0,
+            new SimpleMeterRegistry(), System::nanoTime, null);
 
     @BeforeEach
     void setUp() {
         restTemplateMock = mock(RestTemplate.class);
-        client = new StockServiceClient(restTemplateMock, "endpoint");
+        httpClientMock = mock(HttpClient.class);
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
     }
 
     @Test
@@ -38,6 +64,14 @@ class StockServiceClientTest {
         verify(restTemplateMock, times(1)).getForEntity(STOCK_SERVICE_QUERY, String.class);
     }
 
+    @Test
+    void testCheckAvailability_ItemIsEncoded() {
+        URI expectedUri = URI.create(STOCK_SERVICE_ENDPOINT + "?item=my%20item");
+        when(restTemplateMock.getForEntity(expectedUri, String.class)).thenReturn(new ResponseEntity<>("true", HttpStatusCode.valueOf(200)));
+
+        assertThat(client.checkAvailability("my item"), equalTo("true"));
+    }
+
     @Test
     void testCheckAvailability_ServerError() {
         doThrow(new HttpServerErrorException(HttpStatusCode.valueOf(500))).when(restTemplateMock).getForEntity(STOCK_SERVICE_QUERY, String.class);
@@ -58,4 +92,158 @@ class StockServiceClientTest {
         assertThrows(RuntimeException.class, () -> client.checkAvailability("my-item"));
         verify(restTemplateMock, times(1)).getForEntity(STOCK_SERVICE_QUERY, String.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCheckAvailabilityBulk_Success() {
+        ResponseEntity<Map<String, Boolean>> response = new ResponseEntity<>(Map.of("item-a", true, "item-b", false), HttpStatusCode.valueOf(200));
+        URI expectedUri = URI.create(STOCK_SERVICE_ENDPOINT + "/bulk?item=item-a&item=item-b");
+
+        when(restTemplateMock.exchange(eq(expectedUri), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class))).thenReturn(response);
+
+        assertThat(client.checkAvailability(List.of("item-a", "item-b")), equalTo(Map.of("item-a", true, "item-b", false)));
+    }
+
+    @Test
+    void testCheckAvailabilityBulk_ServerError() {
+        doThrow(new HttpServerErrorException(HttpStatusCode.valueOf(503))).when(restTemplateMock).exchange(any(URI.class), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class));
+        assertThrows(RetryableException.class, () -> client.checkAvailability(List.of("item-a")));
+    }
+
+    @Test
+    void testCheckAvailability_Cached() {
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, new StockAvailabilityCache(true, 10, 60_000, 60_000, 0, new DispatchMetrics(new SimpleMeterRegistry())), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        ResponseEntity<String> response = new ResponseEntity<>("true", HttpStatusCode.valueOf(200));
+        when(restTemplateMock.getForEntity(STOCK_SERVICE_QUERY, String.class)).thenReturn(response);
+
+        assertThat(client.checkAvailability("my-item"), equalTo("true"));
+        assertThat(client.checkAvailability("my-item"), equalTo("true"));
+
+        verify(restTemplateMock, times(1)).getForEntity(STOCK_SERVICE_QUERY, String.class);
+    }
+
+    @Test
+    void testCheckAvailability_ConsistentReadBypassesCache() {
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, new StockAvailabilityCache(true, 10, 60_000, 60_000, 0, new DispatchMetrics(new SimpleMeterRegistry())), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        when(restTemplateMock.getForEntity(STOCK_SERVICE_QUERY, String.class))
+                .thenReturn(new ResponseEntity<>("true", HttpStatusCode.valueOf(200)))
+                .thenReturn(new ResponseEntity<>("false", HttpStatusCode.valueOf(200)));
+
+        assertThat(client.checkAvailability("my-item"), equalTo("true"));
+        assertThat(client.checkAvailability("my-item", true), equalTo("false"));
+        assertThat(client.checkAvailability("my-item"), equalTo("false"));
+
+        verify(restTemplateMock, times(2)).getForEntity(STOCK_SERVICE_QUERY, String.class);
+    }
+
+    @Test
+    void testCheckAvailability_AnsweredFromSnapshot() throws Exception {
+        StockSnapshotStore snapshotMock = mock(StockSnapshotStore.class);
+        when(snapshotMock.get("my-item")).thenReturn(true);
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, StockAvailabilityCache.disabled(), snapshotMock, DISABLED_BREAKER, httpClientMock, 0);
+
+        assertThat(client.checkAvailability("my-item"), equalTo("true"));
+        assertThat(client.checkAvailabilityAsync("my-item").get(), equalTo(true));
+
+        verifyNoInteractions(restTemplateMock, httpClientMock);
+    }
+
+    @Test
+    void testCheckAvailability_ConsistentReadAndUnknownItemsBypassSnapshot() {
+        StockSnapshotStore snapshotMock = mock(StockSnapshotStore.class);
+        when(snapshotMock.get(anyString())).thenReturn(null);
+        when(snapshotMock.get("my-item")).thenReturn(true);
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, StockAvailabilityCache.disabled(), snapshotMock, DISABLED_BREAKER, httpClientMock, 0);
+        when(restTemplateMock.getForEntity(STOCK_SERVICE_QUERY, String.class)).thenReturn(new ResponseEntity<>("false", HttpStatusCode.valueOf(200)));
+        when(restTemplateMock.getForEntity(URI.create(STOCK_SERVICE_ENDPOINT + "?item=other-item"), String.class))
+                .thenReturn(new ResponseEntity<>("true", HttpStatusCode.valueOf(200)));
+
+        assertThat(client.checkAvailability("my-item", true), equalTo("false"));
+        assertThat(client.checkAvailability("other-item"), equalTo("true"));
+    }
+
+    @Test
+    void testCheckAvailabilityBulk_OnlyItemsMissingFromSnapshotAreRequested() {
+        StockSnapshotStore snapshotMock = mock(StockSnapshotStore.class);
+        when(snapshotMock.isEnabled()).thenReturn(true);
+        when(snapshotMock.get(anyString())).thenReturn(null);
+        when(snapshotMock.get("item-a")).thenReturn(true);
+        client = new StockServiceClient(restTemplateMock, "endpoint", false, 0, 0, StockAvailabilityCache.disabled(), snapshotMock, DISABLED_BREAKER, httpClientMock, 0);
+        URI expectedUri = URI.create(STOCK_SERVICE_ENDPOINT + "/bulk?item=item-b");
+        when(restTemplateMock.exchange(eq(expectedUri), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class)))
+                .thenReturn(new ResponseEntity<>(Map.of("item-b", false), HttpStatusCode.valueOf(200)));
+
+        assertThat(client.checkAvailability(List.of("item-a", "item-b")), equalTo(Map.of("item-a", true, "item-b", false)));
+    }
+
+    @Test
+    void testCheckAvailabilityAsync_Success() throws Exception {
+        client = new StockServiceClient(restTemplateMock, ASYNC_STOCK_SERVICE_ENDPOINT, false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 2000);
+        stubAsyncResponse(200, "true");
+
+        assertThat(client.checkAvailabilityAsync("my item").get(), equalTo(true));
+
+        ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClientMock, times(1)).sendAsync(request.capture(), any());
+        assertThat(request.getValue().uri(), equalTo(URI.create(ASYNC_STOCK_SERVICE_ENDPOINT + "?item=my%20item")));
+        assertThat(request.getValue().timeout().orElseThrow(), equalTo(Duration.ofMillis(2000)));
+        verifyNoInteractions(restTemplateMock);
+    }
+
+    @Test
+    void testCheckAvailabilityAsync_ServerError() {
+        client = new StockServiceClient(restTemplateMock, ASYNC_STOCK_SERVICE_ENDPOINT, false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        stubAsyncResponse(503, "Service unavailable");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.checkAvailabilityAsync("my-item").get());
+        assertThat(e.getCause().getClass(), equalTo(RetryableException.class));
+    }
+
+    @Test
+    void testCheckAvailabilityAsync_ClientError() {
+        client = new StockServiceClient(restTemplateMock, ASYNC_STOCK_SERVICE_ENDPOINT, false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        stubAsyncResponse(400, "Bad request");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.checkAvailabilityAsync("my-item").get());
+        assertThat(e.getCause().getClass(), equalTo(RuntimeException.class));
+    }
+
+    @Test
+    void testCheckAvailabilityAsync_Timeout() {
+        client = new StockServiceClient(restTemplateMock, ASYNC_STOCK_SERVICE_ENDPOINT, false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        doReturn(CompletableFuture.failedFuture(new HttpTimeoutException("request timed out"))).when(httpClientMock).sendAsync(any(), any());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.checkAvailabilityAsync("my-item").get());
+        assertThat(e.getCause().getClass(), equalTo(RetryableException.class));
+    }
+
+    @Test
+    void testCheckAvailabilityAsync_Cached() throws Exception {
+        client = new StockServiceClient(restTemplateMock, ASYNC_STOCK_SERVICE_ENDPOINT, false, 0, 0, new StockAvailabilityCache(true, 10, 60_000, 60_000, 0, new DispatchMetrics(new SimpleMeterRegistry())), StockSnapshotStore.disabled(), DISABLED_BREAKER, httpClientMock, 0);
+        stubAsyncResponse(200, "false");
+
+        assertThat(client.checkAvailabilityAsync("my-item").get(), equalTo(false));
+        CompletableFuture<Boolean> cached = client.checkAvailabilityAsync("my-item");
+
+        assertThat(cached.isDone(), equalTo(true));
+        assertThat(cached.get(), equalTo(false));
+        verify(httpClientMock, times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    void testParseAvailability() {
+        assertThat(StockServiceClient.parseAvailability("true".getBytes(StandardCharsets.US_ASCII)), equalTo(true));
+        assertThat(StockServiceClient.parseAvailability("TRUE".getBytes(StandardCharsets.US_ASCII)), equalTo(true));
+        assertThat(StockServiceClient.parseAvailability("false".getBytes(StandardCharsets.US_ASCII)), equalTo(false));
+        assertThat(StockServiceClient.parseAvailability("true ".getBytes(StandardCharsets.US_ASCII)), equalTo(false));
+        assertThat(StockServiceClient.parseAvailability("tRUx".getBytes(StandardCharsets.US_ASCII)), equalTo(false));
+        assertThat(StockServiceClient.parseAvailability(new byte[0]), equalTo(false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubAsyncResponse(int status, String body) {
+        HttpResponse<byte[]> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn(body.getBytes(StandardCharsets.US_ASCII));
+        doReturn(CompletableFuture.completedFuture(response)).when(httpClientMock).sendAsync(any(), any());
+    }
+}
@@ -0,0 +1,138 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.StockAvailabilityTable.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class StockSnapshotStoreTest {
+
+    private static final String TOPIC = "stock.availability";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+    private static final long MAX_STALENESS_MS = 5000;
+
+    private MockConsumer<String, byte[]> consumer;
+    private StockAvailabilityTable table;
+    private AtomicLong clock;
+    private StockSnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions(TOPIC, List.of(new PartitionInfo(TOPIC, 0, Node.noNode(), null, null)));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        table = new StockAvailabilityTable(100, 16, Storage.HEAP, null, TOPIC);
+        clock = new AtomicLong(1);
+        store = new StockSnapshotStore(true, TOPIC, 60_000, MAX_STALENESS_MS, () -> consumer, () -> table, clock::get,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    void get_AnswersFromTheTopicOnceCaughtUp() {
+        addRecords(3, record(0, "item-a", "true"), record(1, "item-b", "false"), record(2, "item-a", null));
+        assertThat(store.get("item-b"), nullValue());
+
+        store.start();
+
+        await().atMost(5, TimeUnit.SECONDS).until(store::isUpToDate);
+        assertThat(store.get("item-a"), nullValue());
+        assertThat(store.get("item-b"), equalTo(false));
+        assertThat(store.get("item-c"), nullValue());
+    }
+
+    @Test
+    void get_NullOnceTheReaderStalls() throws Exception {
+        addRecords(1, record(0, "item-a", "true"));
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        store.start();
+        await().atMost(5, TimeUnit.SECONDS).until(store::isUpToDate);
+        consumer.schedulePollTask(() -> {
+            stalled.countDown();
+            awaitQuietly(release);
+        });
+        stalled.await(5, TimeUnit.SECONDS);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_STALENESS_MS + 1));
+
+        assertThat(store.get("item-a"), nullValue());
+        release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Boolean.TRUE.equals(store.get("item-a")));
+    }
+
+    @Test
+    void start_ResumesFromTheSnapshotOffsets() {
+        table.put("item-a", true);
+        table.setOffset(0, 2);
+        // Records before the snapshot's offset are not read again.
+        addRecords(3, record(1, "item-a", "false"), record(2, "item-b", "true"));
+
+        store.start();
+
+        await().atMost(5, TimeUnit.SECONDS).until(store::isUpToDate);
+        assertThat(store.get("item-a"), equalTo(true));
+        assertThat(store.get("item-b"), equalTo(true));
+    }
+
+    @Test
+    void start_RebuildsWhenTheSnapshotOffsetsAreNotOnTheTopic() {
+        table.put("item-stale", true);
+        table.setOffset(0, 10);
+        addRecords(1, record(0, "item-a", "true"));
+
+        store.start();
+
+        await().atMost(5, TimeUnit.SECONDS).until(store::isUpToDate);
+        assertThat(store.get("item-stale"), nullValue());
+        assertThat(store.get("item-a"), equalTo(true));
+    }
+
+    /**
+     * The records are added on the reader's first poll, once it has assigned the partition.
+     */
+    @SafeVarargs
+    private void addRecords(long endOffset, ConsumerRecord<String, byte[]>... records) {
+        consumer.updateEndOffsets(Map.of(PARTITION, endOffset));
+        consumer.schedulePollTask(() -> {
+            for (ConsumerRecord<String, byte[]> record : records) {
+                consumer.addRecord(record);
+            }
+        });
+    }
+
+    private static ConsumerRecord<String, byte[]> record(long offset, String item, String available) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, item, available != null ? available.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.lydtech.dispatch.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyOrderedExecutorTest {
+
+    private final KeyOrderedExecutor executor = new KeyOrderedExecutor(4, Executors.newFixedThreadPool(4));
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void execute_PreservesOrderPerKey() {
+        List<Item> items = new ArrayList<>();
+        for (int sequence = 0; sequence < 100; sequence++) {
+            items.add(new Item("key-" + (sequence % 7), sequence));
+        }
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+
+        executor.execute(items, Item::key, item -> processed.computeIfAbsent(item.key(), key -> new CopyOnWriteArrayList<>()).add(item.sequence()));
+
+        for (int key = 0; key < 7; key++) {
+            List<Integer> sequences = processed.get("key-" + key);
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i));
+            }
+        }
+        assertThat(processed.values().stream().mapToInt(List::size).sum(), equalTo(100));
+    }
+
+    @Test
+    void execute_ProcessesDifferentKeysInParallel() {
+        // Each item waits for the other, so this only completes if the two keys run at the same time.
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<Item> items = List.of(new Item("a", 0), new Item("b", 1));
+
+        executor.execute(items, Item::key, item -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+        });
+    }
+
+    @Test
+    void execute_ReportsLowestFailedIndex() {
+        List<Item> items = List.of(new Item("a", 0), new Item("b", 1), new Item("a", 2), new Item("c", 3));
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+
+        KeyOrderedExecutor.ItemFailedException exception = assertThrows(KeyOrderedExecutor.ItemFailedException.class,
+                () -> executor.execute(items, Item::key, item -> {
+                    if (item.sequence() == 1 || item.sequence() == 3) {
+                        throw new IllegalStateException("failed " + item.sequence());
+                    }
+                    processed.add(item.sequence());
+                }));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause().getMessage(), equalTo("failed 1"));
+        assertThat(processed, hasItem(0));
+    }
+
+    @Test
+    void execute_StopsKeyAfterFailure() {
+        KeyOrderedExecutor singleWorker = new KeyOrderedExecutor(1, null);
+        List<Item> items = List.of(new Item("a", 0), new Item("a", 1), new Item("a", 2));
+        List<Integer> processed = new ArrayList<>();
+
+        assertThrows(KeyOrderedExecutor.ItemFailedException.class, () -> singleWorker.execute(items, Item::key, item -> {
+            if (item.sequence() == 1) {
+                throw new IllegalStateException("failed");
+            }
+            processed.add(item.sequence());
+        }));
+
+        assertThat(processed, contains(0));
+    }
+
+    @Test
+    void execute_LimitsItemsInFlight() {
+        KeyOrderedExecutor limited = new KeyOrderedExecutor(8, Executors.newFixedThreadPool(8), 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Item> items = new ArrayList<>();
+        for (int sequence = 0; sequence < 32; sequence++) {
+            items.add(new Item("key-" + sequence, sequence));
+        }
+
+        limited.execute(items, Item::key, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+        });
+        limited.close();
+
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    void executeAsync_PreservesOrderPerKey() {
+        KeyOrderedExecutor async = KeyOrderedExecutor.async(Executors.newCachedThreadPool(), 1000);
+        ScheduledExecutorService completer = Executors.newScheduledThreadPool(4);
+        List<Item> items = new ArrayList<>();
+        for (int sequence = 0; sequence < 100; sequence++) {
+            items.add(new Item("key-" + (sequence % 7), sequence));
+        }
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+
+        async.executeAsync(items, Item::key, item -> {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            // Complete out of order across keys, from another thread.
+            completer.schedule(() -> {
+                processed.computeIfAbsent(item.key(), key -> new CopyOnWriteArrayList<>()).add(item.sequence());
+                result.complete(null);
+            }, 100 - item.sequence() % 10, TimeUnit.MICROSECONDS);
+            return result;
+        });
+        async.close();
+        completer.shutdown();
+
+        for (int key = 0; key < 7; key++) {
+            List<Integer> sequences = processed.get("key-" + key);
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i));
+            }
+        }
+        assertThat(processed.values().stream().mapToInt(List::size).sum(), equalTo(100));
+    }
+
+    @Test
+    void executeAsync_ReportsLowestFailedIndexAndStopsKey() {
+        KeyOrderedExecutor async = KeyOrderedExecutor.async(Executors.newCachedThreadPool(), 1000);
+        List<Item> items = List.of(new Item("a", 0), new Item("b", 1), new Item("a", 2), new Item("b", 3), new Item("c", 4));
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+
+        KeyOrderedExecutor.ItemFailedException exception = assertThrows(KeyOrderedExecutor.ItemFailedException.class,
+                () -> async.executeAsync(items, Item::key, item -> {
+                    if (item.sequence() == 1) {
+                        return CompletableFuture.failedFuture(new IllegalStateException("failed 1"));
+                    }
+                    if (item.sequence() == 4) {
+                        throw new IllegalStateException("failed 4");
+                    }
+                    processed.add(item.sequence());
+                    return CompletableFuture.completedFuture(null);
+                }));
+        async.close();
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause().getMessage(), equalTo("failed 1"));
+        assertThat(processed, hasItem(0));
+        assertFalse(processed.contains(3));
+    }
+
+    @Test
+    void executeAsync_LimitsKeysInFlight() {
+        KeyOrderedExecutor async = KeyOrderedExecutor.async(Executors.newCachedThreadPool(), 2);
+        ScheduledExecutorService completer = Executors.newScheduledThreadPool(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Item> items = new ArrayList<>();
+        for (int sequence = 0; sequence < 32; sequence++) {
+            items.add(new Item("key-" + sequence, sequence));
+        }
+
+        async.executeAsync(items, Item::key, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            completer.schedule(() -> {
+                running.decrementAndGet();
+                result.complete(null);
+            }, 2, TimeUnit.MILLISECONDS);
+            return result;
+        });
+        async.close();
+        completer.shutdown();
+
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    private record Item(String key, int sequence) {
+    }
+}
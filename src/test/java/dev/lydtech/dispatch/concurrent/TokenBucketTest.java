@@ -0,0 +1,72 @@
+package dev.lydtech.dispatch.concurrent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+class TokenBucketTest {
+
+    private AtomicLong clock;
+    private List<Long> sleeps;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        sleeps = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    void acquire_BurstThenWaitsAtRate() throws Exception {
+        TokenBucket bucket = buildBucket(10, 2);
+
+        bucket.acquire();
+        bucket.acquire();
+        assertThat(sleeps, empty());
+        bucket.acquire();
+        // The next caller queues behind the one already waiting.
+        bucket.acquire();
+
+        assertThat(sleeps, contains(millis(100), millis(200)));
+    }
+
+    @Test
+    void acquire_RefillsWhileIdleUpToBurst() throws Exception {
+        TokenBucket bucket = buildBucket(10, 2);
+        bucket.acquire();
+        bucket.acquire();
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        bucket.acquire();
+        bucket.acquire();
+        bucket.acquire();
+
+        assertThat(sleeps, contains(millis(100)));
+    }
+
+    @Test
+    void acquire_ZeroRateIsUnlimited() throws Exception {
+        TokenBucket bucket = buildBucket(0, 1);
+
+        for (int i = 0; i < 100; i++) {
+            bucket.acquire();
+        }
+
+        assertThat(sleeps, empty());
+    }
+
+    private TokenBucket buildBucket(double ratePerSecond, int burst) {
+        return new TokenBucket(ratePerSecond, burst, clock::get, sleeps::add);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,104 @@
+package dev.lydtech.dispatch.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class SeenOrderIdsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void contains_OnlyAddedIds() {
+        SeenOrderIds seenOrderIds = new SeenOrderIds(10);
+        UUID id = UUID.randomUUID();
+
+        assertThat(seenOrderIds.contains(id), equalTo(false));
+        seenOrderIds.add(id);
+        assertThat(seenOrderIds.contains(id), equalTo(true));
+        assertThat(seenOrderIds.contains(UUID.randomUUID()), equalTo(false));
+    }
+
+    @Test
+    void add_SameIdTwiceIsStoredOnce() {
+        SeenOrderIds seenOrderIds = new SeenOrderIds(10);
+        UUID id = UUID.randomUUID();
+
+        seenOrderIds.add(id);
+        seenOrderIds.add(id);
+
+        assertThat(seenOrderIds.size(), equalTo(1));
+    }
+
+    @Test
+    void add_OldestIdIsEvictedOnceFull() {
+        SeenOrderIds seenOrderIds = new SeenOrderIds(100);
+        List<UUID> ids = addRandomIds(seenOrderIds, 250);
+
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat("id " + i, seenOrderIds.contains(ids.get(i)), equalTo(i >= 150));
+        }
+        assertThat(seenOrderIds.size(), equalTo(100));
+    }
+
+    @Test
+    void add_WindowIsExactUnderHeavyCollisions() {
+        // A tiny window keeps the index crowded, exercising removal from the middle of probe runs.
+        SeenOrderIds seenOrderIds = new SeenOrderIds(3);
+        List<UUID> ids = addRandomIds(seenOrderIds, 10_000);
+
+        for (int i = ids.size() - 50; i < ids.size(); i++) {
+            assertThat(seenOrderIds.contains(ids.get(i)), equalTo(i >= ids.size() - 3));
+        }
+    }
+
+    @Test
+    void file_WindowSurvivesReopening() {
+        Path file = tempDir.resolve("dedup.dat");
+        SeenOrderIds seenOrderIds = new SeenOrderIds(100, file);
+        List<UUID> ids = addRandomIds(seenOrderIds, 150);
+        seenOrderIds.close();
+
+        SeenOrderIds reopened = new SeenOrderIds(100, file);
+
+        assertThat(reopened.size(), equalTo(100));
+        assertThat(reopened.contains(ids.get(49)), equalTo(false));
+        assertThat(reopened.contains(ids.get(50)), equalTo(true));
+        assertThat(reopened.contains(ids.get(149)), equalTo(true));
+
+        UUID id = UUID.randomUUID();
+        reopened.add(id);
+        assertThat(reopened.contains(id), equalTo(true));
+        assertThat(reopened.contains(ids.get(50)), equalTo(false));
+    }
+
+    @Test
+    void file_DifferentWindowSizeStartsEmpty() {
+        Path file = tempDir.resolve("dedup.dat");
+        SeenOrderIds seenOrderIds = new SeenOrderIds(100, file);
+        addRandomIds(seenOrderIds, 10);
+        seenOrderIds.close();
+
+        SeenOrderIds reopened = new SeenOrderIds(50, file);
+
+        assertThat(reopened.size(), equalTo(0));
+    }
+
+    private static List<UUID> addRandomIds(SeenOrderIds seenOrderIds, int count) {
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            seenOrderIds.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,83 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.client.StockServiceCircuitBreaker;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CircuitBreakerContainerPauserTest {
+
+    private StockServiceCircuitBreaker breaker;
+    private MessageListenerContainer orderContainer;
+    private MessageListenerContainer retryContainer;
+    private MessageListenerContainer otherContainer;
+
+    @BeforeEach
+    void setUp() {
+        breaker = new StockServiceCircuitBreaker(true, 2, 2, 50, 200, 1, 0, 0, new DispatchMetrics(new SimpleMeterRegistry()));
+        orderContainer = container("orderConsumerClient");
+        retryContainer = container("orderConsumerClient-retry-0");
+        otherContainer = container("otherListener");
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(orderContainer, retryContainer, otherContainer));
+        new CircuitBreakerContainerPauser(breaker, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        breaker.destroy();
+    }
+
+    @Test
+    void pausesOrderListenersWhileOpenAndResumesWhenHalfOpen() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(RetryableException.class, () -> breaker.call(() -> {
+                throw new RetryableException("503 Service Unavailable");
+            }));
+        }
+
+        verify(orderContainer, times(1)).pause();
+        verify(retryContainer, times(1)).pause();
+        verify(otherContainer, never()).pause();
+
+        await().atMost(2, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(() -> breaker.getState() == StockServiceCircuitBreaker.State.HALF_OPEN);
+        verify(orderContainer, times(1)).resume();
+        verify(retryContainer, times(1)).resume();
+        verify(otherContainer, never()).resume();
+    }
+
+    private static MessageListenerContainer container(String listenerId) {
+        MessageListenerContainer container = mock(MessageListenerContainer.class);
+        AtomicBoolean pauseRequested = new AtomicBoolean();
+        when(container.getListenerId()).thenReturn(listenerId);
+        when(container.isPauseRequested()).thenAnswer(invocation -> pauseRequested.get());
+        doAnswer(invocation -> {
+            pauseRequested.set(true);
+            return null;
+        }).when(container).pause();
+        doAnswer(invocation -> {
+            pauseRequested.set(false);
+            return null;
+        }).when(container).resume();
+        return container;
+    }
+}
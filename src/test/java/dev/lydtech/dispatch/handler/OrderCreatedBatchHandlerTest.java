@@ -0,0 +1,152 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.PollBudgetExceededException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class OrderCreatedBatchHandlerTest {
+
+    private static final PollBackPressure DISABLED_BACK_PRESSURE = new PollBackPressure(false, true, 500, 1000, 1000, 1000,
+            new SimpleMeterRegistry(), List::of, null);
+    private static final HotKeyTracker DISABLED_HOT_KEYS = new HotKeyTracker(false, 0, 0, 0, 0, 0, new DispatchMetrics(new SimpleMeterRegistry()));
+
+    private OrderCreatedBatchHandler handler;
+    private DispatchService dispatchServiceMock;
+
+    @BeforeEach
+    void setUp() {
+        dispatchServiceMock = Mockito.mock(DispatchService.class);
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, new KeyOrderedExecutor(1, null), new TransactionalBatchRecoverer(false, null, 0), new OrderDeduplicator(false, 0, ""),
+                new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_BACK_PRESSURE, DISABLED_HOT_KEYS, DispatchTracer.disabled());
+    }
+
+    @Test
+    void listen_Success() throws Exception {
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1), buildRecord(2));
+
+        handler.listen(records);
+
+        for (ConsumerRecord<String, OrderCreated> record : records) {
+            verify(dispatchServiceMock, times(1)).process(record.key(), record.value(), null);
+        }
+    }
+
+    @Test
+    void listen_ServiceThrowsRetryableException() throws Exception {
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1), buildRecord(2));
+        doThrow(new RetryableException("Service unavailable")).when(dispatchServiceMock).process(records.get(1).key(), records.get(1).value(), null);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(RetryableException.class));
+        verify(dispatchServiceMock, times(2)).process(anyString(), any(OrderCreated.class), isNull());
+    }
+
+    @Test
+    void listen_ServiceThrowsException() throws Exception {
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1));
+        doThrow(new RuntimeException("Service failure")).when(dispatchServiceMock).process(records.get(0).key(), records.get(0).value(), null);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(0));
+        assertThat(exception.getCause(), instanceOf(NotRetryableException.class));
+        verify(dispatchServiceMock, times(1)).process(anyString(), any(OrderCreated.class), isNull());
+    }
+
+    @Test
+    void listen_DeserializationFailure() throws Exception {
+        ConsumerRecord<String, OrderCreated> poisonRecord = new ConsumerRecord<>("order.created", 0, 1, UUID.randomUUID().toString(), null);
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), poisonRecord);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(NotRetryableException.class));
+        verify(dispatchServiceMock, times(1)).process(anyString(), any(OrderCreated.class), isNull());
+    }
+
+    @Test
+    void listen_KeyOrderedWorkersReportLowestFailedIndex() throws Exception {
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, new KeyOrderedExecutor(4, Executors.newFixedThreadPool(4)), new TransactionalBatchRecoverer(false, null, 0), new OrderDeduplicator(false, 0, ""),
+                new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_BACK_PRESSURE, DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1), buildRecord(2), buildRecord(3));
+        doThrow(new RetryableException("Service unavailable")).when(dispatchServiceMock).process(records.get(2).key(), records.get(2).value(), null);
+        doThrow(new RetryableException("Service unavailable")).when(dispatchServiceMock).process(records.get(3).key(), records.get(3).value(), null);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(2));
+        verify(dispatchServiceMock, times(1)).process(records.get(0).key(), records.get(0).value(), null);
+        verify(dispatchServiceMock, times(1)).process(records.get(1).key(), records.get(1).value(), null);
+    }
+
+    @Test
+    void listen_AsyncExecutorUsesProcessAsync() throws Exception {
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, KeyOrderedExecutor.async(Executors.newCachedThreadPool(), 10), new TransactionalBatchRecoverer(false, null, 0), new OrderDeduplicator(false, 0, ""),
+                new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_BACK_PRESSURE, DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1), buildRecord(2));
+        when(dispatchServiceMock.processAsync(anyString(), any(OrderCreated.class), isNull())).thenReturn(CompletableFuture.completedFuture(null));
+        when(dispatchServiceMock.processAsync(records.get(1).key(), records.get(1).value(), null))
+                .thenReturn(CompletableFuture.failedFuture(new RetryableException("Service unavailable")));
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(RetryableException.class));
+        verify(dispatchServiceMock, times(1)).processAsync(records.get(0).key(), records.get(0).value(), null);
+        verify(dispatchServiceMock, never()).process(anyString(), any(OrderCreated.class), isNull());
+    }
+
+    @Test
+    void listen_DefersRecordsBeyondPollBudget() throws Exception {
+        PollBackPressure backPressure = new PollBackPressure(true, true, 500, 100, 10_000, 1000, new SimpleMeterRegistry(), List::of, null);
+        // 40ms a record, so 2 records fit in the 100ms budget.
+        backPressure.recordProcessed(1, TimeUnit.MILLISECONDS.toNanos(40));
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, new KeyOrderedExecutor(1, null), new TransactionalBatchRecoverer(false, null, 0), new OrderDeduplicator(false, 0, ""),
+                new DispatchMetrics(new SimpleMeterRegistry()), backPressure, DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1), buildRecord(2), buildRecord(3));
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+
+        assertThat(exception.getIndex(), equalTo(2));
+        assertThat(exception.getCause(), instanceOf(PollBudgetExceededException.class));
+        verify(dispatchServiceMock, times(1)).process(records.get(0).key(), records.get(0).value(), null);
+        verify(dispatchServiceMock, times(1)).process(records.get(1).key(), records.get(1).value(), null);
+        verify(dispatchServiceMock, times(2)).process(anyString(), any(OrderCreated.class), isNull());
+    }
+
+    private static ConsumerRecord<String, OrderCreated> buildRecord(long offset) {
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+        return new ConsumerRecord<>("order.created", 0, offset, UUID.randomUUID().toString(), testEvent);
+    }
+}
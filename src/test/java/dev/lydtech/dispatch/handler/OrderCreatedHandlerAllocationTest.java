@@ -0,0 +1,86 @@
+package dev.lydtech.dispatch.handler;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import dev.lydtech.dispatch.util.StubKafkaTemplate;
+import dev.lydtech.dispatch.util.StubStockServiceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * The allocation budget of the listener hot path: OrderCreatedHandler.listen through DispatchService, with the stock
+ * service and the producer stubbed out, at the default INFO log level.
+ *
+ * What remains per record, about 300 bytes, is the three events, the OrderDispatched notes and the send completion
+ * callbacks; before log messages were parameterized it was over 5KB.  The budget leaves headroom for JIT differences
+ * but fails if per-record string building comes back.
+ */
+class OrderCreatedHandlerAllocationTest {
+
+    private static final long MAX_BYTES_PER_RECORD = 512;
+    private static final int WARM_UP_RECORDS = 50_000;
+    private static final int MEASURED_RECORDS = 50_000;
+
+    private final Logger rootLogger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    private Level rootLevel;
+
+    @BeforeEach
+    void setUp() {
+        // Unit tests run without Spring Boot's logging setup, where logback defaults to DEBUG.
+        rootLevel = rootLogger.getLevel();
+        rootLogger.setLevel(Level.INFO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rootLogger.setLevel(rootLevel);
+    }
+
+    @Test
+    void listen_StaysWithinAllocationBudget() {
+        assertThat("bytes allocated per record", bytesPerRecord(false), lessThan(MAX_BYTES_PER_RECORD));
+    }
+
+    @Test
+    void listen_PipelinedSendsStayWithinAllocationBudget() {
+        assertThat("bytes allocated per record", bytesPerRecord(true), lessThan(MAX_BYTES_PER_RECORD));
+    }
+
+    private static long bytesPerRecord(boolean pipelinedSends) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        DispatchMetrics dispatchMetrics = new DispatchMetrics(new SimpleMeterRegistry());
+        DispatchService dispatchService = new DispatchService(new StubKafkaTemplate(), new StubStockServiceClient(), pipelinedSends, false, dispatchMetrics);
+        OrderCreatedHandler handler = new OrderCreatedHandler(dispatchService, new OrderDeduplicator(false, 0, ""), dispatchMetrics, new HotKeyTracker(false, 0, 0, 0, 0, 0, dispatchMetrics),
+                DispatchTracer.disabled());
+        String key = UUID.randomUUID().toString();
+        OrderCreated orderCreated = new OrderCreated(UUID.randomUUID(), "my-item");
+
+        for (int i = 0; i < WARM_UP_RECORDS; i++) {
+            handler.listen(0, key, System.currentTimeMillis(), null, orderCreated);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_RECORDS; i++) {
+            handler.listen(0, key, System.currentTimeMillis(), null, orderCreated);
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / MEASURED_RECORDS;
+    }
+}
@@ -1,13 +1,23 @@
 package dev.lydtech.dispatch.handler;
 
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
 import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.RetryableException;
 import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.metrics.HotKeyTracker;
 import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import dev.lydtech.dispatch.tracing.InMemorySpanExporter;
+import dev.lydtech.dispatch.tracing.Span;
 import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -17,12 +27,14 @@ import static org.mockito.Mockito.*;
 
 class OrderCreatedHandlerTest {
 
+    private static final HotKeyTracker DISABLED_HOT_KEYS = new HotKeyTracker(false, 0, 0, 0, 0, 0, new DispatchMetrics(new SimpleMeterRegistry()));
+
     private OrderCreatedHandler handler;
     private DispatchService dispatchServiceMock;
     @BeforeEach
     void setUp() {
         dispatchServiceMock = Mockito.mock(DispatchService.class);
-        handler = new OrderCreatedHandler(dispatchServiceMock);
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(false, 0, ""), new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_HOT_KEYS, DispatchTracer.disabled());
     }
 
     @Test
@@ -30,8 +42,8 @@ class OrderCreatedHandlerTest {
         String key = UUID.randomUUID().toString();
         OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
 
-        handler.listen(0, key, testEvent);
-        verify(dispatchServiceMock, times(1)).process(key, testEvent);
+        handler.listen(0, key, System.currentTimeMillis(), null, testEvent);
+        verify(dispatchServiceMock, times(1)).process(key, testEvent, null);
     }
 
     @Test
@@ -39,10 +51,99 @@ class OrderCreatedHandlerTest {
         String key = UUID.randomUUID().toString();
 
         OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
-        doThrow(new RuntimeException("Service failure")).when(dispatchServiceMock).process(key, testEvent);
+        doThrow(new RuntimeException("Service failure")).when(dispatchServiceMock).process(key, testEvent, null);
 
-        Exception exception = assertThrows(NotRetryableException.class, () -> handler.listen(0, key, testEvent));
+        Exception exception = assertThrows(NotRetryableException.class, () -> handler.listen(0, key, System.currentTimeMillis(), null, testEvent));
         assertThat(exception.getMessage(), equalTo("java.lang.RuntimeException: Service failure"));
-        verify(dispatchServiceMock, times(1)).process(key, testEvent);
+        verify(dispatchServiceMock, times(1)).process(key, testEvent, null);
+    }
+
+    @Test
+    void listen_DuplicateOrderIsDropped() throws Exception {
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(true, 10, ""), new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        handler.listen(0, key, System.currentTimeMillis(), null, testEvent);
+        handler.listen(0, key, System.currentTimeMillis(), null, testEvent);
+        verify(dispatchServiceMock, times(1)).process(key, testEvent, null);
+    }
+
+    @Test
+    void listen_FailedOrderIsNotMarkedAsProcessed() throws Exception {
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(true, 10, ""), new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+        doThrow(new RuntimeException("Service failure")).doNothing().when(dispatchServiceMock).process(key, testEvent, null);
+
+        assertThrows(NotRetryableException.class, () -> handler.listen(0, key, System.currentTimeMillis(), null, testEvent));
+        handler.listen(0, key, System.currentTimeMillis(), null, testEvent);
+        verify(dispatchServiceMock, times(2)).process(key, testEvent, null);
+    }
+
+    @Test
+    void listen_RecordsLatencyByResult() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(false, 0, ""), new DispatchMetrics(registry), DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        OrderCreated retried = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item");
+        OrderCreated failed = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item");
+        doThrow(new RetryableException("Service unavailable")).when(dispatchServiceMock).process("key", retried, null);
+        doThrow(new RuntimeException("Service failure")).when(dispatchServiceMock).process("key", failed, null);
+
+        handler.listen(0, "key", System.currentTimeMillis(), null, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item"));
+        assertThrows(RetryableException.class, () -> handler.listen(0, "key", System.currentTimeMillis(), null, retried));
+        assertThrows(NotRetryableException.class, () -> handler.listen(0, "key", System.currentTimeMillis(), null, failed));
+
+        assertThat(registry.get("dispatch.order.latency").tag("result", "success").timer().count(), equalTo(1L));
+        assertThat(registry.get("dispatch.order.latency").tag("result", "retryable").timer().count(), equalTo(1L));
+        assertThat(registry.get("dispatch.order.latency").tag("result", "failure").timer().count(), equalTo(1L));
+    }
+
+    @Test
+    void listen_RecordsTimeToFirstRecordOnce() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(false, 0, ""), new DispatchMetrics(registry), DISABLED_HOT_KEYS, DispatchTracer.disabled());
+        assertThat(registry.get("dispatch.startup.first.record").timeGauge().value(), equalTo(0.0));
+
+        handler.listen(0, UUID.randomUUID().toString(), System.currentTimeMillis(), null, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item"));
+        double firstRecord = registry.get("dispatch.startup.first.record").timeGauge().value();
+        handler.listen(0, UUID.randomUUID().toString(), System.currentTimeMillis(), null, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item"));
+
+        assertThat(firstRecord > 0, equalTo(true));
+        assertThat(registry.get("dispatch.startup.first.record").timeGauge().value(), equalTo(firstRecord));
+    }
+
+    @Test
+    void listen_RecordsHotKeysAndPartitionLoad() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HotKeyTracker hotKeyTracker = new HotKeyTracker(true, 1.0, 5, 64, 2, 60_000, new DispatchMetrics(registry));
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(false, 0, ""), new DispatchMetrics(registry), hotKeyTracker, DispatchTracer.disabled());
+
+        for (int i = 0; i < 3; i++) {
+            handler.listen(1, "hot-key", System.currentTimeMillis(), null, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "hot-item"));
+        }
+        handler.listen(0, "cold-key", System.currentTimeMillis(), null, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "cold-item"));
+
+        assertThat(hotKeyTracker.report().keys().get(0).value(), equalTo("hot-key"));
+        assertThat(hotKeyTracker.report().items().get(0).value(), equalTo("hot-item"));
+        assertThat(registry.get("dispatch.partition.records").tag("partition", "1").counter().count(), equalTo(3.0));
+    }
+
+    @Test
+    void listen_TracesRecordsStampedWithAPollTime() throws Exception {
+        DispatchTracer tracer = new DispatchTracer(true, true, "memory", "", 100);
+        handler = new OrderCreatedHandler(dispatchServiceMock, new OrderDeduplicator(false, 0, ""), new DispatchMetrics(new SimpleMeterRegistry()), DISABLED_HOT_KEYS, tracer);
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+        byte[] pollTime = String.valueOf(System.currentTimeMillis() * 1000).getBytes(StandardCharsets.US_ASCII);
+
+        handler.listen(0, key, System.currentTimeMillis(), pollTime, testEvent);
+        handler.listen(0, key, System.currentTimeMillis(), null, testEvent);
+
+        verify(dispatchServiceMock, times(1)).process(eq(key), eq(testEvent), notNull());
+        verify(dispatchServiceMock, times(1)).process(key, testEvent, null);
+        List<Span> spans = ((InMemorySpanExporter) tracer.getExporter()).getFinishedSpans();
+        assertThat(spans.get(0).name(), equalTo("dispatch order"));
+        assertThat(spans.get(0).attributes().get("dispatch.order_id"), equalTo(testEvent.getOrderId().toString()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package dev.lydtech.dispatch.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PollBackPressureTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("order.created", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("order.created", 1);
+
+    private SimpleMeterRegistry registry;
+    private ScheduledExecutorService scheduler;
+    private MessageListenerContainer orderContainer;
+    private MessageListenerContainer otherContainer;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        orderContainer = mock(MessageListenerContainer.class);
+        when(orderContainer.getListenerId()).thenReturn("orderConsumerClient");
+        when(orderContainer.getAssignedPartitions()).thenReturn(Set.of(PARTITION_0, PARTITION_1));
+        otherContainer = mock(MessageListenerContainer.class);
+        when(otherContainer.getListenerId()).thenReturn("otherListener");
+        when(otherContainer.getAssignedPartitions()).thenReturn(Set.of(PARTITION_0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void batchLimit_FitsPollBudgetAtAverageRecordTime() {
+        PollBackPressure backPressure = buildBackPressure(true, 1000, 10_000);
+
+        assertThat(backPressure.batchLimit(500), equalTo(500));
+
+        backPressure.recordProcessed(10, TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(backPressure.batchLimit(500), equalTo(100));
+        assertThat(backPressure.batchLimit(50), equalTo(50));
+
+        // A 60ms record moves the 10ms average a fifth of the way, to 20ms.
+        backPressure.recordProcessed(1, TimeUnit.MILLISECONDS.toNanos(60));
+        assertThat(backPressure.batchLimit(500), equalTo(50));
+        assertThat(registry.get("dispatch.consumer.backpressure.batch.limit").gauge().value(), equalTo(50.0));
+    }
+
+    @Test
+    void batchLimit_AlwaysAtLeastOneRecord() {
+        PollBackPressure backPressure = buildBackPressure(true, 10, 10_000);
+
+        backPressure.recordProcessed(1, TimeUnit.SECONDS.toNanos(5));
+
+        assertThat(backPressure.batchLimit(500), equalTo(1));
+    }
+
+    @Test
+    void batchLimit_NotShrunkWhenTransactional() {
+        PollBackPressure backPressure = new PollBackPressure(true, false, 500, 10, 10_000, 100, registry, List::of, scheduler);
+
+        backPressure.recordProcessed(1, TimeUnit.SECONDS.toNanos(5));
+
+        assertThat(backPressure.batchLimit(500), equalTo(500));
+    }
+
+    @Test
+    void recordProcessed_PausesOrderPartitionsWhileSlow() {
+        PollBackPressure backPressure = buildBackPressure(true, 1000, 100);
+
+        backPressure.recordProcessed(1, TimeUnit.MILLISECONDS.toNanos(50));
+        verify(orderContainer, never()).pausePartition(PARTITION_0);
+
+        backPressure.recordProcessed(1, TimeUnit.MILLISECONDS.toNanos(500));
+        backPressure.recordProcessed(1, TimeUnit.MILLISECONDS.toNanos(500));
+
+        verify(orderContainer, times(1)).pausePartition(PARTITION_0);
+        verify(orderContainer, times(1)).pausePartition(PARTITION_1);
+        verify(otherContainer, never()).pausePartition(PARTITION_0);
+        assertThat(registry.get("dispatch.consumer.backpressure.pauses").counter().count(), equalTo(1.0));
+
+        await().atMost(2, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .untilAsserted(() -> verify(orderContainer, times(1)).resumePartition(PARTITION_1));
+        verify(orderContainer, times(1)).resumePartition(PARTITION_0);
+        assertThat(backPressure.getAverageNanos(), equalTo(0.0));
+    }
+
+    @Test
+    void recordProcessed_IgnoredWhenDisabled() {
+        PollBackPressure backPressure = buildBackPressure(false, 10, 10);
+
+        backPressure.recordProcessed(1, TimeUnit.SECONDS.toNanos(5));
+
+        assertThat(backPressure.batchLimit(500), equalTo(500));
+        verify(orderContainer, never()).pausePartition(PARTITION_0);
+    }
+
+    private PollBackPressure buildBackPressure(boolean enabled, long pollBudgetMs, long pauseAboveMs) {
+        return new PollBackPressure(enabled, true, 500, pollBudgetMs, pauseAboveMs, 100, registry,
+                () -> List.of(orderContainer, otherContainer), scheduler);
+    }
+}
@@ -0,0 +1,71 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TransactionalBatchRecovererTest {
+
+    private ConsumerRecordRecoverer deadLetterRecovererMock;
+    private TransactionalBatchRecoverer recoverer;
+
+    @BeforeEach
+    void setUp() {
+        deadLetterRecovererMock = mock(ConsumerRecordRecoverer.class);
+        recoverer = new TransactionalBatchRecoverer(true, deadLetterRecovererMock, 3);
+    }
+
+    @Test
+    void recover_NotRetryableIsRecoveredImmediately() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("order.created", 0, 5L, "key", "value");
+        NotRetryableException exception = new NotRetryableException(new IllegalArgumentException("bad payload"));
+
+        assertThat(recoverer.recover(record, exception), equalTo(true));
+
+        verify(deadLetterRecovererMock, times(1)).accept(record, exception);
+    }
+
+    @Test
+    void recover_RetryableIsRecoveredOnceAttemptsAreExhausted() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("order.created", 0, 5L, "key", "value");
+        RetryableException exception = new RetryableException("Service unavailable");
+
+        assertThat(recoverer.recover(record, exception), equalTo(false));
+        assertThat(recoverer.recover(record, exception), equalTo(false));
+        verifyNoInteractions(deadLetterRecovererMock);
+
+        assertThat(recoverer.recover(record, exception), equalTo(true));
+        verify(deadLetterRecovererMock, times(1)).accept(record, exception);
+    }
+
+    @Test
+    void recover_SuccessResetsAttempts() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("order.created", 0, 5L, "key", "value");
+        RetryableException exception = new RetryableException("Service unavailable");
+
+        recoverer.recover(record, exception);
+        recoverer.recover(record, exception);
+        recoverer.succeeded(record);
+
+        assertThat(recoverer.recover(record, exception), equalTo(false));
+        verifyNoInteractions(deadLetterRecovererMock);
+    }
+
+    @Test
+    void recover_DisabledNeverRecovers() {
+        recoverer = new TransactionalBatchRecoverer(false, deadLetterRecovererMock, 3);
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("order.created", 0, 5L, "key", "value");
+
+        assertThat(recoverer.recover(record, new NotRetryableException(new IllegalArgumentException("bad payload"))), equalTo(false));
+
+        verify(deadLetterRecovererMock, never()).accept(any(), any());
+    }
+}
@@ -0,0 +1,12 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the OrderDispatchIntegrationTest flows with dispatch.tracking.compact, where each order's DispatchPreparing and
+ * DispatchCompleted arrive together in a single DispatchTracking record sent once its OrderDispatched is acknowledged.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {"dispatch.tracking.compact=true"})
+public class OrderDispatchCompactTrackingIntegrationTest extends OrderDispatchIntegrationTest {
+}
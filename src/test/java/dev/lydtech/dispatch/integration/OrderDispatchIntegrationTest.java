@@ -1,12 +1,14 @@
 package dev.lydtech.dispatch.integration;
 
 
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import dev.lydtech.dispatch.DispatchConfiguration;
 import dev.lydtech.dispatch.message.DispatchCompleted;
 import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
 import dev.lydtech.dispatch.message.OrderCreated;
 import dev.lydtech.dispatch.message.OrderDispatched;
 import dev.lydtech.dispatch.util.TestEventData;
@@ -26,6 +28,7 @@ import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.support.MessageBuilder;
@@ -45,7 +48,7 @@ import static org.hamcrest.Matchers.notNullValue;
 @AutoConfigureWireMock(port=0)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
 @ActiveProfiles("test")
-@EmbeddedKafka(controlledShutdown = true)
+@EmbeddedKafka(controlledShutdown = true, brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
 public class OrderDispatchIntegrationTest {
 
     private final static String ORDER_CREATED_TOPIC = "order.created";
@@ -63,7 +66,7 @@ public class OrderDispatchIntegrationTest {
     private KafkaListenerEndpointRegistry registry;
 
     @Autowired
-    private KafkaTestListener testListener;
+    protected KafkaTestListener testListener;
 
     @Configuration
     static class TestConfig {
@@ -108,6 +111,21 @@ public class OrderDispatchIntegrationTest {
             dispatchCompletedCounter.incrementAndGet();
         }
 
+        /**
+         * With dispatch.tracking.compact, counted as the separate events it replaces.
+         */
+        @KafkaHandler
+        void receiveDispatchTracking(@Header(KafkaHeaders.RECEIVED_KEY) String key, @Payload DispatchTracking payload) {
+            log.debug("Received DispatchTracking key: " + key + " - payload: " + payload);
+            for (Object event : payload.toSeparateEvents()) {
+                if (event instanceof DispatchPreparing dispatchPreparing) {
+                    receiveDispatchPreparing(key, dispatchPreparing);
+                } else if (event instanceof DispatchCompleted dispatchCompleted) {
+                    receiveDispatchCompleted(key, dispatchCompleted);
+                }
+            }
+        }
+
         @KafkaHandler
         void receiveOrderCreatedDLT(@Header(KafkaHeaders.RECEIVED_KEY) String key, @Payload OrderCreated payload) {
             log.debug("Received DispatchCompleted key: " + key + " - payload: " + payload);
@@ -210,11 +228,17 @@ public class OrderDispatchIntegrationTest {
         assertThat(testListener.dispatchCompletedCounter.get(), equalTo(0));
     }
 
-    private void sendMessage(String topic, String key, Object data) throws Exception {
-        kafkaTemplate.send(MessageBuilder
+    protected void sendMessage(String topic, String key, Object data) throws Exception {
+        Message<Object> message = MessageBuilder
                 .withPayload(data)
                 .setHeader(KafkaHeaders.KEY, key)
                 .setHeader(KafkaHeaders.TOPIC, topic)
-                .build()).get();
+                .build();
+        if (kafkaTemplate.isTransactional()) {
+            // With dispatch.transactions.enabled the template only sends within a transaction.
+            ((Future<?>) kafkaTemplate.executeInTransaction(template -> template.send(message))).get();
+        } else {
+            kafkaTemplate.send(message).get();
+        }
     }
 }
@@ -0,0 +1,229 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Throughput and latency harness for the whole dispatch flow, on the same embedded Kafka and WireMock setup as
+ * OrderDispatchIntegrationTest.  It only runs when requested, and is configured with system properties:
+ *
+ *   mvn test -Dtest=OrderDispatchLoadTest -Dloadtest=true -Dloadtest.ratePerSecond=500 -Dloadtest.stockLatencyMs=5
+ *
+ * - loadtest.ratePerSecond, loadtest.durationSeconds: the constant rate at which order.created records are sent, and
+ *   for how long.
+ * - loadtest.stockLatencyMs: median stock service latency, log-normally distributed.
+ * - loadtest.stockErrorPercent: the percentage of orders for an item the stock service always fails with a 503, so
+ *   they are retried and dead-lettered.
+ * - loadtest.minThroughput, loadtest.maxP99Ms: regression thresholds, checked when set.
+ *
+ * Any dispatch.* property can be passed the same way, so producer profiles are compared by repeating a run with
+ * -Ddispatch.producer.profile=low-latency, high-throughput or durable; the profile is included in the summary.  With
+ * -Ddispatch.tracking.compact=true an order's DispatchTracking record stands in for its DispatchCompleted.
+ *
+ * Latency is measured from when each record was due to be sent, so a sender falling behind is counted rather than
+ * hidden, to the arrival of its OrderDispatched and DispatchCompleted events.
+ */
+@Slf4j
+@SpringBootTest(classes = {DispatchConfiguration.class})
+@AutoConfigureWireMock(port=0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true, brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+@Import(OrderDispatchLoadTest.LoadTestListener.class)
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class OrderDispatchLoadTest {
+
+    private final static String ORDER_CREATED_TOPIC = "order.created";
+    private final static String AVAILABLE_ITEM = "load-item";
+    private final static String FAILING_ITEM = "failing-item";
+
+    private final int ratePerSecond = Integer.getInteger("loadtest.ratePerSecond", 200);
+    private final int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 10);
+    private final int stockLatencyMs = Integer.getInteger("loadtest.stockLatencyMs", 0);
+    private final int stockErrorPercent = Integer.getInteger("loadtest.stockErrorPercent", 0);
+    private final double minThroughput = Double.parseDouble(System.getProperty("loadtest.minThroughput", "0"));
+    private final double maxP99Ms = Double.parseDouble(System.getProperty("loadtest.maxP99Ms", "0"));
+
+    @Value("${dispatch.producer.profile:default}")
+    private String producerProfile;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private LoadTestListener listener;
+
+    @BeforeEach
+    public void setUp() {
+        WiremockUtils.reset();
+        WiremockUtils.stubWiremockWithDelay("/api/stock?item=" + AVAILABLE_ITEM, 200, "true", stockLatencyMs);
+        WiremockUtils.stubWiremockWithDelay("/api/stock?item=" + FAILING_ITEM, 503, "Service unavailable", stockLatencyMs);
+
+        registry.getListenerContainers().forEach(container -> ContainerTestUtils.waitForAssignment(container,
+                container.getContainerProperties().getTopics().length * embeddedKafkaBroker.getPartitionsPerTopic()));
+    }
+
+    @Test
+    public void sustainedLoad() {
+        int total = ratePerSecond * durationSeconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        int failed = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean failing = ThreadLocalRandom.current().nextInt(100) < stockErrorPercent;
+            if (failing) {
+                failed++;
+            }
+            UUID orderId = randomUUID();
+            listener.dueTimes.put(orderId, due);
+            kafkaTemplate.send(ORDER_CREATED_TOPIC, randomUUID().toString(), new OrderCreated(orderId, failing ? FAILING_ITEM : AVAILABLE_ITEM));
+        }
+        double sendSeconds = (System.nanoTime() - start) / 1e9;
+
+        int expectedFailed = failed;
+        int expectedDispatched = total - failed;
+        await().atMost(durationSeconds + 60L, TimeUnit.SECONDS).pollInterval(100, TimeUnit.MILLISECONDS)
+                .until(() -> listener.dispatchCompletedLatencies.size() >= expectedDispatched && listener.deadLettered.get() >= expectedFailed);
+        double elapsedSeconds = (listener.lastArrival.get() - start) / 1e9;
+        double throughput = listener.dispatchCompletedLatencies.size() / elapsedSeconds;
+
+        long[] dispatched = sorted(listener.orderDispatchedLatencies);
+        long[] completed = sorted(listener.dispatchCompletedLatencies);
+        log.info(String.format("""
+
+                        Load test: %d records at %d/s over %.1fs (sent in %.1fs), stock latency %dms, stock errors %d%%, producer profile %s
+                          dispatched: %d, dead-lettered: %d, sustained throughput: %.1f records/s
+                          order.dispatched   p50 %8.2fms  p99 %8.2fms  p99.9 %8.2fms  max %8.2fms
+                          dispatch.completed p50 %8.2fms  p99 %8.2fms  p99.9 %8.2fms  max %8.2fms""",
+                total, ratePerSecond, (double) durationSeconds, sendSeconds, stockLatencyMs, stockErrorPercent, producerProfile,
+                completed.length, listener.deadLettered.get(), throughput,
+                percentileMs(dispatched, 50), percentileMs(dispatched, 99), percentileMs(dispatched, 99.9), percentileMs(dispatched, 100),
+                percentileMs(completed, 50), percentileMs(completed, 99), percentileMs(completed, 99.9), percentileMs(completed, 100)));
+
+        assertThat(completed.length, equalTo(expectedDispatched));
+        if (minThroughput > 0) {
+            assertThat("records/s", throughput, greaterThanOrEqualTo(minThroughput));
+        }
+        if (maxP99Ms > 0) {
+            assertThat("p99 ms", percentileMs(completed, 99), lessThanOrEqualTo(maxP99Ms));
+        }
+    }
+
+    private static long[] sorted(List<Long> latencies) {
+        long[] values = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static double percentileMs(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+    }
+
+    /**
+     * Records the arrival of each order's outbound events, and of dead-lettered orders.
+     */
+    @KafkaListener(groupId = "OrderDispatchLoadTest", topics = { "dispatch.tracking", "order.dispatched", "order.created.DLT" })
+    public static class LoadTestListener {
+        final Map<UUID, Long> dueTimes = new ConcurrentHashMap<>();
+        final List<Long> orderDispatchedLatencies = new CopyOnWriteArrayList<>();
+        final List<Long> dispatchCompletedLatencies = new CopyOnWriteArrayList<>();
+        final AtomicInteger deadLettered = new AtomicInteger();
+        final AtomicLong lastArrival = new AtomicLong();
+
+        @KafkaHandler
+        void receiveDispatchPreparing(@Payload DispatchPreparing payload) {
+        }
+
+        @KafkaHandler
+        void receiveOrderDispatched(@Payload OrderDispatched payload) {
+            record(orderDispatchedLatencies, payload.getOrderId());
+        }
+
+        @KafkaHandler
+        void receiveDispatchCompleted(@Payload DispatchCompleted payload) {
+            record(dispatchCompletedLatencies, payload.getOrderId());
+        }
+
+        /**
+         * With dispatch.tracking.compact the order is complete once its DispatchTracking arrives.
+         */
+        @KafkaHandler
+        void receiveDispatchTracking(@Payload DispatchTracking payload) {
+            if (payload.getStatuses() != null && payload.getStatuses().contains(DispatchTracking.Status.COMPLETED)) {
+                record(dispatchCompletedLatencies, payload.getOrderId());
+            }
+        }
+
+        @KafkaHandler
+        void receiveOrderCreatedDLT(@Payload OrderCreated payload) {
+            deadLettered.incrementAndGet();
+        }
+
+        private void record(List<Long> latencies, UUID orderId) {
+            long now = System.nanoTime();
+            Long due = dueTimes.get(orderId);
+            if (due != null) {
+                latencies.add(now - due);
+                lastArrival.accumulateAndGet(now, Math::max);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The order dispatch flow with dispatch.retry.topics.enabled: a record that keeps failing with a retryable error moves
+ * through the retry topics to the DLT, without holding up the records behind it on its order.created partition.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {
+        "dispatch.retry.topics.enabled=true",
+        "dispatch.retry.topics.attempts=3",
+        "dispatch.retry.topics.initialDelayMs=1000",
+        "dispatch.retry.topics.maxDelayMs=4000"
+})
+@AutoConfigureWireMock(port=0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true)
+@Import(OrderDispatchRetryTopicIntegrationTest.RetryTopicTestListener.class)
+public class OrderDispatchRetryTopicIntegrationTest {
+
+    private final static String ORDER_CREATED_TOPIC = "order.created";
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private RetryTopicTestListener testListener;
+
+    /**
+     * Records the order ids seen on each topic, in arrival order.
+     */
+    public static class RetryTopicTestListener {
+        final List<UUID> retried = new CopyOnWriteArrayList<>();
+        final List<String> retryTopics = new CopyOnWriteArrayList<>();
+        final List<UUID> deadLettered = new CopyOnWriteArrayList<>();
+        final List<UUID> dispatchCompleted = new CopyOnWriteArrayList<>();
+
+        @KafkaListener(groupId = "RetryTopicIntegrationTest", topics = { "order.created-retry-0", "order.created-retry-1" })
+        void receiveRetry(ConsumerRecord<String, OrderCreated> record) {
+            retryTopics.add(record.topic());
+            retried.add(record.value().getOrderId());
+        }
+
+        @KafkaListener(groupId = "RetryTopicIntegrationTest", topics = "order.created.DLT")
+        void receiveDlt(ConsumerRecord<String, OrderCreated> record) {
+            deadLettered.add(record.value().getOrderId());
+        }
+
+        @KafkaListener(groupId = "RetryTopicIntegrationTest", topics = "dispatch.tracking")
+        void receiveTracking(ConsumerRecord<String, Object> record) {
+            if (record.value() instanceof DispatchCompleted completed) {
+                dispatchCompleted.add(completed.getOrderId());
+            }
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        WiremockUtils.reset();
+
+        registry.getListenerContainers().forEach(container -> ContainerTestUtils.waitForAssignment(container,
+                container.getContainerProperties().getTopics().length * embeddedKafkaBroker.getPartitionsPerTopic()));
+    }
+
+    /**
+     * Two orders with the same key, so on the same partition.  The first always fails with a 503; the second is
+     * dispatched while the first is still waiting in the retry topics.
+     */
+    @Test
+    public void testRetryingOrderDoesNotBlockPartition() throws Exception {
+        stubWiremock("/api/stock?item=failing-item", 503, "Service unavailable");
+        stubWiremock("/api/stock?item=my-item", 200, "true");
+        String key = randomUUID().toString();
+        OrderCreated failing = TestEventData.buildOrderCreatedEvent(randomUUID(), "failing-item");
+        OrderCreated succeeding = TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item");
+
+        kafkaTemplate.send(ORDER_CREATED_TOPIC, key, failing).get();
+        kafkaTemplate.send(ORDER_CREATED_TOPIC, key, succeeding).get();
+
+        await().atMost(3, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(() -> testListener.dispatchCompleted.contains(succeeding.getOrderId()));
+        assertThat(testListener.deadLettered, empty());
+
+        await().atMost(15, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(() -> testListener.deadLettered.contains(failing.getOrderId()));
+        assertThat(testListener.retried, contains(failing.getOrderId(), failing.getOrderId()));
+        assertThat(testListener.retryTopics, contains("order.created-retry-0", "order.created-retry-1"));
+        assertThat(testListener.dispatchCompleted, equalTo(List.of(succeeding.getOrderId())));
+    }
+}
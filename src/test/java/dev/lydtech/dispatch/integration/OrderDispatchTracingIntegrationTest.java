@@ -0,0 +1,122 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.tracing.DispatchTrace;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
+import dev.lydtech.dispatch.tracing.InMemorySpanExporter;
+import dev.lydtech.dispatch.tracing.Span;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Traces every order through the embedded broker and checks that the outbound records carry the stage timestamps
+ * and that the order's spans reach the in-memory exporter.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {
+        "dispatch.tracing.enabled=true",
+        "dispatch.tracing.sampleRate=1.0",
+        "dispatch.tracing.exporter=memory"
+})
+@AutoConfigureWireMock(port=0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true, topics = {"order.created", "order.dispatched", "dispatch.tracking"})
+public class OrderDispatchTracingIntegrationTest {
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private DispatchTracer dispatchTracer;
+
+    private Consumer<String, byte[]> consumer;
+
+    @BeforeEach
+    public void setUp() {
+        WiremockUtils.reset();
+        registry.getListenerContainers().forEach(container -> ContainerTestUtils.waitForAssignment(container,
+                container.getContainerProperties().getTopics().length * embeddedKafkaBroker.getPartitionsPerTopic()));
+        Map<String, Object> properties = KafkaTestUtils.consumerProps("OrderDispatchTracingIntegrationTest", "false", embeddedKafkaBroker);
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumer = new KafkaConsumer<>(properties, new StringDeserializer(), new ByteArrayDeserializer());
+        embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, ORDER_DISPATCHED_TOPIC);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        consumer.close();
+    }
+
+    @Test
+    public void testOutboundRecordsCarryTheStageTimestamps() throws Exception {
+        stubWiremock("/api/stock?item=traced-item", 200, "true");
+        OrderCreated orderCreated = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "traced-item");
+
+        kafkaTemplate.send(ORDER_CREATED_TOPIC, UUID.randomUUID().toString(), orderCreated).get();
+
+        ConsumerRecord<String, byte[]> dispatched = KafkaTestUtils.getSingleRecord(consumer, ORDER_DISPATCHED_TOPIC);
+        long recordMicros = micros(dispatched, DispatchTrace.RECORD_TIMESTAMP_HEADER);
+        long pollMicros = micros(dispatched, DispatchTrace.POLL_TIME_HEADER);
+        long stockCheckStartMicros = micros(dispatched, DispatchTrace.STOCK_CHECK_START_HEADER);
+        long stockCheckEndMicros = micros(dispatched, DispatchTrace.STOCK_CHECK_END_HEADER);
+        long sendMicros = micros(dispatched, DispatchTrace.SEND_TIME_HEADER);
+        assertThat(recordMicros, lessThanOrEqualTo(pollMicros));
+        assertThat(pollMicros, lessThanOrEqualTo(stockCheckStartMicros));
+        assertThat(stockCheckStartMicros, lessThanOrEqualTo(stockCheckEndMicros));
+        assertThat(stockCheckEndMicros, lessThanOrEqualTo(sendMicros));
+
+        InMemorySpanExporter exporter = (InMemorySpanExporter) dispatchTracer.getExporter();
+        await().atMost(3, TimeUnit.SECONDS).until(() -> !exporter.getFinishedSpans().isEmpty());
+        List<Span> spans = exporter.getFinishedSpans();
+        assertThat(spans.get(0).attributes().get("dispatch.order_id"), equalTo(orderCreated.getOrderId().toString()));
+        assertThat(spans.stream().map(Span::name).toList(), hasItems("stock check", "order.dispatched publish", "dispatch.tracking publish"));
+        String traceparent = new String(dispatched.headers().lastHeader(DispatchTrace.TRACEPARENT_HEADER).value(), StandardCharsets.US_ASCII);
+        assertThat(traceparent.split("-")[1], equalTo(spans.get(0).traceId()));
+    }
+
+    private static long micros(ConsumerRecord<String, byte[]> record, String header) {
+        return Long.parseLong(new String(record.headers().lastHeader(header).value(), StandardCharsets.US_ASCII));
+    }
+}
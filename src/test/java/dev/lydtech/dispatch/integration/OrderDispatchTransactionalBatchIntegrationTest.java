@@ -0,0 +1,14 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * The OrderDispatchTransactionalIntegrationTest flows with the batch listener, where a transaction covers a poll.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {
+        "dispatch.transactions.enabled=true",
+        "dispatch.listener.batch=true"
+})
+public class OrderDispatchTransactionalBatchIntegrationTest extends OrderDispatchTransactionalIntegrationTest {
+}
@@ -0,0 +1,64 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the OrderDispatchIntegrationTest flows with dispatch.transactions.enabled, and checks that the events sent by a
+ * failed attempt are aborted along with it, so a read_committed consumer sees each event once however often the order
+ * is retried.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {"dispatch.transactions.enabled=true"})
+public class OrderDispatchTransactionalIntegrationTest extends OrderDispatchIntegrationTest {
+
+    @SpyBean
+    private KafkaTemplate<String, Object> kafkaTemplateSpy;
+
+    /**
+     * The first attempt fails after its DispatchPreparing and OrderDispatched have been sent, so the order is retried
+     * and all three events are sent again.
+     */
+    @Test
+    public void testOrderDispatchFlow_RetryAfterSendsHasNoDuplicates() throws Exception {
+        stubWiremock("/api/stock?item=my-item", 200, "true");
+        doThrow(new RetryableException("Failed after sending")).doCallRealMethod()
+                .when(kafkaTemplateSpy).send(eq("dispatch.tracking"), anyString(), any(DispatchCompleted.class));
+
+        OrderCreated orderCreated = TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item");
+        sendMessage("order.created", randomUUID().toString(), orderCreated);
+
+        await().atMost(5, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(testListener.dispatchCompletedCounter::get, equalTo(1));
+        // Allow time for any aborted events to be wrongly delivered.
+        TimeUnit.MILLISECONDS.sleep(500);
+        verify(kafkaTemplateSpy, times(2)).send(eq("dispatch.tracking"), anyString(), any(DispatchPreparing.class));
+        verify(kafkaTemplateSpy, times(2)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+        assertThat(testListener.dispatchPreparingCounter.get(), equalTo(1));
+        assertThat(testListener.orderDispatchedCounter.get(), equalTo(1));
+        assertThat(testListener.dispatchCompletedCounter.get(), equalTo(1));
+        assertThat(testListener.orderCreatedDLTCounter.get(), equalTo(0));
+    }
+}
@@ -0,0 +1,95 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.client.StockServiceClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubBulkStockService;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Exercises the bulk and coalesced stock lookups against the WireMock stand-in for the stock service's bulk endpoint.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {
+        "dispatch.stock.coalesce.enabled=true",
+        "dispatch.stock.coalesce.windowMs=500"
+})
+@AutoConfigureWireMock(port=0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true)
+public class StockServiceClientIntegrationTest {
+
+    private final static String BULK_STOCK_URL = "/api/stock/bulk";
+
+    @Autowired
+    private StockServiceClient stockServiceClient;
+
+    @BeforeEach
+    public void setUp() {
+        WiremockUtils.reset();
+        stubBulkStockService(BULK_STOCK_URL, Map.of("item-a", true, "item-b", false, "item-c", true));
+    }
+
+    @Test
+    public void testBulkLookup() {
+        Map<String, Boolean> availability = stockServiceClient.checkAvailability(List.of("item-a", "item-b"));
+
+        assertThat(availability.get("item-a"), is(true));
+        assertThat(availability.get("item-b"), is(false));
+        verify(1, getRequestedFor(urlPathEqualTo(BULK_STOCK_URL))
+                .withQueryParam("item", equalTo("item-a"))
+                .withQueryParam("item", equalTo("item-b")));
+    }
+
+    /**
+     * Concurrent single-item checks made within the coalescing window go upstream as one bulk request, with the
+     * repeated item only asked for once.
+     */
+    @Test
+    public void testConcurrentSingleItemLookupsAreCoalesced() throws Exception {
+        List<String> items = List.of("item-a", "item-b", "item-c", "item-a", "item-a");
+        ExecutorService executor = Executors.newFixedThreadPool(items.size());
+        CountDownLatch started = new CountDownLatch(items.size());
+        List<Future<String>> results = new ArrayList<>();
+        for (String item : items) {
+            results.add(executor.submit(() -> {
+                // Hold every lookup until all the threads are running, so they land in the same window.
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+                return stockServiceClient.checkAvailability(item);
+            }));
+        }
+        executor.shutdown();
+
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(results.get(0).get(), is("true"));
+        assertThat(results.get(1).get(), is("false"));
+        assertThat(results.get(2).get(), is("true"));
+        assertThat(results.get(3).get(), is("true"));
+        assertThat(results.get(4).get(), is("true"));
+        verify(1, getRequestedFor(urlPathEqualTo(BULK_STOCK_URL))
+                .withQueryParam("item", equalTo("item-a"))
+                .withQueryParam("item", equalTo("item-b"))
+                .withQueryParam("item", equalTo("item-c")));
+        verify(0, getRequestedFor(urlPathEqualTo("/api/stock")));
+    }
+}
@@ -0,0 +1,96 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.client.StockSnapshotStore;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Feeds the stock snapshot from the compacted stock topic on the embedded broker, with the WireMock stock service as
+ * the fallback for items the snapshot does not hold.
+ */
+@SpringBootTest(classes = {DispatchConfiguration.class}, properties = {
+        "dispatch.stock.snapshot.enabled=true",
+        "dispatch.stock.snapshot.topic=" + StockSnapshotIntegrationTest.STOCK_TOPIC
+})
+@AutoConfigureWireMock(port=0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true, topics = StockSnapshotIntegrationTest.STOCK_TOPIC)
+public class StockSnapshotIntegrationTest {
+
+    static final String STOCK_TOPIC = "stock.availability";
+    private static final String STOCK_URL = "/api/stock";
+
+    @Autowired
+    private StockServiceClient stockServiceClient;
+
+    @Autowired
+    private StockSnapshotStore stockSnapshotStore;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    private Producer<String, String> producer;
+
+    @BeforeEach
+    public void setUp() {
+        WiremockUtils.reset();
+        producer = new KafkaProducer<>(KafkaTestUtils.producerProps(embeddedKafkaBroker), new StringSerializer(), new StringSerializer());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        producer.close();
+    }
+
+    @Test
+    public void testAvailabilityIsAnsweredFromTheTopic() throws Exception {
+        producer.send(new ProducerRecord<>(STOCK_TOPIC, "item-a", "true")).get();
+        producer.send(new ProducerRecord<>(STOCK_TOPIC, "item-b", "false")).get();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> stockSnapshotStore.get("item-b") != null);
+
+        assertThat(stockServiceClient.checkAvailability("item-a"), is("true"));
+        assertThat(stockServiceClient.checkAvailability("item-b"), is("false"));
+        assertThat(stockServiceClient.checkAvailabilityAsync("item-a").get(), is(true));
+        verify(0, getRequestedFor(urlPathEqualTo(STOCK_URL)));
+    }
+
+    @Test
+    public void testRemovedItemsFallBackToTheStockService() throws Exception {
+        stubWiremock(STOCK_URL + "?item=item-c", 200, "false");
+        producer.send(new ProducerRecord<>(STOCK_TOPIC, "item-c", "true")).get();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> stockSnapshotStore.get("item-c") != null);
+
+        producer.send(new ProducerRecord<>(STOCK_TOPIC, "item-c", null)).get();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> stockSnapshotStore.get("item-c") == null);
+
+        assertThat(stockServiceClient.checkAvailability("item-c"), is("false"));
+        verify(1, getRequestedFor(urlPathEqualTo(STOCK_URL)));
+    }
+}
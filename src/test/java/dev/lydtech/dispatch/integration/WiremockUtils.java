@@ -1,7 +1,11 @@
 package dev.lydtech.dispatch.integration;
 
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
 
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 public class WiremockUtils {
@@ -29,4 +33,28 @@ public class WiremockUtils {
                     .willReturn(aResponse().withStatus(httpStatusResponse).withHeader("Content-Type", "text/plain").withBody(body)));
         }
     }
+
+    /**
+     * As stubWiremock, but each response is delayed by a random time from a log-normal distribution with the given
+     * median, giving the long tail of a real service rather than a constant delay.
+     */
+    public static void stubWiremockWithDelay(String url, int httpStatusResponse, String body, int medianDelayMs) {
+        ResponseDefinitionBuilder response = aResponse().withStatus(httpStatusResponse).withHeader("Content-Type", "text/plain").withBody(body);
+        if (medianDelayMs > 0) {
+            response.withLogNormalRandomDelay(medianDelayMs, 0.25);
+        }
+        stubFor(get(urlEqualTo(url)).willReturn(response));
+    }
+
+    /**
+     * Stands in for the stock service's bulk endpoint, answering every bulk request with the given availability map.
+     * The client only reads the items it asked for, so one stub can serve requests for any subset of them.
+     */
+    public static void stubBulkStockService(String url, Map<String, Boolean> availability) {
+        String body = availability.entrySet().stream()
+                .map(entry -> "\"" + entry.getKey() + "\":" + entry.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+        stubFor(get(urlPathEqualTo(url))
+                .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody(body)));
+    }
 }
@@ -0,0 +1,65 @@
+package dev.lydtech.dispatch.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+class HeavyHittersTest {
+
+    @Test
+    void top_FindsTheHeavyHittersAmongManyColdValues() {
+        HeavyHitters heavyHitters = new HeavyHitters(3, 1024, 4);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int draw = random.nextInt(100);
+            // 30%, 20% and 10% of the stream, the rest spread over 10,000 values.
+            String value = draw < 30 ? "hot-1" : draw < 50 ? "hot-2" : draw < 60 ? "hot-3" : "cold-" + random.nextInt(10_000);
+            heavyHitters.add(value, 1);
+        }
+
+        List<String> top = heavyHitters.top().stream().map(HeavyHitters.Entry::value).toList();
+
+        assertThat(top, contains("hot-1", "hot-2", "hot-3"));
+        assertThat(heavyHitters.total(), equalTo(100_000L));
+    }
+
+    @Test
+    void estimate_NeverUnderCountsAndStaysCloseForHeavyHitters() {
+        HeavyHitters heavyHitters = new HeavyHitters(5, 1024, 4);
+        for (int i = 0; i < 20_000; i++) {
+            heavyHitters.add("cold-" + i, 1);
+        }
+        heavyHitters.add("hot", 5_000);
+
+        long estimate = heavyHitters.estimate("hot");
+
+        assertThat(estimate, greaterThanOrEqualTo(5_000L));
+        // Within 2 * total / width.
+        assertThat(estimate, lessThan(5_000L + 2 * 25_000 / 1024));
+    }
+
+    @Test
+    void decay_HalvesCountsAndForgetsValuesThatReachZero() {
+        HeavyHitters heavyHitters = new HeavyHitters(5, 64, 2);
+        heavyHitters.add("hot", 10);
+        heavyHitters.add("once", 1);
+
+        heavyHitters.decay();
+
+        assertThat(heavyHitters.top(), contains(new HeavyHitters.Entry("hot", 5)));
+        assertThat(heavyHitters.estimate("hot"), equalTo(5L));
+        assertThat(heavyHitters.total(), equalTo(5L));
+        heavyHitters.decay();
+        heavyHitters.decay();
+        heavyHitters.decay();
+        assertThat(heavyHitters.top(), empty());
+    }
+}
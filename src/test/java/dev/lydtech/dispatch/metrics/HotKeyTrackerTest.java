@@ -0,0 +1,112 @@
+package dev.lydtech.dispatch.metrics;
+
+import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+class HotKeyTrackerTest {
+
+    private static final long WINDOW_MS = 10_000;
+
+    private SimpleMeterRegistry registry;
+    private AtomicLong clock;
+    private HotKeyTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        clock = new AtomicLong();
+        tracker = buildTracker(1.0, () -> 0.0);
+    }
+
+    @Test
+    void report_HotKeysAndItemsWithTheirShare() {
+        record(0, "key-a", "item-x", 6);
+        record(1, "key-b", "item-x", 2);
+        record(2, "key-c", "item-y", 2);
+
+        HotKeyReport report = tracker.report();
+
+        assertThat(report.keys().get(0), equalTo(new HotKeyReport.HotValue("key-a", 6, 0.6)));
+        assertThat(report.items().get(0), equalTo(new HotKeyReport.HotValue("item-x", 8, 0.8)));
+        assertThat(registry.get("dispatch.hotkeys.top.share").tag("dimension", "key").gauge().value(), closeTo(0.6, 0.001));
+        assertThat(registry.get("dispatch.hotkeys.top.share").tag("dimension", "item").gauge().value(), closeTo(0.8, 0.001));
+    }
+
+    @Test
+    void report_PartitionLoadAndSkewForTheLastCompleteWindow() {
+        record(0, "key-a", "item-x", 60);
+        record(1, "key-b", "item-x", 20);
+        record(2, "key-c", "item-x", 20);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(WINDOW_MS));
+        // In the new window, not yet reported.
+        record(1, "key-b", "item-x", 50);
+
+        HotKeyReport report = tracker.report();
+
+        assertThat(report.partitions().stream().map(HotKeyReport.PartitionLoad::partition).toList(), contains(0, 1, 2));
+        assertThat(report.partitions().get(0), equalTo(new HotKeyReport.PartitionLoad(0, 60, 6.0, 0.6)));
+        // 60 over a mean of 100 / 3.
+        assertThat(report.partitionSkew(), closeTo(1.8, 0.001));
+        assertThat(registry.get("dispatch.hotkeys.partition.skew").gauge().value(), closeTo(1.8, 0.001));
+        assertThat(registry.get("dispatch.partition.records").tag("partition", "1").counter().count(), equalTo(70.0));
+    }
+
+    @Test
+    void report_KeyCountsDecayEachWindow() {
+        record(0, "key-a", "item-x", 8);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(WINDOW_MS));
+        record(0, "key-b", "item-y", 8);
+
+        HotKeyReport report = tracker.report();
+
+        assertThat(report.keys().stream().map(HotKeyReport.HotValue::value).toList(), contains("key-b", "key-a"));
+        assertThat(report.keys().get(1).estimatedRecords(), equalTo(4L));
+    }
+
+    @Test
+    void record_OnlySampledRecordsReachTheSketchButAllAreCountedByPartition() {
+        AtomicLong draws = new AtomicLong();
+        // Every fourth record is sampled.
+        tracker = buildTracker(0.25, () -> draws.getAndIncrement() % 4 == 0 ? 0.0 : 0.99);
+
+        record(0, "key-a", "item-x", 40);
+
+        HotKeyReport report = tracker.report();
+        assertThat(report.keys().get(0).estimatedRecords(), equalTo(40L));
+        assertThat(report.partitions().get(0).records(), equalTo(40L));
+    }
+
+    @Test
+    void report_EmptyWhenDisabled() {
+        tracker = new HotKeyTracker(false, 0, 0, 0, 0, 0, () -> 0.0, clock::get, registry);
+
+        record(0, "key-a", "item-x", 1);
+
+        assertThat(tracker.report().keys(), empty());
+        assertThat(tracker.report().partitions(), empty());
+    }
+
+    private HotKeyTracker buildTracker(double sampleRate, DoubleSupplier random) {
+        registry = new SimpleMeterRegistry();
+        return new HotKeyTracker(true, sampleRate, 5, 256, 4, WINDOW_MS, random, clock::get, registry);
+    }
+
+    private void record(int partition, String key, String item, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(partition, key, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), item));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package dev.lydtech.dispatch.replay;
+
+import dev.lydtech.dispatch.dedup.OrderDeduplicator;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DltReprocessorTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition(DltReprocessor.DLT_TOPIC, 0);
+    private static final String RETRYABLE = RetryableException.class.getName();
+    private static final String NOT_RETRYABLE = "dev.lydtech.dispatch.exception.NotRetryableException";
+
+    private MockConsumer<String, Object> consumer;
+    private DispatchService dispatchServiceMock;
+    private SimpleMeterRegistry registry;
+    private DltReprocessor reprocessor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void assign(Collection<TopicPartition> partitions) {
+                // MockConsumer forgets its commits on assign, where the consumer group would keep them.
+                Map<TopicPartition, OffsetAndMetadata> checkpoints = committed(new HashSet<>(partitions));
+                super.assign(partitions);
+                commitSync(checkpoints);
+            }
+
+            @Override
+            public synchronized void close() {
+                // Kept open so that the checkpoints can be read back.
+            }
+        };
+        consumer.updatePartitions(DltReprocessor.DLT_TOPIC, List.of(new PartitionInfo(DltReprocessor.DLT_TOPIC, 0, Node.noNode(), null, null)));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        dispatchServiceMock = mock(DispatchService.class);
+        registry = new SimpleMeterRegistry();
+        reprocessor = new DltReprocessor(() -> consumer, dispatchServiceMock, new OrderDeduplicator(false, 0, ""),
+                mock(KafkaTemplate.class), registry, Clock.systemUTC());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reprocessor.destroy();
+    }
+
+    @Test
+    void start_ReplaysMatchingRecordsAndCheckpoints() throws Exception {
+        OrderCreated first = order();
+        OrderCreated second = order();
+        addRecords(record(0, first, RETRYABLE, 1000), record(1, order(), NOT_RETRYABLE, 1000), record(2, second, RETRYABLE, 1000));
+
+        ReplayStatus status = replay(new ReplayRequest(Set.of("RetryableException"), null, null, 0, 2, true));
+
+        verify(dispatchServiceMock, times(1)).process("key-0", first);
+        verify(dispatchServiceMock, times(1)).process("key-2", second);
+        verify(dispatchServiceMock, times(2)).process(anyString(), any());
+        assertThat(status.state(), equalTo(DltReprocessor.State.COMPLETED));
+        assertThat(status.replayed(), equalTo(2L));
+        assertThat(status.filtered(), equalTo(1L));
+        assertThat(status.remaining(), equalTo(0L));
+        assertThat(checkpoint(), equalTo(3L));
+        assertThat(registry.get("dispatch.dlt.replay.records").tag("result", "replayed").counter().count(), equalTo(2.0));
+    }
+
+    @Test
+    void start_ResumesFromCheckpoint() throws Exception {
+        addRecords(record(0, order(), RETRYABLE, 1000));
+        replay(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+        OrderCreated deadLetteredSince = order();
+        addRecords(record(0, order(), RETRYABLE, 1000), record(1, deadLetteredSince, RETRYABLE, 1000));
+
+        ReplayStatus status = replay(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+
+        verify(dispatchServiceMock, times(2)).process(anyString(), any());
+        verify(dispatchServiceMock, times(1)).process("key-1", deadLetteredSince);
+        assertThat(status.replayed(), equalTo(1L));
+        assertThat(checkpoint(), equalTo(2L));
+    }
+
+    @Test
+    void start_FiltersByTimeRange() throws Exception {
+        OrderCreated inRange = order();
+        addRecords(record(0, order(), RETRYABLE, 1000), record(1, inRange, RETRYABLE, 2000), record(2, order(), RETRYABLE, 3000));
+
+        replay(new ReplayRequest(Set.of(), null, Instant.ofEpochMilli(3000), 0, 1, false));
+
+        verify(dispatchServiceMock, times(2)).process(anyString(), any());
+        verify(dispatchServiceMock, never()).process(eqKey(2), any());
+    }
+
+    @Test
+    void start_NotRetryableFailuresAreCountedAndPassed() throws Exception {
+        OrderCreated failing = order();
+        doThrow(new NotRetryableException(new IllegalArgumentException("400 Bad Request"))).when(dispatchServiceMock).process("key-0", failing);
+        addRecords(record(0, failing, RETRYABLE, 1000), record(1, null, RETRYABLE, 1000), record(2, order(), RETRYABLE, 1000));
+
+        ReplayStatus status = replay(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+
+        assertThat(status.state(), equalTo(DltReprocessor.State.COMPLETED));
+        assertThat(status.failed(), equalTo(2L));
+        assertThat(status.replayed(), equalTo(1L));
+        assertThat(checkpoint(), equalTo(3L));
+    }
+
+    @Test
+    void start_RetryableFailureStopsWithoutPassingTheRecord() throws Exception {
+        OrderCreated failing = order();
+        OrderCreated blocked = order();
+        doThrow(new RetryableException("503 Service Unavailable")).doNothing().when(dispatchServiceMock).process("key-1", failing);
+        addRecords(record(0, order(), RETRYABLE, 1000), record(1, failing, RETRYABLE, 1000), record(2, blocked, RETRYABLE, 1000));
+
+        reprocessor.start(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> reprocessor.getStatus().state() == DltReprocessor.State.STOPPED);
+
+        ReplayStatus status = reprocessor.getStatus();
+        assertThat(status.replayed(), equalTo(1L));
+        assertThat(status.failed(), equalTo(0L));
+        assertThat(status.error(), containsString("@1"));
+        assertThat(checkpoint(), equalTo(1L));
+        verify(dispatchServiceMock, never()).process("key-2", blocked);
+
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(record(1, failing, RETRYABLE, 1000));
+            consumer.addRecord(record(2, blocked, RETRYABLE, 1000));
+        });
+        status = replay(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+
+        verify(dispatchServiceMock, times(2)).process("key-1", failing);
+        verify(dispatchServiceMock, times(1)).process("key-2", blocked);
+        assertThat(status.replayed(), equalTo(2L));
+        assertThat(checkpoint(), equalTo(3L));
+    }
+
+    @Test
+    void start_OnlyOneReplayAtATime() {
+        consumer.updateEndOffsets(Map.of(PARTITION, 1L));
+        reprocessor.start(new ReplayRequest(Set.of(), null, null, 0, 1, true));
+
+        assertThrows(IllegalStateException.class, () -> reprocessor.start(new ReplayRequest(Set.of(), null, null, 0, 1, true)));
+
+        reprocessor.stop();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> reprocessor.getStatus().state() == DltReprocessor.State.STOPPED);
+    }
+
+    private ReplayStatus replay(ReplayRequest request) {
+        reprocessor.start(request);
+        await().atMost(5, TimeUnit.SECONDS).pollInterval(Duration.ofMillis(20))
+                .until(() -> reprocessor.getStatus().state() == DltReprocessor.State.COMPLETED);
+        return reprocessor.getStatus();
+    }
+
+    /**
+     * The records are added on the replay's first poll, once it has assigned the partition.
+     */
+    @SafeVarargs
+    private void addRecords(ConsumerRecord<String, Object>... records) {
+        consumer.updateEndOffsets(Map.of(PARTITION, (long) records.length));
+        consumer.schedulePollTask(() -> {
+            for (ConsumerRecord<String, Object> record : records) {
+                consumer.addRecord(record);
+            }
+        });
+    }
+
+    private long checkpoint() {
+        return consumer.committed(Set.of(PARTITION)).get(PARTITION).offset();
+    }
+
+    private static String eqKey(int offset) {
+        return org.mockito.ArgumentMatchers.eq("key-" + offset);
+    }
+
+    private static OrderCreated order() {
+        return TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "my-item");
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, OrderCreated orderCreated, String exception, long timestamp) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, exception.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>(DltReprocessor.DLT_TOPIC, 0, offset, timestamp, TimestampType.CREATE_TIME, -1, -1,
+                "key-" + offset, orderCreated, headers, Optional.empty());
+    }
+}
@@ -0,0 +1,105 @@
+package dev.lydtech.dispatch.serialization;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryEventCodecTest {
+
+    @Test
+    void roundTrip_AllEvents() {
+        UUID orderId = UUID.randomUUID();
+        Object[] events = {
+                new OrderCreated(orderId, "my-item"),
+                new DispatchPreparing(orderId),
+                new OrderDispatched(orderId, UUID.randomUUID(), "Dispatched: my-item é€"),
+                new DispatchCompleted(orderId, "2026-10-18"),
+                DispatchTracking.dispatched(orderId, "2026-10-18")
+        };
+
+        for (Object event : events) {
+            assertThat(BinaryEventCodec.decode(BinaryEventCodec.encode(event)), equalTo(event));
+        }
+    }
+
+    @Test
+    void roundTrip_NullFields() {
+        assertThat(BinaryEventCodec.decode(BinaryEventCodec.encode(new OrderCreated(null, null))), equalTo(new OrderCreated(null, null)));
+        DispatchCompleted dispatchCompleted = new DispatchCompleted(UUID.randomUUID(), null);
+        assertThat(BinaryEventCodec.decode(BinaryEventCodec.encode(dispatchCompleted)), equalTo(dispatchCompleted));
+    }
+
+    @Test
+    void roundTrip_LongString() {
+        // Long enough for a three byte length prefix.
+        OrderCreated orderCreated = new OrderCreated(UUID.randomUUID(), "x".repeat(100_000));
+
+        assertThat(BinaryEventCodec.decode(BinaryEventCodec.encode(orderCreated)), equalTo(orderCreated));
+    }
+
+    @Test
+    void encode_SmallerThanJson() {
+        DispatchCompleted dispatchCompleted = new DispatchCompleted(UUID.randomUUID(), "2026-10-18");
+        try (JsonSerializer<Object> jsonSerializer = new JsonSerializer<>()) {
+            byte[] json = jsonSerializer.serialize("dispatch.tracking", new RecordHeaders(), dispatchCompleted);
+
+            byte[] binary = BinaryEventCodec.encode(dispatchCompleted);
+
+            assertThat(binary.length, equalTo(24));
+            assertThat(binary.length, lessThan(json.length / 2));
+        }
+    }
+
+    @Test
+    void roundTrip_DispatchTrackingNullFields() {
+        DispatchTracking dispatchTracking = new DispatchTracking(DispatchTracking.CURRENT_VERSION, UUID.randomUUID(), null, null);
+
+        assertThat(BinaryEventCodec.decode(BinaryEventCodec.encode(dispatchTracking)), equalTo(dispatchTracking));
+    }
+
+    @Test
+    void encode_DateMustBeIso() {
+        assertThrows(SerializationException.class, () -> BinaryEventCodec.encode(new DispatchCompleted(UUID.randomUUID(), "18/10/2026")));
+    }
+
+    @Test
+    void decode_RejectsUnknownVersionAndTruncatedData() {
+        byte[] encoded = BinaryEventCodec.encode(new OrderCreated(UUID.randomUUID(), "my-item"));
+        byte[] futureVersion = encoded.clone();
+        futureVersion[1] = 2;
+
+        assertThrows(SerializationException.class, () -> BinaryEventCodec.decode(futureVersion));
+        assertThrows(SerializationException.class, () -> BinaryEventCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+
+    @Test
+    void deserializer_ReadsBinaryAndJson() {
+        OrderCreated orderCreated = new OrderCreated(UUID.randomUUID(), "my-item");
+        try (BinaryOrJsonDeserializer deserializer = new BinaryOrJsonDeserializer();
+             JsonSerializer<Object> jsonSerializer = new JsonSerializer<>()) {
+            deserializer.configure(Map.of(JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName()), false);
+
+            byte[] json = jsonSerializer.serialize("order.created", orderCreated);
+            byte[] binary = new BinaryEventSerializer().serialize("order.created", orderCreated);
+
+            assertThat(deserializer.deserialize("order.created", new RecordHeaders(), json), equalTo(orderCreated));
+            assertThat(deserializer.deserialize("order.created", new RecordHeaders(), binary), equalTo(orderCreated));
+        }
+    }
+}
@@ -1,18 +1,38 @@
 package dev.lydtech.dispatch.service;
 
 import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.exception.NotRetryableException;
+import dev.lydtech.dispatch.exception.RetryableException;
 import dev.lydtech.dispatch.message.DispatchCompleted;
 import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.DispatchTracking;
 import dev.lydtech.dispatch.message.OrderCreated;
 import dev.lydtech.dispatch.message.OrderDispatched;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.tracing.DispatchTrace;
+import dev.lydtech.dispatch.tracing.DispatchTracer;
 import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.springframework.kafka.core.KafkaProducerException;
 import org.springframework.kafka.core.KafkaTemplate;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -26,12 +46,16 @@ class DispatchServiceTest {
     private DispatchService service;
     private StockServiceClient stockServiceClientMock;
     private KafkaTemplate kafkaTemplateMock;
+    private SimpleMeterRegistry meterRegistry;
+    private DispatchMetrics dispatchMetrics;
 
     @BeforeEach
     void setUp() {
         kafkaTemplateMock = Mockito.mock(KafkaTemplate.class);
         stockServiceClientMock = mock(StockServiceClient.class);
-        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock);
+        meterRegistry = new SimpleMeterRegistry();
+        dispatchMetrics = new DispatchMetrics(meterRegistry);
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, false, false, dispatchMetrics);
     }
 
     @Test
@@ -118,4 +142,293 @@ class DispatchServiceTest {
 
         assertThat(exception.getMessage(), equalTo("dispatch tracking producer failure"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void process_PipelinedSuccess() throws Exception {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, true, false, dispatchMetrics);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        service.process(key, testEvent);
+
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+        verify(stockServiceClientMock, times(1)).checkAvailability(testEvent.getItem());
+        assertThat(meterRegistry.get("dispatch.producer.ack").tags("topic", "dispatch.tracking", "result", "success").timer().count(), equalTo(2L));
+        assertThat(meterRegistry.get("dispatch.producer.ack").tags("topic", "order.dispatched", "result", "success").timer().count(), equalTo(1L));
+        assertThat(meterRegistry.get("dispatch.stock.check").timer().count(), equalTo(1L));
+        assertThat(meterRegistry.get("dispatch.orders").tag("outcome", "available").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void process_CompactTrackingSendsOneTrackingRecord() throws Exception {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, false, true, dispatchMetrics);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        service.process(key, testEvent);
+
+        ArgumentCaptor<DispatchTracking> tracking = ArgumentCaptor.forClass(DispatchTracking.class);
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), tracking.capture());
+        verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verifyNoMoreInteractions(kafkaTemplateMock);
+        assertThat(tracking.getValue().getVersion(), equalTo(DispatchTracking.CURRENT_VERSION));
+        assertThat(tracking.getValue().getStatuses(), equalTo(List.of(DispatchTracking.Status.PREPARING, DispatchTracking.Status.COMPLETED)));
+        assertThat(tracking.getValue().toSeparateEvents(), equalTo(List.of(new DispatchPreparing(testEvent.getOrderId()),
+                new DispatchCompleted(testEvent.getOrderId(), service.dispatchedDate()))));
+    }
+
+    @Test
+    void process_CompactTrackingSendsTrackingOnlyOnceOrderDispatchedIsAcknowledged() throws Exception {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, false, true, dispatchMetrics);
+        when(kafkaTemplateMock.send(eq("order.dispatched"), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RecordTooLargeException("order dispatched producer failure")));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        assertThrows(ExecutionException.class, () -> service.process(key, testEvent));
+
+        verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verify(kafkaTemplateMock, never()).send(eq("dispatch.tracking"), anyString(), any());
+    }
+
+    @Test
+    void processAsync_CompactTrackingSendsTrackingAfterOrderDispatched() throws Exception {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, false, true, dispatchMetrics);
+        CompletableFuture<Object> dispatched = new CompletableFuture<>();
+        when(stockServiceClientMock.checkAvailabilityAsync(anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        when(kafkaTemplateMock.send(eq("order.dispatched"), anyString(), any())).thenReturn(dispatched);
+        when(kafkaTemplateMock.send(eq("dispatch.tracking"), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        String key = UUID.randomUUID().toString();
+        CompletableFuture<Void> result = service.processAsync(key, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString()));
+
+        verify(kafkaTemplateMock, never()).send(eq("dispatch.tracking"), anyString(), any());
+        dispatched.complete(null);
+        result.get();
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchTracking.class));
+    }
+
+    @Test
+    void process_CompactTrackingPipelined() throws Exception {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, true, true, dispatchMetrics);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        service.process(key, TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString()));
+
+        InOrder inOrder = inOrder(kafkaTemplateMock);
+        inOrder.verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        inOrder.verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchTracking.class));
+        verifyNoMoreInteractions(kafkaTemplateMock);
+        assertThat(meterRegistry.get("dispatch.producer.ack").tags("topic", "dispatch.tracking", "result", "success").timer().count(), equalTo(1L));
+    }
+
+    @Test
+    void process_TracedOrderSendsStageHeaders() throws Exception {
+        when(kafkaTemplateMock.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+        DispatchTracer tracer = new DispatchTracer(true, true, "none", "", 0);
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+        DispatchTrace trace = tracer.start(0, System.currentTimeMillis(), String.valueOf(System.currentTimeMillis() * 1000).getBytes(), testEvent);
+
+        service.process(key, testEvent, trace);
+
+        ArgumentCaptor<ProducerRecord<String, Object>> records = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplateMock, times(3)).send(records.capture());
+        verify(kafkaTemplateMock, never()).send(anyString(), anyString(), any());
+        assertThat(records.getAllValues().stream().map(ProducerRecord::topic).toList(),
+                equalTo(List.of("dispatch.tracking", "order.dispatched", "dispatch.tracking")));
+        for (ProducerRecord<String, Object> record : records.getAllValues()) {
+            assertThat(record.key(), equalTo(key));
+            for (String header : List.of(DispatchTrace.RECORD_TIMESTAMP_HEADER, DispatchTrace.POLL_TIME_HEADER, DispatchTrace.STOCK_CHECK_START_HEADER,
+                    DispatchTrace.STOCK_CHECK_END_HEADER, DispatchTrace.SEND_TIME_HEADER, DispatchTrace.TRACEPARENT_HEADER)) {
+                assertNotNull(record.headers().lastHeader(header), header);
+            }
+        }
+        assertThat(meterRegistry.get("dispatch.producer.ack").tags("topic", "dispatch.tracking", "result", "success").timer().count(), equalTo(2L));
+    }
+
+    @Test
+    void process_ItemUnavailable() throws Exception {
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("false");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        service.process(key, testEvent);
+
+        verifyNoInteractions(kafkaTemplateMock);
+        assertThat(meterRegistry.get("dispatch.orders").tag("outcome", "unavailable").counter().count(), equalTo(1.0));
+        assertThat(meterRegistry.get("dispatch.stock.check").tag("result", "unavailable").timer().count(), equalTo(1L));
+    }
+
+    @Test
+    void process_StockCheckFailureIsTimed() throws Exception {
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenThrow(new RetryableException("503 Service Unavailable"));
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        assertThrows(RetryableException.class, () -> service.process(UUID.randomUUID().toString(), testEvent));
+
+        verifyNoInteractions(kafkaTemplateMock);
+        assertThat(meterRegistry.get("dispatch.stock.check").tag("result", "failure").timer().count(), equalTo(1L));
+    }
+
+    @Test
+    void process_PipelinedRetryableSendFailure() {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, true, false, dispatchMetrics);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplateMock.send(anyString(), anyString(), any(OrderDispatched.class)))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaProducerException(new ProducerRecord<>("order.dispatched", "value"), "send failed", new TimeoutException("timed out"))));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        assertThrows(RetryableException.class, () -> service.process(key, testEvent));
+
+        // All three sends are issued before any acknowledgement is awaited.
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+    }
+
+    @Test
+    void process_PipelinedNotRetryableSendFailure() {
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, true, false, dispatchMetrics);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplateMock.send(anyString(), anyString(), any(DispatchCompleted.class)))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaProducerException(new ProducerRecord<>("dispatch.tracking", "value"), "send failed", new RecordTooLargeException("too large"))));
+        when(stockServiceClientMock.checkAvailability(anyString()))
+                .thenReturn("true");
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        assertThrows(NotRetryableException.class, () -> service.process(key, testEvent));
+    }
+
+    @Test
+    void processAsync_SendsChainedOnAvailabilityCheck() throws Exception {
+        CompletableFuture<Boolean> available = new CompletableFuture<>();
+        when(stockServiceClientMock.checkAvailabilityAsync(anyString())).thenReturn(available);
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        String key = UUID.randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        CompletableFuture<Void> result = service.processAsync(key, testEvent);
+
+        assertFalse(result.isDone());
+        verifyNoInteractions(kafkaTemplateMock);
+
+        available.complete(true);
+
+        result.get();
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verify(kafkaTemplateMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+        verify(stockServiceClientMock, never()).checkAvailability(anyString());
+        assertThat(meterRegistry.get("dispatch.stock.check").timer().count(), equalTo(1L));
+        assertThat(meterRegistry.get("dispatch.orders").tag("outcome", "available").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void processAsync_ItemUnavailable() throws Exception {
+        when(stockServiceClientMock.checkAvailabilityAsync(anyString())).thenReturn(CompletableFuture.completedFuture(false));
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        service.processAsync(UUID.randomUUID().toString(), testEvent).get();
+
+        verifyNoInteractions(kafkaTemplateMock);
+        assertThat(meterRegistry.get("dispatch.orders").tag("outcome", "unavailable").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void processAsync_StockCheckFailure() {
+        when(stockServiceClientMock.checkAvailabilityAsync(anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new RetryableException("503 Service Unavailable")));
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> service.processAsync(UUID.randomUUID().toString(), testEvent).get());
+
+        assertThat(e.getCause().getClass(), equalTo(RetryableException.class));
+        verifyNoInteractions(kafkaTemplateMock);
+        assertThat(meterRegistry.get("dispatch.stock.check").tag("result", "failure").timer().count(), equalTo(1L));
+    }
+
+    @Test
+    void processAsync_SendFailuresAreClassified() {
+        when(stockServiceClientMock.checkAvailabilityAsync(anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        when(kafkaTemplateMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplateMock.send(anyString(), anyString(), any(OrderDispatched.class)))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaProducerException(new ProducerRecord<>("order.dispatched", "value"), "send failed", new TimeoutException("timed out"))))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaProducerException(new ProducerRecord<>("order.dispatched", "value"), "send failed", new RecordTooLargeException("too large"))));
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), UUID.randomUUID().toString());
+
+        ExecutionException retryable = assertThrows(ExecutionException.class, () -> service.processAsync(UUID.randomUUID().toString(), testEvent).get());
+        ExecutionException notRetryable = assertThrows(ExecutionException.class, () -> service.processAsync(UUID.randomUUID().toString(), testEvent).get());
+
+        assertThat(retryable.getCause().getClass(), equalTo(RetryableException.class));
+        assertThat(notRetryable.getCause().getClass(), equalTo(NotRetryableException.class));
+        assertThat(meterRegistry.get("dispatch.producer.ack").tags("topic", "order.dispatched", "result", "failure").timer().count(), equalTo(2L));
+    }
+
+    @Test
+    void dispatchedDate_ChangesAtMidnight() {
+        ZoneId zone = ZoneId.of("Europe/London");
+        AtomicReference<Instant> now = new AtomicReference<>(ZonedDateTime.of(2026, 10, 18, 23, 59, 59, 0, zone).toInstant());
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return zone;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zoneId) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        service = new DispatchService(kafkaTemplateMock, stockServiceClientMock, false, false, dispatchMetrics, clock);
+
+        assertThat(service.dispatchedDate(), equalTo("2026-10-18"));
+        now.set(now.get().plusSeconds(1));
+        assertThat(service.dispatchedDate(), equalTo("2026-10-19"));
+    }
+}
@@ -0,0 +1,118 @@
+package dev.lydtech.dispatch.startup;
+
+import dev.lydtech.dispatch.concurrent.KeyOrderedExecutor;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class StartupWarmUpTest {
+
+    private static final URI STOCK_URI = URI.create("http://localhost:9001/api/stock?item=warm-up");
+
+    private KafkaTemplate<String, Object> kafkaTemplateMock;
+    private ConsumerFactory<String, Object> consumerFactoryMock;
+    private RestTemplate restTemplateMock;
+    private HttpClient httpClientMock;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplateMock = mock(KafkaTemplate.class);
+        consumerFactoryMock = mock(ConsumerFactory.class);
+        restTemplateMock = mock(RestTemplate.class);
+        httpClientMock = mock(HttpClient.class);
+        registry = new SimpleMeterRegistry();
+        when(consumerFactoryMock.getConfigurationProperties())
+                .thenReturn(Map.of(JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName()));
+        when(kafkaTemplateMock.partitionsFor(any())).thenReturn(List.of());
+    }
+
+    @Test
+    void start_WarmsUpProducerAndStockServiceConnections() {
+        when(restTemplateMock.execute(eq(STOCK_URI), eq(HttpMethod.GET), isNull(), any()))
+                .thenReturn(null)
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        StartupWarmUp warmUp = buildWarmUp(true, 5000);
+        warmUp.start();
+
+        verify(kafkaTemplateMock, times(1)).partitionsFor("dispatch.tracking");
+        verify(kafkaTemplateMock, times(1)).partitionsFor("order.dispatched");
+        verify(restTemplateMock, times(3)).execute(eq(STOCK_URI), eq(HttpMethod.GET), isNull(), any());
+        // Not in async executor mode.
+        verifyNoInteractions(httpClientMock);
+        assertThat(warmUp.isRunning(), equalTo(true));
+        assertThat(registry.get("dispatch.startup.warmup").timeGauge().value(TimeUnit.MILLISECONDS),
+                equalTo((double) warmUp.getWarmUpTime().toMillis()));
+    }
+
+    @Test
+    void start_StopsWaitingAtTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(kafkaTemplateMock.partitionsFor(any())).thenAnswer(invocation -> {
+            release.await();
+            return List.of();
+        });
+
+        StartupWarmUp warmUp = buildWarmUp(true, 200);
+        try {
+            warmUp.start();
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(warmUp.getWarmUpTime().toMillis(), greaterThanOrEqualTo(200L));
+        assertThat(warmUp.getWarmUpTime().toMillis(), lessThan(5000L));
+    }
+
+    @Test
+    void start_DisabledDoesNothing() {
+        StartupWarmUp warmUp = buildWarmUp(false, 5000);
+        warmUp.start();
+
+        verify(kafkaTemplateMock, never()).partitionsFor(any());
+        verifyNoInteractions(restTemplateMock);
+        assertThat(warmUp.isRunning(), equalTo(true));
+    }
+
+    @Test
+    void getPhase_BeforeListenerContainers() {
+        assertThat(buildWarmUp(true, 5000).getPhase(), lessThan(Integer.MAX_VALUE - 100));
+    }
+
+    private StartupWarmUp buildWarmUp(boolean enabled, long timeoutMs) {
+        return new StartupWarmUp(enabled, timeoutMs, 3, "http://localhost:9001/api/stock", kafkaTemplateMock, consumerFactoryMock,
+                restTemplateMock, httpClientMock, new KeyOrderedExecutor(1, null), new DispatchMetrics(registry));
+    }
+}
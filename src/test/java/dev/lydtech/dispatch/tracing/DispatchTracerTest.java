@@ -0,0 +1,162 @@
+package dev.lydtech.dispatch.tracing;
+
+import dev.lydtech.dispatch.exception.RetryableException;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class DispatchTracerTest {
+
+    private static final long RECORD_MILLIS = 1_000;
+
+    private AtomicLong clock;
+    private InMemorySpanExporter exporter;
+    private DispatchTracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(1_500_000);
+        exporter = new InMemorySpanExporter(100);
+        tracer = new DispatchTracer(true, true, exporter, clock::get);
+    }
+
+    @Test
+    void start_OnlyTracesRecordsStampedWithAPollTime() {
+        OrderCreated orderCreated = TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item");
+
+        assertThat(tracer.start(0, RECORD_MILLIS, null, orderCreated), nullValue());
+        assertThat(tracer.start(0, RECORD_MILLIS, "not-a-time".getBytes(StandardCharsets.US_ASCII), orderCreated), nullValue());
+        assertThat(DispatchTracer.disabled().start(0, RECORD_MILLIS, micros(1_200_000), orderCreated), nullValue());
+        assertThat(tracer.start(0, RECORD_MILLIS, micros(1_200_000), orderCreated), notNullValue());
+    }
+
+    @Test
+    void start_ReadsThePollTimeFromTheRecordHeaders() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(DispatchTrace.POLL_TIME_HEADER, micros(1_200_000));
+        ConsumerRecord<String, OrderCreated> record = new ConsumerRecord<>("order.created", 2, 0, RECORD_MILLIS, null, 0, 0, "key",
+                TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item"), headers, Optional.empty());
+
+        DispatchTrace trace = tracer.start(record);
+        tracer.finish(trace, null);
+
+        Span root = exporter.getFinishedSpans().get(0);
+        assertThat(root.attributes().get("messaging.kafka.destination.partition"), equalTo(2));
+        assertThat(root.attributes().get("dispatch.order_id"), equalTo(record.value().getOrderId().toString()));
+    }
+
+    @Test
+    void finish_ExportsASpanForEachStage() {
+        DispatchTrace trace = tracer.start(1, RECORD_MILLIS, micros(1_200_000), TestEventData.buildOrderCreatedEvent(UUID.randomUUID(), "item"));
+        clock.set(1_600_000);
+        trace.stockCheckStarted();
+        clock.set(1_650_000);
+        trace.stockCheckEnded();
+        clock.set(1_700_000);
+        DispatchTrace.Send send = trace.startSend("dispatch.tracking", new DispatchPreparing(UUID.randomUUID()));
+        clock.set(1_710_000);
+        send.completed(true);
+        trace.outcome("available");
+        clock.set(1_800_000);
+
+        tracer.finish(trace, null);
+
+        Map<String, Span> spans = exporter.getFinishedSpans().stream().collect(Collectors.toMap(Span::name, span -> span));
+        assertThat(spans.keySet().size(), equalTo(5));
+        Span root = spans.get("dispatch order");
+        assertThat(root.parentSpanId(), nullValue());
+        assertThat(root.startEpochNanos(), equalTo(1_000_000_000L));
+        assertThat(root.endEpochNanos(), equalTo(1_800_000_000L));
+        assertThat(root.attributes().get("dispatch.outcome"), equalTo("available"));
+        assertStage(spans.get("order.created queued"), root, 1_000_000, 1_200_000);
+        assertStage(spans.get("order.created poll wait"), root, 1_200_000, 1_500_000);
+        assertStage(spans.get("stock check"), root, 1_600_000, 1_650_000);
+        Span publish = spans.get("dispatch.tracking publish");
+        assertStage(publish, root, 1_700_000, 1_710_000);
+        assertThat(publish.kind(), equalTo(Span.Kind.PRODUCER));
+        assertThat(publish.attributes().get("dispatch.event"), equalTo("DispatchPreparing"));
+        assertThat(publish.error(), equalTo(false));
+    }
+
+    @Test
+    void finish_MarksTheFailureAndUnfinishedStagesAsErrors() {
+        DispatchTrace trace = tracer.start(0, RECORD_MILLIS, micros(1_200_000), null);
+        trace.stockCheckStarted();
+        trace.startSend("order.dispatched", new DispatchPreparing(UUID.randomUUID()));
+
+        tracer.finish(trace, new CompletionException(new RetryableException("Service unavailable")));
+
+        List<Span> spans = exporter.getFinishedSpans();
+        assertThat(spans.get(0).error(), equalTo(true));
+        assertThat(spans.get(0).attributes().get("exception.type"), equalTo(RetryableException.class.getName()));
+        assertThat(spans.stream().filter(Span::error).map(Span::name).toList(),
+                contains("dispatch order", "stock check", "order.dispatched publish"));
+    }
+
+    @Test
+    void send_HeadersCarryTheStagesAndATraceparent() {
+        DispatchTrace trace = tracer.start(0, RECORD_MILLIS, micros(1_200_000), null);
+        clock.set(1_600_000);
+        trace.stockCheckStarted();
+        clock.set(1_650_000);
+        trace.stockCheckEnded();
+        clock.set(1_700_000);
+
+        DispatchTrace.Send send = trace.startSend("order.dispatched", new DispatchPreparing(UUID.randomUUID()));
+        Map<String, String> headers = StreamSupport.stream(send.headers().spliterator(), false)
+                .collect(Collectors.toMap(Header::key, header -> new String(header.value(), StandardCharsets.US_ASCII)));
+        send.completed(true);
+        tracer.finish(trace, null);
+
+        assertThat(headers.get(DispatchTrace.RECORD_TIMESTAMP_HEADER), equalTo("1000000"));
+        assertThat(headers.get(DispatchTrace.POLL_TIME_HEADER), equalTo("1200000"));
+        assertThat(headers.get(DispatchTrace.STOCK_CHECK_START_HEADER), equalTo("1600000"));
+        assertThat(headers.get(DispatchTrace.STOCK_CHECK_END_HEADER), equalTo("1650000"));
+        assertThat(headers.get(DispatchTrace.SEND_TIME_HEADER), equalTo("1700000"));
+        Span publish = exporter.getFinishedSpans().stream().filter(span -> span.kind() == Span.Kind.PRODUCER).findFirst().orElseThrow();
+        assertThat(headers.get(DispatchTrace.TRACEPARENT_HEADER), equalTo("00-" + publish.traceId() + "-" + publish.spanId() + "-01"));
+        assertThat(publish.traceId().length(), equalTo(32));
+        assertThat(publish.spanId().length(), equalTo(16));
+    }
+
+    @Test
+    void send_NoHeadersWhenStageHeadersAreOff() {
+        tracer = new DispatchTracer(true, false, exporter, clock::get);
+
+        DispatchTrace trace = tracer.start(0, RECORD_MILLIS, micros(1_200_000), null);
+
+        assertThat(trace.startSend("order.dispatched", new DispatchPreparing(UUID.randomUUID())).headers(), nullValue());
+    }
+
+    private static void assertStage(Span stage, Span root, long startMicros, long endMicros) {
+        assertThat(stage.traceId(), equalTo(root.traceId()));
+        assertThat(stage.parentSpanId(), equalTo(root.spanId()));
+        assertThat(stage.startEpochNanos(), equalTo(startMicros * 1000));
+        assertThat(stage.endEpochNanos(), equalTo(endMicros * 1000));
+    }
+
+    private static byte[] micros(long micros) {
+        return Long.toString(micros).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,53 @@
+package dev.lydtech.dispatch.tracing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class FileSpanExporterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void export_AppendsOneOtlpJsonRequestPerLine() throws Exception {
+        Path file = directory.resolve("traces").resolve("spans.jsonl");
+        Span root = new Span("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331", null, "dispatch order", Span.Kind.CONSUMER,
+                1_000, 3_000, Map.of("messaging.kafka.destination.partition", 2), false);
+        Span publish = new Span(root.traceId(), "00f067aa0ba902b7", root.spanId(), "order.dispatched publish", Span.Kind.PRODUCER,
+                2_000, 2_500, Map.of("messaging.destination.name", "order.dispatched"), true);
+
+        try (FileSpanExporter exporter = new FileSpanExporter(file)) {
+            exporter.export(List.of(root, publish));
+            exporter.export(List.of(root));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines.size(), equalTo(2));
+        JsonNode request = new ObjectMapper().readTree(lines.get(0));
+        JsonNode resourceSpans = request.get("resourceSpans").get(0);
+        assertThat(resourceSpans.at("/resource/attributes/0/value/stringValue").asText(), equalTo("dispatch"));
+        JsonNode spans = resourceSpans.at("/scopeSpans/0/spans");
+        assertThat(spans.size(), equalTo(2));
+        assertThat(spans.get(0).get("kind").isInt(), equalTo(true));
+        assertThat(spans.get(0).get("kind").asInt(), equalTo(5));
+        assertThat(spans.get(0).at("/status/code").asInt(), equalTo(1));
+        assertThat(spans.get(0).has("parentSpanId"), equalTo(false));
+        assertThat(spans.get(0).get("startTimeUnixNano").asText(), equalTo("1000"));
+        assertThat(spans.get(0).at("/attributes/0/value/intValue").asText(), equalTo("2"));
+        assertThat(spans.get(1).get("parentSpanId").asText(), equalTo(root.spanId()));
+        assertThat(spans.get(1).at("/attributes/0/value/stringValue").asText(), equalTo("order.dispatched"));
+        assertThat(spans.get(1).get("kind").asInt(), equalTo(4));
+        assertThat(spans.get(1).at("/status/code").isInt(), equalTo(true));
+        assertThat(spans.get(1).at("/status/code").asInt(), equalTo(2));
+    }
+}
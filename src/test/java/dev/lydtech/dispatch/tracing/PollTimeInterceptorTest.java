@@ -0,0 +1,63 @@
+package dev.lydtech.dispatch.tracing;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class PollTimeInterceptorTest {
+
+    @Test
+    void onConsume_StampsSampledRecordsWithThePollTime() {
+        PollTimeInterceptor interceptor = interceptor(1.0);
+        ConsumerRecord<Object, Object> record = record();
+        // Copied from an earlier attempt.
+        record.headers().add(DispatchTrace.POLL_TIME_HEADER, "1".getBytes(StandardCharsets.US_ASCII));
+
+        long before = DispatchTracer.epochMicros();
+        interceptor.onConsume(records(record));
+        long after = DispatchTracer.epochMicros();
+
+        Header[] pollTimes = record.headers().toArray();
+        assertThat(pollTimes.length, equalTo(1));
+        long pollTime = DispatchTrace.decodeMicros(pollTimes[0].value());
+        assertThat(pollTime, greaterThanOrEqualTo(before));
+        assertThat(pollTime, lessThanOrEqualTo(after));
+    }
+
+    @Test
+    void onConsume_LeavesUnsampledRecordsWithoutAPollTime() {
+        PollTimeInterceptor interceptor = interceptor(0.0);
+        ConsumerRecord<Object, Object> record = record();
+        record.headers().add(DispatchTrace.POLL_TIME_HEADER, "1".getBytes(StandardCharsets.US_ASCII));
+
+        interceptor.onConsume(records(record));
+
+        assertThat(record.headers().lastHeader(DispatchTrace.POLL_TIME_HEADER), nullValue());
+    }
+
+    private static PollTimeInterceptor interceptor(double sampleRate) {
+        PollTimeInterceptor interceptor = new PollTimeInterceptor();
+        interceptor.configure(Map.of(PollTimeInterceptor.SAMPLE_RATE_CONFIG, sampleRate));
+        return interceptor;
+    }
+
+    private static ConsumerRecord<Object, Object> record() {
+        return new ConsumerRecord<>("order.created", 0, 0, "key", "value");
+    }
+
+    private static ConsumerRecords<Object, Object> records(ConsumerRecord<Object, Object> record) {
+        return new ConsumerRecords<>(Map.of(new TopicPartition(record.topic(), record.partition()), List.of(record)));
+    }
+}
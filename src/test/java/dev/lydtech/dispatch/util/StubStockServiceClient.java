@@ -0,0 +1,26 @@
+package dev.lydtech.dispatch.util;
+
+import dev.lydtech.dispatch.client.StockAvailabilityCache;
+import dev.lydtech.dispatch.client.StockServiceCircuitBreaker;
+import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.client.StockSnapshotStore;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * A StockServiceClient that reports every item as available without calling the stock service, and with its cache,
+ * snapshot and circuit breaker disabled.
+ */
+public class StubStockServiceClient extends StockServiceClient {
+
+    public StubStockServiceClient() {
+        super(new RestTemplate(), "http://localhost/api/stock", false, 0, 0, StockAvailabilityCache.disabled(), StockSnapshotStore.disabled(),
+                new StockServiceCircuitBreaker(false, 0, 0, 0, 0, 0, 0, 0, new DispatchMetrics(new SimpleMeterRegistry())), null, 0);
+    }
+
+    @Override
+    public String checkAvailability(String item) {
+        return "true";
+    }
+}